@@ -40,6 +40,9 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import me.vkryl.android.SdkVersion;
 import me.vkryl.core.BitwiseUtils;
@@ -352,7 +355,7 @@ public class Log {
 
   public static final int RUNTIME_NOT_ASYNC = 0x01;
 
-  private static final int ACTION_LOG_TO_FILE = 0;
+  private static final int ACTION_LOG_FLUSH = 0;
   private static final int ACTION_LOG_CLOSE = 1;
   private static final int ACTION_GET_LOG_FILES = 2;
   private static final int ACTION_DELETE_ALL = 3;
@@ -593,11 +596,15 @@ public class Log {
               protected void process (Message msg) {
                 synchronized (Log.class) {
                   switch (msg.what) {
-                    case ACTION_LOG_TO_FILE: {
-                      logToFileImpl(msg.arg1, msg.arg2, (String) msg.obj);
+                    case ACTION_LOG_FLUSH: {
+                      if (flushScheduled.compareAndSet(true, false) && recordQueue.flush(RECORD_FLUSH_BATCH_SIZE) == RECORD_FLUSH_BATCH_SIZE) {
+                        // Let other actions run between batches
+                        scheduleFlush();
+                      }
                       break;
                     }
                     case ACTION_LOG_CLOSE: {
+                      recordQueue.flush(Integer.MAX_VALUE);
                       closeLogImpl();
                       break;
                     }
@@ -660,13 +667,126 @@ public class Log {
   private static void logToFile (int tag, int level, String msg, boolean async) {
     preparePool();
     if (pool != null && async) {
-      pool.sendMessage(Message.obtain(pool.getHandler(), ACTION_LOG_TO_FILE, tag, level, msg), 0);
+      if (recordQueue.offer(tag, level, msg)) {
+        scheduleFlush();
+      }
     } else {
+      boolean needFlush;
       synchronized (Log.class) {
+        // Only the oldest records go before this one, the rest are left to Log thread
+        needFlush = recordQueue.flush(RECORD_FLUSH_BATCH_SIZE) == RECORD_FLUSH_BATCH_SIZE;
         logToFileImpl(tag, level, msg);
       }
+      if (needFlush) {
+        scheduleFlush();
+      }
+    }
+  }
+
+  // Async output
+
+  private static final int RECORD_QUEUE_CAPACITY = 4096; // Must be a power of two
+  private static final int RECORD_FLUSH_BATCH_SIZE = 256;
+
+  private static final RecordQueue recordQueue = new RecordQueue(RECORD_QUEUE_CAPACITY);
+  private static final AtomicBoolean flushScheduled = new AtomicBoolean();
+
+  private static void scheduleFlush () {
+    BaseThread pool = Log.pool;
+    if (pool != null && flushScheduled.compareAndSet(false, true)) {
+      pool.sendMessage(Message.obtain(pool.getHandler(), ACTION_LOG_FLUSH), 0);
+    }
+  }
+
+  /**
+   * @return Amount of log records dropped because {@link Log} thread couldn't keep up with them.
+   */
+  public static long getDroppedRecordCount () {
+    return recordQueue.droppedCount.get();
+  }
+
+  /**
+   * Bounded lock-free multi-producer single-consumer queue of log records waiting to be written to file.
+   *
+   * Producers never block and never take {@code Log.class} lock:
+   * when queue is full, record is dropped and counted instead.
+   * Consumer is {@link Log} thread, which writes records in batches.
+   */
+  private static final class RecordQueue {
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final int[] tags, levels;
+    private final String[] messages;
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private long head, reportedDroppedCount;
+
+    RecordQueue (int capacity) {
+      this.mask = capacity - 1;
+      this.sequences = new AtomicLongArray(capacity);
+      for (int i = 0; i < capacity; i++) {
+        sequences.set(i, i);
+      }
+      this.tags = new int[capacity];
+      this.levels = new int[capacity];
+      this.messages = new String[capacity];
+    }
+
+    boolean offer (int tag, int level, String message) {
+      long position = tail.get();
+      while (true) {
+        int index = (int) (position & mask);
+        long diff = sequences.get(index) - position;
+        if (diff == 0) {
+          if (tail.compareAndSet(position, position + 1)) {
+            tags[index] = tag;
+            levels[index] = level;
+            messages[index] = message;
+            // Publish the record
+            sequences.set(index, position + 1);
+            return true;
+          }
+          position = tail.get();
+        } else if (diff < 0) {
+          droppedCount.incrementAndGet();
+          return false;
+        } else {
+          position = tail.get();
+        }
+      }
+    }
+
+    /**
+     * Must be called only from a single thread at a time, while holding {@code Log.class} lock.
+     *
+     * @return Number of written records
+     */
+    int flush (int maxCount) {
+      long droppedCount = this.droppedCount.get();
+      if (droppedCount != reportedDroppedCount) {
+        logToFileImpl(0, LEVEL_WARNING, "Dropped " + (droppedCount - reportedDroppedCount) + " log messages");
+        reportedDroppedCount = droppedCount;
+      }
+      int count = 0;
+      while (count < maxCount) {
+        int index = (int) (head & mask);
+        if (sequences.get(index) != head + 1) {
+          // Empty or not yet published
+          break;
+        }
+        int tag = tags[index];
+        int level = levels[index];
+        String message = messages[index];
+        messages[index] = null;
+        sequences.set(index, head + mask + 1);
+        head++;
+        logToFileImpl(tag, level, message);
+        count++;
+      }
+      return count;
     }
   }
+
   private static native void logToFileImpl (int tag, int level, String msg);
 
   private static native void setInternalValues (String logDir,
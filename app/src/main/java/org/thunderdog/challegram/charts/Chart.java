@@ -5,7 +5,6 @@ import androidx.annotation.Nullable;
 import androidx.annotation.StringRes;
 
 import org.drinkless.tdlib.TdApi;
-import org.json.JSONException;
 import org.thunderdog.challegram.Log;
 import org.thunderdog.challegram.charts.data.ChartData;
 import org.thunderdog.challegram.charts.data.ChartDataUtil;
@@ -14,6 +13,8 @@ import org.thunderdog.challegram.telegram.Tdlib;
 import org.thunderdog.challegram.tool.UI;
 import org.thunderdog.challegram.ui.ListItem;
 
+import java.io.IOException;
+
 import me.vkryl.core.BitwiseUtils;
 import me.vkryl.core.lambda.RunnableBool;
 import me.vkryl.core.reference.ReferenceList;
@@ -96,7 +97,7 @@ public class Chart implements BaseChartView.DateChangeListener {
           this.baseData = ChartDataUtil.create((TdApi.StatisticalGraphData) graph, type);
           this.errorText = null;
           success = true;
-        } catch (JSONException e) {
+        } catch (IOException e) {
           Log.e("Unable to parse statistics: %s", e, graph);
         }
         if (!success) {
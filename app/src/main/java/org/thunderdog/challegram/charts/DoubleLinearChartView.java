@@ -75,8 +75,9 @@ public class DoubleLinearChartView extends BaseChartView<DoubleLinearChartData,
                 int localStart = Math.max(0, startXIndex - additionalPoints);
                 int localEnd = Math.min(chartData.xPercentage.length - 1, endXIndex + additionalPoints);
 
-                for (int i = localStart; i <= localEnd; i++) {
-                    if (y[i] < 0) continue;
+                int pointCount = LineDownsampler.selectPoints(y, chartData.xPercentage, localStart, localEnd, fullWidth, line.drawIndices);
+                for (int q = 0; q < pointCount; q++) {
+                    int i = line.drawIndices[q];
                     float xPoint = chartData.xPercentage[i] * fullWidth - offset;
                     float yPercentage = ((float) y[i] * chartData.linesK[k] - currentMinHeight) / (currentMaxHeight - currentMinHeight);
                     float padding = line.paint.getStrokeWidth() / 2f;
@@ -136,8 +137,9 @@ public class DoubleLinearChartView extends BaseChartView<DoubleLinearChartData,
                 int[] y = line.line.y;
 
                 line.chartPath.reset();
-                for (int i = 0; i < n; i++) {
-                    if (y[i] < 0) continue;
+                int pointCount = LineDownsampler.selectPoints(y, chartData.xPercentage, 0, n - 1, pickerWidth, line.drawIndices);
+                for (int q = 0; q < pointCount; q++) {
+                    int i = line.drawIndices[q];
 
                     float xPoint = chartData.xPercentage[i] * pickerWidth;
                     float h = ANIMATE_PICKER_SIZES ? pickerMaxHeight : chartData.maxValue;
@@ -156,7 +158,7 @@ public class DoubleLinearChartView extends BaseChartView<DoubleLinearChartData,
                             line.linesPathBottom[j++] = yPoint;
                         }
                     } else {
-                        if (i == 0) {
+                        if (q == 0) {
                             line.bottomLinePath.moveTo(xPoint, yPoint);
                         } else {
                             line.bottomLinePath.lineTo(xPoint, yPoint);
@@ -0,0 +1,60 @@
+package org.thunderdog.challegram.charts;
+
+/**
+ * Picks points of a line that are enough to draw it at the given scale.
+ *
+ * When several points fall into the same pixel column, only the first, the last,
+ * the lowest and the highest of them are kept, so the polyline looks the same,
+ * while the number of drawn segments is bounded by the view width instead of the data size.
+ */
+public class LineDownsampler {
+
+    /**
+     * @param y values of the line. Negative values are skipped, as chart views do.
+     * @param xPercentage relative positions of the points.
+     * @param from first index to pick from, inclusive.
+     * @param to last index to pick from, inclusive.
+     * @param width width in pixels corresponding to the whole {@code xPercentage} range.
+     * @param out destination of picked indices, must be able to hold {@code to - from + 1} items.
+     * @return number of indices written to {@code out}, in ascending order.
+     */
+    public static int selectPoints(int[] y, float[] xPercentage, int from, int to, float width, int[] out) {
+        int count = 0;
+        int column = Integer.MIN_VALUE;
+        int firstIndex = -1, lastIndex = -1, minIndex = -1, maxIndex = -1;
+        for (int i = from; i <= to; i++) {
+            if (y[i] < 0) continue;
+            int c = (int) (xPercentage[i] * width);
+            if (c != column || firstIndex == -1) {
+                count = flushColumn(out, count, firstIndex, minIndex, maxIndex, lastIndex);
+                column = c;
+                firstIndex = lastIndex = minIndex = maxIndex = i;
+            } else {
+                lastIndex = i;
+                if (y[i] < y[minIndex]) minIndex = i;
+                if (y[i] > y[maxIndex]) maxIndex = i;
+            }
+        }
+        return flushColumn(out, count, firstIndex, minIndex, maxIndex, lastIndex);
+    }
+
+    private static int flushColumn(int[] out, int count, int firstIndex, int minIndex, int maxIndex, int lastIndex) {
+        if (firstIndex == -1) {
+            return count;
+        }
+        out[count++] = firstIndex;
+        int prevIndex = firstIndex;
+        int a = Math.min(minIndex, maxIndex);
+        int b = Math.max(minIndex, maxIndex);
+        if (a != prevIndex) {
+            out[count++] = prevIndex = a;
+        }
+        if (b != prevIndex) {
+            out[count++] = prevIndex = b;
+        }
+        if (lastIndex != prevIndex) {
+            out[count++] = lastIndex;
+        }
+        return count;
+    }
+}
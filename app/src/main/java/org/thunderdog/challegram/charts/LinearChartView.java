@@ -46,8 +46,9 @@ public class LinearChartView extends BaseChartView<ChartData, LineViewData> {
 
                 int localStart = Math.max(0, startXIndex - additionalPoints);
                 int localEnd = Math.min(chartData.xPercentage.length - 1, endXIndex + additionalPoints);
-                for (int i = localStart; i <= localEnd; i++) {
-                    if (y[i] < 0) continue;
+                int pointCount = LineDownsampler.selectPoints(y, chartData.xPercentage, localStart, localEnd, fullWidth, line.drawIndices);
+                for (int q = 0; q < pointCount; q++) {
+                    int i = line.drawIndices[q];
                     float xPoint = chartData.xPercentage[i] * fullWidth - offset;
                     float yPercentage = ((float) y[i] - currentMinHeight) / (currentMaxHeight - currentMinHeight);
                     float padding = line.paint.getStrokeWidth() / 2f;
@@ -125,8 +126,9 @@ public class LinearChartView extends BaseChartView<ChartData, LineViewData> {
                 int[] y = line.line.y;
 
                 line.chartPath.reset();
-                for (int i = 0; i < n; i++) {
-                    if (y[i] < 0) continue;
+                int pointCount = LineDownsampler.selectPoints(y, chartData.xPercentage, 0, n - 1, pickerWidth, line.drawIndices);
+                for (int q = 0; q < pointCount; q++) {
+                    int i = line.drawIndices[q];
                     float xPoint = chartData.xPercentage[i] * pickerWidth;
                     float h = ANIMATE_PICKER_SIZES ? pickerMaxHeight : chartData.maxValue;
                     float hMin = ANIMATE_PICKER_SIZES ? pickerMinHeight : chartData.minValue;
@@ -144,7 +146,7 @@ public class LinearChartView extends BaseChartView<ChartData, LineViewData> {
                             line.linesPathBottom[j++] = yPoint;
                         }
                     } else {
-                        if (i == 0) {
+                        if (q == 0) {
                             line.bottomLinePath.moveTo(xPoint, yPoint);
                         } else {
                             line.bottomLinePath.lineTo(xPoint, yPoint);
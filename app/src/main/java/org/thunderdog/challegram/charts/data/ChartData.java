@@ -1,20 +1,21 @@
 package org.thunderdog.challegram.charts.data;
 
 import android.graphics.Color;
+import android.util.JsonReader;
 
 import androidx.core.graphics.ColorUtils;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.thunderdog.challegram.charts.SegmentTree;
 
+import java.io.IOException;
+import java.io.StringReader;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
 
 public class ChartData {
 
@@ -32,64 +33,102 @@ public class ChartData {
 
     protected long timeStep;
 
-    public ChartData(JSONObject jsonObject) throws JSONException {
-        JSONArray columns = jsonObject.getJSONArray("columns");
-
-        int n = columns.length();
-        for (int i = 0; i < columns.length(); i++) {
-            JSONArray a = columns.getJSONArray(i);
-            if (a.getString(0).equals("x")) {
-                int len = a.length() - 1;
-                x = new long[len];
-                for (int j = 0; j < len; j++) {
-                    x[j] = a.getLong(j + 1);
+    public ChartData(String json) throws IOException {
+        Map<String, String> colors = null;
+        Map<String, String> names = null;
+
+        try (JsonReader reader = new JsonReader(new StringReader(json))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "columns":
+                        readColumns(reader);
+                        break;
+                    case "colors":
+                        colors = readStringMap(reader);
+                        break;
+                    case "names":
+                        names = readStringMap(reader);
+                        break;
+                    default:
+                        reader.skipValue();
+                        break;
                 }
-            } else {
-                Line l = new Line();
-                lines.add(l);
-                int len = a.length() - 1;
-                l.id = a.getString(0);
-                l.y = new int[len];
-                for (int j = 0; j < len; j++) {
-                    l.y[j] = a.getInt(j + 1);
-                    if (l.y[j] > l.maxValue) l.maxValue = l.y[j];
-                    if (l.y[j] < l.minValue) l.minValue = l.y[j];
-                }
-            }
-
-            if (x.length > 1) {
-                timeStep = x[1] - x[0];
-            } else {
-                timeStep = 86400000L;
             }
-            measure();
+            reader.endObject();
+        } catch (IllegalStateException | NumberFormatException e) {
+            throw new IOException(e);
         }
 
-        JSONObject colors = jsonObject.optJSONObject("colors");
-        JSONObject names = jsonObject.optJSONObject("names");
+        if (x == null) {
+            throw new IOException("x column is missing");
+        }
+        if (x.length > 1) {
+            timeStep = x[1] - x[0];
+        } else {
+            timeStep = 86400000L;
+        }
+        measure();
 
-        Pattern colorPattern = Pattern.compile("(.*)(#.*)");
         for (int i = 0; i < lines.size(); i++) {
             Line line = lines.get(i);
 
-            if (colors != null) {
-                Matcher matcher = colorPattern.matcher(colors.getString(line.id));
-                if (matcher.matches()) {
-                    String key = matcher.group(1);
-                    if (key != null) {
-                        line.colorKey = "statisticChartLine_" + matcher.group(1).toLowerCase();
-                    }
-
-                    line.color = Color.parseColor(matcher.group(2));
+            String color = colors != null ? colors.get(line.id) : null;
+            if (color != null) {
+                int colorIndex = color.lastIndexOf('#');
+                if (colorIndex != -1) {
+                    line.colorKey = "statisticChartLine_" + color.substring(0, colorIndex).toLowerCase();
+                    line.color = Color.parseColor(color.substring(colorIndex));
                     line.colorDark = ColorUtils.blendARGB(Color.WHITE, line.color, 0.85f);
                 }
             }
 
             if (names != null) {
-                line.name = names.getString(line.id);
+                line.name = names.get(line.id);
             }
+        }
+    }
+
+    private void readColumns(JsonReader reader) throws IOException {
+        long[] buffer = new long[256];
+        reader.beginArray();
+        while (reader.hasNext()) {
+            reader.beginArray();
+            String id = reader.nextString();
+            int len = 0;
+            while (reader.hasNext()) {
+                if (len == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, len << 1);
+                }
+                buffer[len++] = (long) reader.nextDouble(); // Values may be fractional
+            }
+            reader.endArray();
+
+            if (id.equals("x")) {
+                x = Arrays.copyOf(buffer, len);
+            } else {
+                Line l = new Line();
+                lines.add(l);
+                l.id = id;
+                l.y = new int[len];
+                for (int j = 0; j < len; j++) {
+                    l.y[j] = (int) buffer[j];
+                    if (l.y[j] > l.maxValue) l.maxValue = l.y[j];
+                    if (l.y[j] < l.minValue) l.minValue = l.y[j];
+                }
+            }
+        }
+        reader.endArray();
+    }
 
+    private static Map<String, String> readStringMap(JsonReader reader) throws IOException {
+        Map<String, String> map = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            map.put(reader.nextName(), reader.nextString());
         }
+        reader.endObject();
+        return map;
     }
 
 
@@ -1,8 +1,8 @@
 package org.thunderdog.challegram.charts.data;
 
 import org.drinkless.tdlib.TdApi;
-import org.json.JSONException;
-import org.json.JSONObject;
+
+import java.io.IOException;
 
 public class ChartDataUtil {
   public static final int TYPE_LINEAR = 0;
@@ -10,8 +10,8 @@ public class ChartDataUtil {
   public static final int TYPE_STACK_BAR = 2;
   public static final int TYPE_STACK_PIE = 4;
 
-  public static ChartData create (TdApi.StatisticalGraphData data, int type) throws JSONException {
-    JSONObject json = new JSONObject(data.jsonData);
+  public static ChartData create (TdApi.StatisticalGraphData data, int type) throws IOException {
+    String json = data.jsonData;
     switch (type) {
       case TYPE_LINEAR:
         return new ChartData(json);
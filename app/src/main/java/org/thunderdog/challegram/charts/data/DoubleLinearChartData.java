@@ -1,15 +1,14 @@
 package org.thunderdog.challegram.charts.data;
 
-import org.json.JSONException;
-import org.json.JSONObject;
+import java.io.IOException;
 
 public class DoubleLinearChartData extends ChartData {
 
     public float[] linesK;
 
 
-    public DoubleLinearChartData(JSONObject jsonObject) throws JSONException {
-        super(jsonObject);
+    public DoubleLinearChartData(String json) throws IOException {
+        super(json);
     }
 
     @Override
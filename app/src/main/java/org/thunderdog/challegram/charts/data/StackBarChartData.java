@@ -1,17 +1,17 @@
 package org.thunderdog.challegram.charts.data;
 
 
-import org.json.JSONException;
-import org.json.JSONObject;
 import org.thunderdog.challegram.charts.SegmentTree;
 
+import java.io.IOException;
+
 public class StackBarChartData extends ChartData {
 
     public int[] ySum;
     public SegmentTree ySumSegmentTree;
 
-    public StackBarChartData(JSONObject jsonObject) throws JSONException {
-        super(jsonObject);
+    public StackBarChartData(String json) throws IOException {
+        super(json);
         init();
     }
 
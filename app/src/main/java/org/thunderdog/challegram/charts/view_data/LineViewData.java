@@ -28,6 +28,7 @@ public class LineViewData {
 
     public float[] linesPath;
     public float[] linesPathBottom;
+    public int[] drawIndices;
 
     public int lineColor;
 
@@ -57,6 +58,7 @@ public class LineViewData {
 
         linesPath = new float[line.y.length << 2];
         linesPathBottom = new float[line.y.length << 2];
+        drawIndices = new int[line.y.length];
     }
 
     public void updateColors() {
@@ -511,7 +511,7 @@ public class MessagesAdapter extends RecyclerView.Adapter<MessagesHolder> {
       bottomMessage.setNeedExtraPadding(false);
       message.setNeedExtraPresponsoredPadding(true);
     }
-    message.prepareLayout();
+    manager.onNewMessageLayoutPrepared(message.prepareLayoutIfChanged());
     if (items == null) {
       items = new ArrayList<>(INITIAL_CAPACITY);
     }
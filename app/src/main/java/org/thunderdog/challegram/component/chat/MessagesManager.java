@@ -15,6 +15,8 @@
 package org.thunderdog.challegram.component.chat;
 
 import android.content.Context;
+import android.os.SystemClock;
+import android.view.Choreographer;
 import android.view.View;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -48,6 +50,7 @@ import org.thunderdog.challegram.telegram.MessageListManager;
 import org.thunderdog.challegram.telegram.MessageListener;
 import org.thunderdog.challegram.telegram.MessageThreadListener;
 import org.thunderdog.challegram.telegram.Tdlib;
+import org.thunderdog.challegram.telegram.TdlibAutoDownloadScheduler;
 import org.thunderdog.challegram.telegram.TdlibCache;
 import org.thunderdog.challegram.telegram.TdlibManager;
 import org.thunderdog.challegram.telegram.TdlibMessageViewer;
@@ -66,6 +69,7 @@ import org.thunderdog.challegram.ui.MessagesController;
 import org.thunderdog.challegram.ui.SettingHolder;
 import org.thunderdog.challegram.unsorted.Settings;
 import org.thunderdog.challegram.util.CancellableResultHandler;
+import org.thunderdog.challegram.util.FrameStats;
 import org.thunderdog.challegram.util.ScrollJumpCompensator;
 import org.thunderdog.challegram.v.MessagesRecyclerView;
 
@@ -76,10 +80,12 @@ import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import me.vkryl.core.ArrayUtils;
 import me.vkryl.core.ColorUtils;
 import me.vkryl.core.StringUtils;
+import me.vkryl.core.collection.LongSparseIntArray;
 import me.vkryl.core.lambda.RunnableData;
 import tgx.td.ChatId;
 import tgx.td.MessageId;
@@ -300,11 +306,43 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
       }
       checkScrollButton(first, last);
       checkMessageThreadHeaderPreview(last);
+      checkAutoDownloadViewport(first, last);
 
       controller.checkRoundVideo(first, last, true);
     }
   }
 
+  private int autoDownloadFirst = -1, autoDownloadLast = -1, autoDownloadItemCount = -1;
+
+  private void checkAutoDownloadViewport (int first, int last) {
+    final long chatId = loader.getChatId();
+    if (chatId == 0 || first == -1 || last == -1) {
+      return;
+    }
+    final int itemCount = adapter.getMessageCount();
+    if (autoDownloadFirst == first && autoDownloadLast == last && autoDownloadItemCount == itemCount) {
+      return;
+    }
+    autoDownloadFirst = first;
+    autoDownloadLast = last;
+    autoDownloadItemCount = itemCount;
+
+    final int fromIndex = Math.max(0, first - TdlibAutoDownloadScheduler.FAR_DISTANCE);
+    final int toIndex = Math.min(itemCount - 1, last + TdlibAutoDownloadScheduler.FAR_DISTANCE);
+    LongSparseIntArray distances = new LongSparseIntArray(Math.max(0, toIndex - fromIndex + 1));
+    for (int i = fromIndex; i <= toIndex; i++) {
+      TGMessage message = adapter.getMessage(i);
+      if (message == null) {
+        continue;
+      }
+      int distance = i < first ? first - i : i > last ? i - last : 0;
+      for (long messageId : message.getIds()) {
+        distances.put(messageId, distance);
+      }
+    }
+    tdlib.files().autoDownloads().setViewport(chatId, distances);
+  }
+
   public void onViewportMeasure () {
     viewMessages(false);
     saveScrollPosition();
@@ -550,6 +588,7 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
         Log.i(Log.TAG_MESSAGES_LOADER, "[DESTROY] chatId:%d", chatId);
       }
       tdlib.closeChat(chatId, context, true);
+      tdlib.files().autoDownloads().closeViewport(chatId);
     }
     loader.reuse();
     messageViewer = null;
@@ -702,6 +741,8 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
         Log.i(Log.TAG_MESSAGES_LOADER, "[CREATE] chatId:%d", chat.id);
       }
       tdlib.openChat(chat.id, context);
+      tdlib.files().autoDownloads().openViewport(chat.id);
+      autoDownloadFirst = autoDownloadLast = autoDownloadItemCount = -1;
       // readOneShot = true;
     }
     if (chat.id != 0 && messageThread == null && !areScheduled && needPinnedMessages) {
@@ -1493,7 +1534,17 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
     }
   }
 
+  private volatile int layoutGeneration;
+
+  /**
+   * Changes every time all layouts are rebuilt, so layouts built ahead of time are not reused after that.
+   */
+  public int getLayoutGeneration () {
+    return layoutGeneration;
+  }
+
   public void rebuildLayouts () {
+    layoutGeneration++;
     ArrayList<TGMessage> items = adapter.getItems();
     if (items != null) {
       for (TGMessage m : items) {
@@ -1614,6 +1665,7 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
       controller.checkSwitchPm(message.getMessage());
     }
     if (!loader.canLoadBottom()) {
+      trackNewMessage();
       boolean atBottom = manager.findFirstVisibleItemPosition() == 0;
       TGMessage bottomMessage = adapter.getBottomMessage();
       if (bottomMessage != null && bottomMessage.combineWith(message.getMessage(), true)) {
@@ -1622,6 +1674,7 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
         }
         bottomMessage.invalidateContentReceiver(message.getId(), -1);
         message.onDestroy();
+        onLayoutAheadTopChanged(message, bottomMessage);
         return;
       }
       boolean scrollToBottom = (message.isSending() || (atBottom && (!message.isOld() || message.isChatMember()))) && !message.isSponsoredMessage();
@@ -1655,11 +1708,61 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
       } else {
         adapter.addMessage(message, false, scrollToBottom);
       }
+      onLayoutAheadTopChanged(message, adapter.getBottomMessage());
     } else if (message.isSending()) {
       loadFromStart();
     }
   }
 
+  // Frame stats while messages are flooding in
+
+  private static final int FLOOD_MIN_MESSAGE_COUNT = 5;
+  private static final long FLOOD_DETECT_WINDOW_MS = 1000;
+  private static final long FLOOD_END_DELAY_MS = 1500;
+
+  private final FrameStats floodFrameStats = new FrameStats();
+  private final Runnable floodEndAction = this::finishFloodStats;
+  private long floodWindowStartTime;
+  private int floodWindowMessageCount;
+  private int floodMessageCount, floodReusedLayoutCount;
+
+  void onNewMessageLayoutPrepared (boolean reused) {
+    if (floodFrameStats.isRunning()) {
+      floodMessageCount++;
+      if (reused) {
+        floodReusedLayoutCount++;
+      }
+    }
+  }
+
+  private void trackNewMessage () {
+    if (!Log.isEnabled(Log.TAG_MESSAGES_LOADER)) {
+      return;
+    }
+    long now = SystemClock.uptimeMillis();
+    if (now - floodWindowStartTime > FLOOD_DETECT_WINDOW_MS) {
+      floodWindowStartTime = now;
+      floodWindowMessageCount = 0;
+    }
+    floodWindowMessageCount++;
+    if (!floodFrameStats.isRunning() && floodWindowMessageCount >= FLOOD_MIN_MESSAGE_COUNT) {
+      floodMessageCount = floodReusedLayoutCount = 0;
+      floodFrameStats.start();
+    }
+    if (floodFrameStats.isRunning()) {
+      tdlib.ui().removeCallbacks(floodEndAction);
+      tdlib.ui().postDelayed(floodEndAction, FLOOD_END_DELAY_MS);
+    }
+  }
+
+  private void finishFloodStats () {
+    tdlib.ui().removeCallbacks(floodEndAction);
+    if (floodFrameStats.isRunning()) {
+      String frameStats = floodFrameStats.stop();
+      Log.i(Log.TAG_MESSAGES_LOADER, "[FLOOD] chatId:%d messages:%d layoutsReused:%d %s", loader.getChatId(), floodMessageCount, floodReusedLayoutCount, frameStats);
+    }
+  }
+
   @Override
   public void onMessageSendAcknowledged (final long chatId, final long messageId) {
     tdlib.ui().post(() -> {
@@ -1918,14 +2021,48 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
     }
   }
 
-  public void updateMessageInteractionInfo (long messageId, @Nullable TdApi.MessageInteractionInfo interactionInfo) {
-    int index = adapter.indexOfMessageContainer(messageId);
-    if (index != -1 && adapter.getItem(index).setMessageInteractionInfo(messageId, interactionInfo)) {
-      invalidateViewAt(index);
-    }
+  /**
+   * Applies interaction info of multiple messages in a single pass over loaded messages.
+   */
+  private void updateMessageInteractionInfo (LongSparseArray<TdApi.MessageInteractionInfo> updates) {
     ThreadInfo messageThread = loader.getMessageThread();
     if (messageThread != null) {
-      messageThread.updateMessageInteractionInfo(messageId, interactionInfo);
+      for (int i = 0; i < updates.size(); i++) {
+        messageThread.updateMessageInteractionInfo(updates.keyAt(i), updates.valueAt(i));
+      }
+    }
+    ArrayList<TGMessage> items = adapter.getItems();
+    if (items == null || items.isEmpty()) {
+      return;
+    }
+    TGMessage first = items.get(0), last = items.get(items.size() - 1);
+    final long minMessageId = Math.min(first.getSmallestId(), last.getSmallestId());
+    final long maxMessageId = Math.max(first.getBiggestId(), last.getBiggestId());
+    int remainingCount = 0;
+    for (int i = updates.size() - 1; i >= 0; i--) {
+      long messageId = updates.keyAt(i);
+      if (messageId < minMessageId || messageId > maxMessageId) {
+        // Not loaded, fresh info will arrive along with the message
+        updates.removeAt(i);
+      } else {
+        remainingCount++;
+      }
+    }
+    final int itemCount = items.size();
+    for (int index = 0; index < itemCount && remainingCount > 0; index++) {
+      TGMessage item = items.get(index);
+      boolean changed = false;
+      for (int i = updates.size() - 1; i >= 0; i--) {
+        long messageId = updates.keyAt(i);
+        if (item.isDescendantOrSelf(messageId)) {
+          changed = item.setMessageInteractionInfo(messageId, updates.valueAt(i)) || changed;
+          updates.removeAt(i);
+          remainingCount--;
+        }
+      }
+      if (changed) {
+        invalidateViewAt(index);
+      }
     }
   }
 
@@ -3047,6 +3184,8 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
   }
 
   private void unsubscribeFromUpdates () {
+    finishFloodStats();
+    layoutAheadTop.set(null);
     if (lastSubscribedChatId != 0) {
       controller.unsubscribeFromUpdates(lastSubscribedChatId);
       tdlib.listeners().unsubscribeFromMessageUpdates(lastSubscribedChatId, this);
@@ -3072,14 +3211,23 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
         return;
       final TdApi.Chat chat = tdlib.chatStrict(message.chatId);
       final TGMessage parsedMessage = TGMessage.valueOf(this, message, chat, messageThread, chatAdmins);
-      showMessage(chat.id, parsedMessage);
+      showNewMessage(chat.id, parsedMessage);
     } else if (isFocused() && TD.isScheduled(message) && messageThread == null) {
       controller.viewScheduledMessages(true);
     }
   }
 
-  private void showMessage (final long chatId, final TGMessage message) {
-    message.prepareLayout();
+  // State of the bottom message the next incoming message is expected to be merged with
+  private final AtomicReference<TGMessage.MergeState> layoutAheadTop = new AtomicReference<>();
+
+  private void showNewMessage (final long chatId, final TGMessage message) {
+    TGMessage.MergeState top = layoutAheadTop.get();
+    if (top != null && top.getChatId() != chatId) {
+      top = null;
+    }
+    message.prepareLayoutAhead(top);
+    // Message is not yet visible to UI thread, so its state can be captured here
+    layoutAheadTop.set(message.captureMergeState());
     tdlib.ui().post(() -> {
       if (loader.getChatId() == chatId) {
         updateNewMessage(message);
@@ -3087,6 +3235,18 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
     });
   }
 
+  /**
+   * Replaces state predicted for {@code message} with the state of the actual bottom message,
+   * unless newer message has already been prepared on TDLib thread.
+   */
+  @UiThread
+  private void onLayoutAheadTopChanged (TGMessage message, @Nullable TGMessage bottomMessage) {
+    TGMessage.MergeState current = layoutAheadTop.get();
+    if (current != null && current.getSource() == message) {
+      layoutAheadTop.compareAndSet(current, bottomMessage != null ? bottomMessage.captureMergeState() : null);
+    }
+  }
+
   public List<TGMessage> parseMessages (List<TdApi.Message> messages) {
     final List<TGMessage> parsedMessages = new ArrayList<>(messages.size());
     final TdApi.Chat chat = tdlib.chatStrict(messages.get(0).chatId);
@@ -3120,12 +3280,12 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
         if (cur.combineWith(message, true)) {
           continue;
         }
-        showMessage(chat.id, cur);
+        showNewMessage(chat.id, cur);
       }
       cur = TGMessage.valueOf(this, message, chat, chatAdmins);
     }
     if (cur != null) {
-      showMessage(chat.id, cur);
+      showNewMessage(chat.id, cur);
     }
   }*/
 
@@ -3222,11 +3382,44 @@ public class MessagesManager implements Client.ResultHandler, MessagesSearchMana
       sentMessages.get(sentMessageIndex).interactionInfo = interactionInfo;
       return;
     }
-    tdlib.ui().post(() -> {
-      if (loader.getChatId() == chatId) {
-        updateMessageInteractionInfo(messageId, interactionInfo);
+    boolean needSchedule;
+    synchronized (pendingInteractionInfo) {
+      if (pendingInteractionInfoChatId != chatId) {
+        pendingInteractionInfo.clear();
+        pendingInteractionInfoChatId = chatId;
       }
-    });
+      // Only the newest info of each message is applied
+      pendingInteractionInfo.put(messageId, interactionInfo);
+      needSchedule = !interactionInfoFlushScheduled;
+      interactionInfoFlushScheduled = true;
+    }
+    if (needSchedule) {
+      tdlib.ui().post(() -> Choreographer.getInstance().postFrameCallback(interactionInfoCallback));
+    }
+  }
+
+  // Busy channels update views, forwards and reactions of many messages at once, so they are applied once per frame
+
+  private final LongSparseArray<TdApi.MessageInteractionInfo> pendingInteractionInfo = new LongSparseArray<>();
+  private long pendingInteractionInfoChatId;
+  private boolean interactionInfoFlushScheduled;
+  private final Choreographer.FrameCallback interactionInfoCallback = frameTimeNanos -> flushPendingInteractionInfo();
+
+  private void flushPendingInteractionInfo () {
+    final long chatId;
+    final LongSparseArray<TdApi.MessageInteractionInfo> updates;
+    synchronized (pendingInteractionInfo) {
+      interactionInfoFlushScheduled = false;
+      if (pendingInteractionInfo.isEmpty()) {
+        return;
+      }
+      chatId = pendingInteractionInfoChatId;
+      updates = pendingInteractionInfo.clone();
+      pendingInteractionInfo.clear();
+    }
+    if (loader.getChatId() == chatId) {
+      updateMessageInteractionInfo(updates);
+    }
   }
 
   @Override
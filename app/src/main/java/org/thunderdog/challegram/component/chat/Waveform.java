@@ -40,7 +40,8 @@ public class Waveform {
 
   private float expandFactor = 1f;
   private byte[] data;
-  private Chunk[] chunks;
+  private WaveformCache.Key dataKey;
+  private float[] chunks;
   private int maxSample;
   private int currentWidth;
   private Bitmap bitmap;
@@ -65,13 +66,7 @@ public class Waveform {
     this.mode = mode;
     this.isOutBubble = isOutBubble;
 
-    if (data == null || data.length == 0) {
-      this.data = new byte[PLACEHOLDER_SIZE];
-      return;
-    }
-
-    this.data = data;
-    calculateMaxSample();
+    setDataImpl(data);
   }
 
   public int getWidth () {
@@ -83,27 +78,19 @@ public class Waveform {
   }
 
   public void setData (byte[] data) {
-    if (data == null) {
-      this.data = new byte[PLACEHOLDER_SIZE];
-      this.maxSample = 0;
-    } else {
-      this.data = data;
-      calculateMaxSample();
-    }
+    setDataImpl(data);
     expandFactor = 0f;
     if (lastTotalWidth != 0) {
       layout(lastTotalWidth, true);
     }
   }
 
-  private void calculateMaxSample () {
-    maxSample = 0;
-    for (byte b : data) {
-      int i = b < 0 ? -b : b;
-      if (i > maxSample) {
-        maxSample = i;
-      }
+  private void setDataImpl (byte[] data) {
+    if (data == null || data.length == 0) {
+      data = new byte[PLACEHOLDER_SIZE];
     }
+    this.data = data;
+    this.dataKey = new WaveformCache.Key(data);
   }
 
   public float getExpand () {
@@ -134,79 +121,37 @@ public class Waveform {
     lastTotalWidth = totalWidth;
     currentWidth = numSamples * (width + spacing) - spacing;
 
-    int available;
-    if (chunks == null) {
-      available = 0;
-      chunks = new Chunk[numSamples];
-    } else {
-      available = Math.min(chunks.length, numSamples);
-      Chunk[] newChunks = new Chunk[numSamples];
-      System.arraycopy(chunks, 0, newChunks, 0, available);
-      chunks = newChunks;
-    }
-
-    int currentHeight = (int) (minimumHeight + maxHeightDiff) * 2 + Screen.dp(10f);
+    WaveformCache.Chunks cachedChunks = WaveformCache.instance().getChunks(dataKey, numSamples, maxHeightDiff);
+    chunks = cachedChunks.heights;
+    maxSample = cachedChunks.maxSample;
 
-    Canvas inactiveCanvas;
     if (mode == MODE_BITMAP) {
-      if (bitmap == null || bitmap.getWidth() != currentWidth || bitmap.getHeight() != currentHeight) {
-        if (bitmap != null) {
-          bitmap.recycle();
-          bitmap = null;
-        }
+      int currentHeight = (int) (minimumHeight + maxHeightDiff) * 2 + Screen.dp(10f);
+      int color = Theme.getColor(isOutBubble ? ColorId.bubbleOut_waveformInactive : ColorId.waveformInactive);
+      Bitmap bitmap = WaveformCache.instance().getBitmap(dataKey, currentWidth, currentHeight, color);
+      if (bitmap == null) {
         bitmap = Bitmap.createBitmap(currentWidth, currentHeight, Bitmap.Config.ARGB_8888);
-        inactiveCanvas = new Canvas(bitmap);
-      } else {
-        bitmap.eraseColor(0);
-        inactiveCanvas = new Canvas(bitmap);
-      }
-    } else {
-      inactiveCanvas = null;
-    }
-
-    int[] adjustedSamples = new int[numSamples];
-    scale(data, adjustedSamples);
-    if (mode == MODE_BITMAP) {
-      paint.setColor(Theme.getColor(isOutBubble ? ColorId.bubbleOut_waveformInactive : ColorId.waveformInactive));
-    }
-    int cx = 0;
-    int centerY = (int) ((float) currentHeight * .5f);
-    for (int i = 0; i < numSamples; i++) {
-      int peakSample = adjustedSamples[i];
-      float heightDiff = maxSample == 0 ? 0f : maxHeightDiff * ((float) (peakSample) / (float) (maxSample));
-      Chunk chunk;
-      if (i >= available) {
-        chunks[i] = chunk = new Chunk(heightDiff);
+        Canvas inactiveCanvas = new Canvas(bitmap);
+        paint.setColor(color);
+        int cx = 0;
+        int centerY = (int) ((float) currentHeight * .5f);
+        for (float heightDiff : chunks) {
+          drawChunk(inactiveCanvas, cx, centerY, heightDiff, paint);
+          cx += width + spacing;
+        }
+        U.recycle(inactiveCanvas);
+        WaveformCache.instance().putBitmap(dataKey, currentWidth, currentHeight, color, bitmap);
       } else {
-        chunk = chunks[i];
-        chunk.heightDiff = heightDiff;
-      }
-      if (inactiveCanvas != null) {
-        chunk.draw(inactiveCanvas, cx, centerY, paint);
-        cx += width + spacing;
-      }
-    }
-
-    U.recycle(inactiveCanvas);
-  }
-
-  private static void scale (byte[] data, int[] output) {
-    for (int i = 0; i < data.length; i++) {
-      int index = i * output.length / data.length;
-      int sample = data[i];
-      if (sample < 0) {
-        sample = -sample;
-      }
-      if (output[index] < sample) {
-        output[index] = sample;
+        paint.setColor(color);
       }
+      // Bitmap might be shared with other instances, so it's never modified or recycled in place
+      this.bitmap = bitmap;
     }
   }
 
   public void destroy () {
-    if (bitmap != null && !bitmap.isRecycled()) {
-      bitmap.recycle();
-    }
+    // Bitmap is owned by WaveformCache
+    bitmap = null;
   }
 
   public void draw (Canvas c, float progress, int startX, int centerY) {
@@ -260,8 +205,8 @@ public class Waveform {
             break;
           }
           paint.setColor(Theme.getColor(progress == 0f ? (isOutBubble ? ColorId.bubbleOut_waveformInactive : ColorId.waveformInactive) : (isOutBubble ? ColorId.bubbleOut_waveformActive : ColorId.waveformActive)));
-          for (Chunk chunk : chunks) {
-            chunk.draw(c, cx, centerY, expandFactor, paint);
+          for (float heightDiff : chunks) {
+            drawChunk(c, cx, centerY, heightDiff, expandFactor, paint);
             cx += width + spacing;
           }
           break;
@@ -275,8 +220,8 @@ public class Waveform {
           c.save();
           c.clipRect(startX, topY, endX, bottomY);
           paint.setColor(Theme.getColor(isOutBubble ? ColorId.bubbleOut_waveformActive : ColorId.waveformActive));
-          for (Chunk chunk : chunks) {
-            chunk.draw(c, cx, centerY, expandFactor, paint);
+          for (float heightDiff : chunks) {
+            drawChunk(c, cx, centerY, heightDiff, expandFactor, paint);
             cx += width + spacing;
             if (cx > endX) {
               cx -= width + spacing;
@@ -290,8 +235,7 @@ public class Waveform {
         c.clipRect(endX - 1, topY, startX + currentWidth, bottomY);
         paint.setColor(Theme.getColor(isOutBubble ? ColorId.bubbleOut_waveformInactive : ColorId.waveformInactive));
         for (; i < chunks.length; i++) {
-          Chunk chunk = chunks[i];
-          chunk.draw(c, cx, centerY, expandFactor, paint);
+          drawChunk(c, cx, centerY, chunks[i], expandFactor, paint);
           cx += width + spacing;
         }
         c.restore();
@@ -308,29 +252,16 @@ public class Waveform {
     return (int) ((minimumHeight + maxHeightDiff) * 2f);
   }
 
-  private static class Chunk {
-    public float heightDiff;
-
-    public Chunk (float heightDiff) {
-      this.heightDiff = heightDiff;
-    }
-
-    public void draw (Canvas c, int startX, float centerY, Paint paint) {
-      float height = minimumHeight + heightDiff;
-      rect.left = startX;
-      rect.top = centerY - height;
-      rect.bottom = centerY + height;
-      rect.right = startX + width;
-      c.drawRoundRect(rect, radius, radius, paint);
-    }
+  private static void drawChunk (Canvas c, int startX, float centerY, float heightDiff, Paint paint) {
+    float height = minimumHeight + heightDiff;
+    rect.left = startX;
+    rect.top = centerY - height;
+    rect.bottom = centerY + height;
+    rect.right = startX + width;
+    c.drawRoundRect(rect, radius, radius, paint);
+  }
 
-    public void draw (Canvas c, int startX, float centerY, float expandFactor, Paint paint) {
-      float height = minimumHeight + heightDiff * (expandFactor < 0f ? 0f : expandFactor);
-      rect.left = startX;
-      rect.top = centerY - height;
-      rect.bottom = centerY + height;
-      rect.right = startX + width;
-      c.drawRoundRect(rect, radius, radius, paint);
-    }
+  private static void drawChunk (Canvas c, int startX, float centerY, float heightDiff, float expandFactor, Paint paint) {
+    drawChunk(c, startX, centerY, heightDiff * (expandFactor < 0f ? 0f : expandFactor), paint);
   }
 }
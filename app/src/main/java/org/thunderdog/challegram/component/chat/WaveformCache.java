@@ -0,0 +1,222 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026
+ */
+package org.thunderdog.challegram.component.chat;
+
+import android.graphics.Bitmap;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import org.thunderdog.challegram.N;
+
+import java.io.File;
+import java.util.Arrays;
+
+import me.vkryl.core.unit.ByteUnit;
+
+/**
+ * Shared storage for everything computed from voice note waveforms:
+ * waveforms decoded from files, normalized per-width chunk heights and rendered bitmaps.
+ *
+ * Voice-heavy chats display the same waveforms over and over again,
+ * so {@link Waveform} instances with the same data and width reuse results of each other.
+ */
+public final class WaveformCache {
+  private static final int MAX_DECODED_COUNT = 50;
+  private static final int MAX_CHUNKS_COUNT = 200;
+  private static final long MAX_BITMAPS_SIZE = ByteUnit.MIB.toBytes(4);
+
+  private static volatile WaveformCache instance;
+
+  public static WaveformCache instance () {
+    if (instance == null) {
+      synchronized (WaveformCache.class) {
+        if (instance == null) {
+          instance = new WaveformCache();
+        }
+      }
+    }
+    return instance;
+  }
+
+  static final class Key {
+    private final byte[] data;
+    private final int hashCode;
+
+    Key (@NonNull byte[] data) {
+      // Callers may reuse their array for another waveform
+      this.data = data.clone();
+      this.hashCode = Arrays.hashCode(data);
+    }
+
+    @Override
+    public boolean equals (Object obj) {
+      return obj == this || (obj instanceof Key && ((Key) obj).hashCode == hashCode && Arrays.equals(((Key) obj).data, data));
+    }
+
+    @Override
+    public int hashCode () {
+      return hashCode;
+    }
+  }
+
+  static final class Chunks {
+    public final int maxSample;
+    public final float[] heights;
+
+    Chunks (int maxSample, float[] heights) {
+      this.maxSample = maxSample;
+      this.heights = heights;
+    }
+  }
+
+  private static final class ChunksKey {
+    private final Key key;
+    private final int sampleCount;
+    private final float maxHeightDiff;
+
+    ChunksKey (Key key, int sampleCount, float maxHeightDiff) {
+      this.key = key;
+      this.sampleCount = sampleCount;
+      this.maxHeightDiff = maxHeightDiff;
+    }
+
+    @Override
+    public boolean equals (Object obj) {
+      if (!(obj instanceof ChunksKey))
+        return false;
+      ChunksKey other = (ChunksKey) obj;
+      return other.sampleCount == sampleCount && other.maxHeightDiff == maxHeightDiff && other.key.equals(key);
+    }
+
+    @Override
+    public int hashCode () {
+      int result = key.hashCode();
+      result = 31 * result + sampleCount;
+      result = 31 * result + Float.floatToIntBits(maxHeightDiff);
+      return result;
+    }
+  }
+
+  private static final class BitmapKey {
+    private final Key key;
+    private final int width, height, color;
+
+    BitmapKey (Key key, int width, int height, int color) {
+      this.key = key;
+      this.width = width;
+      this.height = height;
+      this.color = color;
+    }
+
+    @Override
+    public boolean equals (Object obj) {
+      if (!(obj instanceof BitmapKey))
+        return false;
+      BitmapKey other = (BitmapKey) obj;
+      return other.width == width && other.height == height && other.color == color && other.key.equals(key);
+    }
+
+    @Override
+    public int hashCode () {
+      int result = key.hashCode();
+      result = 31 * result + width;
+      result = 31 * result + height;
+      result = 31 * result + color;
+      return result;
+    }
+  }
+
+  private final LruCache<String, byte[]> decoded = new LruCache<>(MAX_DECODED_COUNT);
+  private final LruCache<ChunksKey, Chunks> chunks = new LruCache<>(MAX_CHUNKS_COUNT);
+  private final LruCache<BitmapKey, Bitmap> bitmaps = new LruCache<BitmapKey, Bitmap>((int) MAX_BITMAPS_SIZE) {
+    @Override
+    protected int sizeOf (BitmapKey key, Bitmap value) {
+      return value.getByteCount();
+    }
+  };
+
+  private WaveformCache () { }
+
+  /**
+   * Decodes waveform of the given audio file, or returns the one decoded previously,
+   * if file has not been modified since then.
+   */
+  @WorkerThread
+  @Nullable
+  public byte[] getWaveform (@NonNull String path) {
+    File file = new File(path);
+    String key = path + "_" + file.length() + "_" + file.lastModified();
+    byte[] waveform = decoded.get(key);
+    if (waveform == null) {
+      waveform = N.getWaveform(path);
+      if (waveform != null) {
+        decoded.put(key, waveform);
+      }
+    }
+    return waveform;
+  }
+
+  @NonNull
+  Chunks getChunks (@NonNull Key key, int sampleCount, float maxHeightDiff) {
+    ChunksKey chunksKey = new ChunksKey(key, sampleCount, maxHeightDiff);
+    Chunks result = chunks.get(chunksKey);
+    if (result == null) {
+      result = calculateChunks(key.data, sampleCount, maxHeightDiff);
+      chunks.put(chunksKey, result);
+    }
+    return result;
+  }
+
+  @Nullable
+  Bitmap getBitmap (@NonNull Key key, int width, int height, int color) {
+    Bitmap bitmap = bitmaps.get(new BitmapKey(key, width, height, color));
+    return bitmap != null && !bitmap.isRecycled() ? bitmap : null;
+  }
+
+  void putBitmap (@NonNull Key key, int width, int height, int color, @NonNull Bitmap bitmap) {
+    bitmaps.put(new BitmapKey(key, width, height, color), bitmap);
+  }
+
+  private static Chunks calculateChunks (byte[] data, int sampleCount, float maxHeightDiff) {
+    int maxSample = 0;
+    for (byte b : data) {
+      int i = b < 0 ? -b : b;
+      if (i > maxSample) {
+        maxSample = i;
+      }
+    }
+    int[] adjustedSamples = new int[sampleCount];
+    for (int i = 0; i < data.length; i++) {
+      int index = i * sampleCount / data.length;
+      int sample = data[i];
+      if (sample < 0) {
+        sample = -sample;
+      }
+      if (adjustedSamples[index] < sample) {
+        adjustedSamples[index] = sample;
+      }
+    }
+    float[] heights = new float[sampleCount];
+    if (maxSample != 0) {
+      for (int i = 0; i < sampleCount; i++) {
+        heights[i] = maxHeightDiff * ((float) adjustedSamples[i] / (float) maxSample);
+      }
+    }
+    return new Chunks(maxSample, heights);
+  }
+}
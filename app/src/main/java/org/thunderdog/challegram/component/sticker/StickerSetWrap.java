@@ -559,7 +559,10 @@ public class StickerSetWrap extends FrameLayoutFix implements StickersListContro
   }
 
   public void initWithSet (TdApi.StickerSet set) {
-    TdApi.StickerSetInfo info = Td.toStickerSetInfo(set);
+    initWithSet(Td.toStickerSetInfo(set), set);
+  }
+
+  private void initWithSet (TdApi.StickerSetInfo info, TdApi.StickerSet set) {
     this.stickerSets.put(set.id, new TGStickerSetInfo(tdlib, info));
     updateButton(false);
     stickersController.setStickerSetInfo(info);
@@ -741,6 +744,13 @@ public class StickerSetWrap extends FrameLayoutFix implements StickersListContro
     return wrap;
   }
 
+  public static StickerSetWrap showStickerSet (TdlibDelegate context, TdApi.StickerSetInfo info, TdApi.StickerSet set) {
+    StickerSetWrap wrap = new StickerSetWrap(context.context(), context.tdlib());
+    wrap.initWithSet(info, set);
+    wrap.showStickerSet();
+    return wrap;
+  }
+
   public static StickerSetWrap showStickerSets (TdlibDelegate context, long[] ids, boolean isEmojiPacks) {
     StickerSetWrap wrap = new StickerSetWrap(context.context(), context.tdlib());
     wrap.initWithSets(ids, isEmojiPacks);
@@ -3408,6 +3408,16 @@ public class Lang {
     checkLanguageSettings(true);
   }
 
+  /**
+   * Caches strings read by {@link #checkLanguageSettings(boolean)}, so the first layout
+   * does not have to query language pack database on the UI thread. Safe to call from any thread.
+   */
+  public static void preloadLanguageSettings () {
+    Lang.getString(R.string.language_disable_lowercase);
+    Lang.getString(R.string.language_dateFormatLocale);
+    getLanguageDirection();
+  }
+
   private static void checkLanguageSettings (boolean sendEvents) {
     setLanguageAllowLowercase(!"1".equals(Lang.getString(R.string.language_disable_lowercase)), sendEvents);
     setLanguageRtl(Settings.instance().needRtl(packId(), getLanguageDirection() == LANGUAGE_DIRECTION_RTL), sendEvents);
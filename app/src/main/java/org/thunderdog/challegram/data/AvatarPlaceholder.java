@@ -14,6 +14,7 @@
  */
 package org.thunderdog.challegram.data;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.drawable.Drawable;
 
@@ -22,6 +23,7 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import org.thunderdog.challegram.R;
+import org.thunderdog.challegram.loader.AvatarPlaceholderAtlas;
 import org.thunderdog.challegram.telegram.TdlibAccentColor;
 import org.thunderdog.challegram.theme.ColorId;
 import org.thunderdog.challegram.tool.Drawables;
@@ -110,7 +112,7 @@ public class AvatarPlaceholder {
     }
     this.metadata = metadata;
     this.radius = radius;
-    this.letters = metadata.letters == null ? null : new Text.Builder(metadata.letters.text, Screen.dp(radius) * 3, Paints.robotoStyleProvider((int) (radius * .75f)), TextColorSets.Regular.AVATAR_CONTENT).allBold().singleLine().build();
+    this.letters = metadata.letters == null ? null : new Text.Builder(metadata.letters.text, Screen.dp(radius) * 3, Paints.robotoStyleProvider(getLettersTextSize()), TextColorSets.Regular.AVATAR_CONTENT).allBold().singleLine().build();
     if (provider != null) {
       this.drawable = provider.getSparseDrawable(metadata.drawableRes, ColorId.avatar_content);
     } else {
@@ -122,6 +124,17 @@ public class AvatarPlaceholder {
     }
   }
 
+  private int getLettersTextSize () {
+    return (int) (radius * .75f);
+  }
+
+  private float getLettersScale (float radiusPx) {
+    int currentRadiusPx = Screen.dp(this.radius);
+    float scale = radiusPx < currentRadiusPx ? radiusPx / (float) currentRadiusPx : 1f;
+    scale *= Math.min(1f, (radiusPx * 2f) / (float) (Math.max(letters.getWidth(), letters.getHeight())));
+    return scale;
+  }
+
   public int getRadius () {
     return Screen.dp(radius);
   }
@@ -145,13 +158,19 @@ public class AvatarPlaceholder {
   public void draw (Canvas c, float centerX, float centerY, float alpha, float radiusPx, boolean drawCircle) {
     if (alpha <= 0f)
       return;
+    if (drawCircle && letters != null) {
+      int size = Math.round(radiusPx * 2f);
+      Bitmap tile = AvatarPlaceholderAtlas.instance().getTile(letters, getLettersTextSize(), getLettersScale(radiusPx), size, size, size / 2f, metadata.accentColor.getPrimaryColor());
+      if (tile != null) {
+        c.drawBitmap(tile, centerX - size / 2f, centerY - size / 2f, Paints.bitmapPaint(alpha));
+        return;
+      }
+    }
     if (drawCircle) {
       c.drawCircle(centerX, centerY, radiusPx, Paints.fillingPaint(ColorUtils.alphaColor(alpha, metadata.accentColor.getPrimaryColor())));
     }
     if (letters != null) {
-      int currentRadiusPx = Screen.dp(this.radius);
-      float scale = radiusPx < currentRadiusPx ? radiusPx / (float) currentRadiusPx : 1f;
-      scale *= Math.min(1f, (radiusPx * 2f) / (float) (Math.max(letters.getWidth(), letters.getHeight())));
+      float scale = getLettersScale(radiusPx);
       final boolean needRestore = scale != 1f;
       final int saveCount;
       if (needRestore) {
@@ -0,0 +1,121 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026
+ */
+package org.thunderdog.challegram.data;
+
+import android.graphics.Path;
+import android.graphics.RectF;
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+
+import org.thunderdog.challegram.tool.DrawAlgorithms;
+
+import java.util.Locale;
+
+/**
+ * Shared outlines of message bubbles.
+ *
+ * Paths are built relative to the top-left corner of the bubble and are keyed by its size and corner radii,
+ * so messages of the same size in a chat reuse the same {@link Path}.
+ * Returned paths must not be modified.
+ */
+public final class BubblePathCache {
+  private static final int MAX_ENTRY_COUNT = 96;
+
+  private static final class Key {
+    private final float width, height;
+    private final float topLeftRadius, topRightRadius, bottomRightRadius, bottomLeftRadius;
+    private final boolean isCircle;
+
+    Key (float width, float height, float topLeftRadius, float topRightRadius, float bottomRightRadius, float bottomLeftRadius, boolean isCircle) {
+      this.width = width;
+      this.height = height;
+      this.topLeftRadius = topLeftRadius;
+      this.topRightRadius = topRightRadius;
+      this.bottomRightRadius = bottomRightRadius;
+      this.bottomLeftRadius = bottomLeftRadius;
+      this.isCircle = isCircle;
+    }
+
+    @Override
+    public boolean equals (Object obj) {
+      if (!(obj instanceof Key))
+        return false;
+      Key other = (Key) obj;
+      return
+        other.width == width && other.height == height &&
+        other.topLeftRadius == topLeftRadius && other.topRightRadius == topRightRadius &&
+        other.bottomRightRadius == bottomRightRadius && other.bottomLeftRadius == bottomLeftRadius &&
+        other.isCircle == isCircle;
+    }
+
+    @Override
+    public int hashCode () {
+      int result = Float.floatToIntBits(width);
+      result = 31 * result + Float.floatToIntBits(height);
+      result = 31 * result + Float.floatToIntBits(topLeftRadius);
+      result = 31 * result + Float.floatToIntBits(topRightRadius);
+      result = 31 * result + Float.floatToIntBits(bottomRightRadius);
+      result = 31 * result + Float.floatToIntBits(bottomLeftRadius);
+      return 31 * result + (isCircle ? 1 : 0);
+    }
+  }
+
+  private static final LruCache<Key, Path> paths = new LruCache<>(MAX_ENTRY_COUNT);
+  private static int buildCount;
+
+  private BubblePathCache () { }
+
+  /**
+   * @return Outline of a bubble placed at (0, 0).
+   */
+  @NonNull
+  static Path obtain (float width, float height, float topLeftRadius, float topRightRadius, float bottomRightRadius, float bottomLeftRadius) {
+    return obtain(new Key(width, height, topLeftRadius, topRightRadius, bottomRightRadius, bottomLeftRadius, false));
+  }
+
+  /**
+   * @return Circle of the given radius touching bottom edge of a square with the given size placed at (0, 0).
+   */
+  @NonNull
+  static Path obtainCircle (float size, float radius) {
+    return obtain(new Key(size, size, radius, radius, radius, radius, true));
+  }
+
+  @NonNull
+  private static Path obtain (Key key) {
+    Path path = paths.get(key);
+    if (path == null) {
+      // Built outside of the cache lock, in the worst case the same path is built twice
+      path = new Path();
+      if (key.isCircle) {
+        path.addCircle(key.width * .5f, key.height - key.topLeftRadius, key.topLeftRadius, Path.Direction.CW);
+      } else {
+        DrawAlgorithms.buildPath(path, new RectF(0, 0, key.width, key.height), key.topLeftRadius, key.topRightRadius, key.bottomRightRadius, key.bottomLeftRadius);
+      }
+      paths.put(key, path);
+      synchronized (BubblePathCache.class) {
+        buildCount++;
+      }
+    }
+    return path;
+  }
+
+  public static String getStats () {
+    synchronized (BubblePathCache.class) {
+      return String.format(Locale.US, "paths:%d hits:%d misses:%d built:%d evictions:%d", paths.size(), paths.hitCount(), paths.missCount(), buildCount, paths.evictionCount());
+    }
+  }
+}
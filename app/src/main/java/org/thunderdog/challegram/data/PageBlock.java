@@ -21,6 +21,7 @@ import android.view.View;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
 
 import org.drinkless.tdlib.TdApi;
 import org.thunderdog.challegram.loader.ComplexReceiver;
@@ -70,6 +71,16 @@ public abstract class PageBlock {
     return block;
   }
 
+  /**
+   * Creates components that may be used only on UI thread, such as media wrappers.
+   * Blocks may be parsed on a background thread, so it must be called before the block is displayed.
+   * Calling it more than once has no effect.
+   */
+  @UiThread
+  public void prepare () {
+    // Override in children
+  }
+
   private PageBlock chatLinkBlock;
 
   private String anchor;
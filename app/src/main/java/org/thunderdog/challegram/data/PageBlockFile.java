@@ -27,17 +27,24 @@ import org.thunderdog.challegram.ui.ListItem;
 import org.thunderdog.challegram.util.DrawableProvider;
 
 public class PageBlockFile extends PageBlock {
-  private final InlineResultCommon result;
+  private InlineResultCommon result;
   private final TGPlayerController.PlayListBuilder playListBuilder;
 
   public PageBlockFile (ViewController<?> context, TdApi.PageBlock pageBlock, String url, TGPlayerController.PlayListBuilder builder) {
     super(context, pageBlock);
-    this.result = (InlineResultCommon) InlineResult.valueOf(context.context(), context.tdlib(), pageBlock, builder);
     this.playListBuilder = builder;
+  }
+
+  @Override
+  public void prepare () {
+    if (result != null) {
+      return;
+    }
+    result = (InlineResultCommon) InlineResult.valueOf(context.context(), context.tdlib(), block, playListBuilder);
     if (result == null)
-      throw new UnsupportedOperationException(pageBlock.toString());
-    if (pageBlock.getConstructor() == TdApi.PageBlockAudio.CONSTRUCTOR) {
-      ((InlineResultCommon) result).setIsTrack(false);
+      throw new UnsupportedOperationException(block.toString());
+    if (block.getConstructor() == TdApi.PageBlockAudio.CONSTRUCTOR) {
+      result.setIsTrack(false);
     }
   }
 
@@ -71,7 +71,12 @@ public class PageBlockMedia extends PageBlock implements MediaWrapper.OnClickLis
   private @Nullable MediaWrapper wrapper;
   private TdlibUi.UrlOpenParameters urlOpenParameters;
 
-  private boolean isList;
+  private @Nullable TdApi.PageBlock mediaBlock;
+  private @Nullable EmbeddedService nativeEmbed;
+  private @Nullable TdApi.PageBlock[] listBlocks;
+  private boolean isPrepared;
+
+  private boolean isList, isCollage;
   private TdApi.PageBlockMap map;
   private ImageFile mapFile;
   private @Nullable ArrayList<MediaWrapper> wrappers;
@@ -89,8 +94,8 @@ public class PageBlockMedia extends PageBlock implements MediaWrapper.OnClickLis
     super(context, photo);
     this.urlOpenParameters = urlOpenParameters;
     if (photo.photo != null) {
-      wrapper = new MediaWrapper(context.context(), context.tdlib(), photo.photo, 0, 0, null, false, false, nativeEmbed);
-      initWrapper(wrapper);
+      this.mediaBlock = photo;
+      this.nativeEmbed = nativeEmbed;
       setCaption(photo.caption);
       setUrl(photo.url);
     }
@@ -136,8 +141,7 @@ public class PageBlockMedia extends PageBlock implements MediaWrapper.OnClickLis
     super(context, animation);
     this.useGif = true;
     if (animation.animation != null) {
-      wrapper = new MediaWrapper(context.context(), context.tdlib(), animation.animation, 0, 0, null, false, true, !animation.needAutoplay, null);
-      initWrapper(wrapper);
+      this.mediaBlock = animation;
       setCaption(animation.caption);
     }
   }
@@ -145,8 +149,7 @@ public class PageBlockMedia extends PageBlock implements MediaWrapper.OnClickLis
   public PageBlockMedia (ViewController<?> context, TdApi.PageBlockVideo video) {
     super(context, video);
     if (video.video != null) {
-      wrapper = new MediaWrapper(context.context(), context.tdlib(), video.video, 0, 0, null, false);
-      initWrapper(wrapper);
+      this.mediaBlock = video;
       setCaption(video.caption);
     }
   }
@@ -158,9 +161,12 @@ public class PageBlockMedia extends PageBlock implements MediaWrapper.OnClickLis
   public PageBlockMedia (ViewController<?> context, TdApi.PageBlockCollage collage) {
     super(context, collage);
     setCaption(collage.caption);
-    parseWrappers(collage.pageBlocks);
-    if (wrappers != null && !wrappers.isEmpty()) {
-      collageContext = new CollageContext(wrappers, Screen.dp(2f));
+    this.listBlocks = collage.pageBlocks;
+    for (TdApi.PageBlock pageBlock : collage.pageBlocks) {
+      if (hasMedia(pageBlock)) {
+        this.isCollage = true;
+        break;
+      }
     }
   }
 
@@ -170,7 +176,56 @@ public class PageBlockMedia extends PageBlock implements MediaWrapper.OnClickLis
     super(context, slideshow);
     this.isList = true;
     setCaption(slideshow.caption);
-    parseWrappers(slideshow.pageBlocks);
+    this.listBlocks = slideshow.pageBlocks;
+  }
+
+  @Override
+  public void prepare () {
+    if (isPrepared) {
+      return;
+    }
+    isPrepared = true;
+    if (mediaBlock != null) {
+      switch (mediaBlock.getConstructor()) {
+        case TdApi.PageBlockPhoto.CONSTRUCTOR: {
+          wrapper = new MediaWrapper(context.context(), context.tdlib(), ((TdApi.PageBlockPhoto) mediaBlock).photo, 0, 0, null, false, false, nativeEmbed);
+          break;
+        }
+        case TdApi.PageBlockAnimation.CONSTRUCTOR: {
+          TdApi.PageBlockAnimation animation = (TdApi.PageBlockAnimation) mediaBlock;
+          wrapper = new MediaWrapper(context.context(), context.tdlib(), animation.animation, 0, 0, null, false, true, !animation.needAutoplay, null);
+          break;
+        }
+        case TdApi.PageBlockVideo.CONSTRUCTOR: {
+          wrapper = new MediaWrapper(context.context(), context.tdlib(), ((TdApi.PageBlockVideo) mediaBlock).video, 0, 0, null, false);
+          break;
+        }
+        default: {
+          throw new IllegalArgumentException("mediaBlock.getConstructor() == " + mediaBlock.getConstructor());
+        }
+      }
+      initWrapper(wrapper);
+    } else if (listBlocks != null) {
+      parseWrappers(listBlocks);
+      if (isCollage) {
+        collageContext = new CollageContext(wrappers, Screen.dp(2f));
+      }
+    }
+    if (url != null) {
+      linkIcon = Drawables.get(R.drawable.baseline_launch_24);
+    }
+  }
+
+  private static boolean hasMedia (TdApi.PageBlock pageBlock) {
+    switch (pageBlock.getConstructor()) {
+      case TdApi.PageBlockPhoto.CONSTRUCTOR:
+        return ((TdApi.PageBlockPhoto) pageBlock).photo != null;
+      case TdApi.PageBlockVideo.CONSTRUCTOR:
+        return ((TdApi.PageBlockVideo) pageBlock).video != null;
+      case TdApi.PageBlockAnimation.CONSTRUCTOR:
+        return ((TdApi.PageBlockAnimation) pageBlock).animation != null;
+    }
+    return false;
   }
 
   private void initWrapper (MediaWrapper wrapper) {
@@ -289,9 +344,6 @@ public class PageBlockMedia extends PageBlock implements MediaWrapper.OnClickLis
   private void setUrl (String url) {
     if (!StringUtils.equalsOrBothEmpty(this.url, url)) {
       this.url = url;
-      if (linkIcon == null) {
-        linkIcon = Drawables.get(R.drawable.baseline_launch_24);
-      }
     }
   }
 
@@ -301,7 +353,7 @@ public class PageBlockMedia extends PageBlock implements MediaWrapper.OnClickLis
 
   @Override
   public int getRelatedViewType () {
-    return embedded != null ? ListItem.TYPE_PAGE_BLOCK_EMBEDDED : isList ? ListItem.TYPE_PAGE_BLOCK_SLIDESHOW : collageContext != null ? ListItem.TYPE_PAGE_BLOCK_COLLAGE : useGif ? ListItem.TYPE_PAGE_BLOCK_GIF : ListItem.TYPE_PAGE_BLOCK_MEDIA;
+    return embedded != null ? ListItem.TYPE_PAGE_BLOCK_EMBEDDED : isList ? ListItem.TYPE_PAGE_BLOCK_SLIDESHOW : isCollage ? ListItem.TYPE_PAGE_BLOCK_COLLAGE : useGif ? ListItem.TYPE_PAGE_BLOCK_GIF : ListItem.TYPE_PAGE_BLOCK_MEDIA;
   }
 
   @Override
@@ -90,6 +90,9 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
   private static final int FLAG_SHOW_SCAM = 1 << 15;
   private static final int FLAG_SHOW_FAKE = 1 << 16;
   private static final int FLAG_MESSAGE = 1 << 17;
+  private static final int FLAG_PENDING_TITLE = 1 << 18;
+  private static final int FLAG_PENDING_PREFIX = 1 << 19;
+  private static final int FLAG_PENDING_TEXT = 1 << 20;
 
   private int flags, listMode;
 
@@ -330,14 +333,55 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
   private void buildLayout (int width) {
     if (width > 0) {
       currentWidth = width;
+      invalidateLayoutCache();
+      forceLayout = true;
       setCounter(true);
       setTime();
       setTitle();
       setText();
       setAvatar();
+      forceLayout = false;
     }
   }
 
+  // Sub-layouts of rows that are not bound to any view are built once they bind
+
+  private boolean forceLayout;
+
+  private boolean deferLayout (int pendingFlag) {
+    if (currentWidth == 0 || forceLayout || (flags & FLAG_ATTACHED) != 0) {
+      flags &= ~pendingFlag;
+      return false;
+    }
+    flags |= pendingFlag;
+    return true;
+  }
+
+  private boolean performPendingLayout () {
+    if (currentWidth == 0 || (flags & (FLAG_PENDING_TITLE | FLAG_PENDING_PREFIX | FLAG_PENDING_TEXT)) == 0) {
+      return false;
+    }
+    forceLayout = true;
+    if ((flags & FLAG_PENDING_TITLE) != 0) {
+      layoutTitle(false);
+    }
+    if ((flags & FLAG_PENDING_PREFIX) != 0) {
+      setPrefix();
+    } else if ((flags & FLAG_PENDING_TEXT) != 0) {
+      layoutText();
+    }
+    forceLayout = false;
+    return true;
+  }
+
+  private void invalidateLayoutCache () {
+    lastAvailWidth = -1;
+    lastChatMarkAvail = -1;
+    lastEmojiStatusState = -1;
+    lastTextAvail = -1;
+    lastChatActionAvail = -1;
+  }
+
   public boolean isOnline () {
     return (flags & FLAG_ONLINE) != 0;
   }
@@ -350,13 +394,19 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
     } else {
       if (currentWidth != width && width > 0) {
         currentWidth = width;
+        forceLayout = true;
         layoutTime();
         layoutTitle(false);
-        layoutContent();
+        if ((flags & FLAG_PENDING_PREFIX) != 0) {
+          setPrefix();
+        } else {
+          layoutContent();
+        }
+        forceLayout = false;
         return true;
       }
     }
-    return false;
+    return performPendingLayout();
   }
 
   public boolean isArchive () {
@@ -686,8 +736,7 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
   public boolean updateChatTitle (long chatId, String newTitle) {
     if (getChatId() == chatId) {
       chat.title = newTitle;
-      setTitleImpl(tdlib.chatTitle(chat));
-      layoutTitle(true);
+      layoutTitle(setTitleImpl(tdlib.chatTitle(chat)));
       if (tdlib.isMultiChat(chat) && !ChatId.isUserChat(chatId) && Td.getSenderId(chat.lastMessage) == chatId) {
         setText();
       }
@@ -886,9 +935,20 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
     return false;
   }
 
-  private int lastAvailWidth = -1;
+  private int lastAvailWidth = -1, lastTitleListMode;
+  private String lastTitle;
+  private int lastChatMarkAvail = -1;
+  private boolean lastChatMarkFake;
+  private long lastEmojiStatusId;
+  private int lastEmojiStatusState = -1;
 
   public void layoutTitle (boolean changed) {
+    if (changed && avatarPlaceholder != null) {
+      setAvatar();
+    }
+    if (deferLayout(FLAG_PENDING_TITLE)) {
+      return;
+    }
     int avail = currentWidth - ChatView.getLeftPadding(listMode) - timeWidth - ChatView.getTimePaddingRight() - ChatView.getTimePaddingLeft();
     final boolean isSecret = isSecretChat();
     if (showMute()) {
@@ -903,11 +963,15 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
     this.flags = BitwiseUtils.setFlag(flags, FLAG_SHOW_FAKE, tdlib.chatFake(chat));
     boolean showChatMark = showFake() || showScam();
     if (showChatMark) {
-      chatMark = new Text.Builder(Lang.getString(showFake() ? R.string.FakeMark : R.string.ScamMark), avail, Paints.robotoStyleProvider(12f), TextColorSets.Regular.NEGATIVE)
-        .singleLine()
-        .allBold()
-        .clipTextArea()
-        .build();
+      if (chatMark == null || lastChatMarkAvail != avail || lastChatMarkFake != showFake()) {
+        lastChatMarkAvail = avail;
+        lastChatMarkFake = showFake();
+        chatMark = new Text.Builder(Lang.getString(showFake() ? R.string.FakeMark : R.string.ScamMark), avail, Paints.robotoStyleProvider(12f), TextColorSets.Regular.NEGATIVE)
+          .singleLine()
+          .allBold()
+          .clipTextArea()
+          .build();
+      }
       avail -= chatMark.getWidth() + (Screen.dp(4f) * 2);
     }
     if (showViews()) {
@@ -920,13 +984,20 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
     }
 
     if (!tdlib.isSelfChat(chat)) {
-      emojiStatusDrawable = EmojiStatusHelper.makeDrawable(null, tdlib, chat != null ? tdlib.chatUser(chat) : null, new TextColorSetOverride(TextColorSets.Regular.NORMAL) {
-        @Override
-        public long mediaTextComplexColor () {
-          return Theme.newComplexColor(true, ColorId.iconActive);
-        }
-      }, this::invalidateEmojiStatusReceiver);
-      emojiStatusDrawable.invalidateTextMedia();
+      TdApi.User user = chat != null ? tdlib.chatUser(chat) : null;
+      long emojiStatusId = user != null && user.emojiStatus != null ? user.emojiStatus.customEmojiId : 0;
+      int emojiStatusState = user != null && user.isPremium ? 1 : 0;
+      if (emojiStatusDrawable == null || lastEmojiStatusId != emojiStatusId || lastEmojiStatusState != emojiStatusState) {
+        lastEmojiStatusId = emojiStatusId;
+        lastEmojiStatusState = emojiStatusState;
+        emojiStatusDrawable = EmojiStatusHelper.makeDrawable(null, tdlib, user, new TextColorSetOverride(TextColorSets.Regular.NORMAL) {
+          @Override
+          public long mediaTextComplexColor () {
+            return Theme.newComplexColor(true, ColorId.iconActive);
+          }
+        }, this::invalidateEmojiStatusReceiver);
+        emojiStatusDrawable.invalidateTextMedia();
+      }
       avail -= emojiStatusDrawable.getWidth(Screen.dp(6));
     }
     if (needDrawReactionsPreview()) {
@@ -934,8 +1005,10 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
       avail -= reactionsWidth + (reactionsWidth > 0 ? Screen.dp(3) : 0);
     }
 
-    if (changed || lastAvailWidth != avail) {
+    if (lastAvailWidth != avail || lastTitleListMode != listMode || !StringUtils.equalsOrBothEmpty(lastTitle, title)) {
       lastAvailWidth = avail;
+      lastTitleListMode = listMode;
+      lastTitle = title;
       if (StringUtils.isEmpty(title)) {
         trimmedTitle = null;
       } else {
@@ -964,9 +1037,6 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
       verifyLeft += Screen.dp(14f);
       muteLeft += Screen.dp(14f);
     }
-    if (changed && avatarPlaceholder != null) {
-      setAvatar();
-    }
   }
 
   public boolean needDrawReactionsPreview () {
@@ -1001,13 +1071,17 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
     }
   }
 
-  private void setTitleImpl (String title) {
-    this.title = title;
+  private boolean setTitleImpl (String title) {
+    if (!StringUtils.equalsOrBothEmpty(this.title, title)) {
+      this.title = title;
+      return true;
+    }
+    return false;
   }
 
   public void setTitle () {
-    setTitleImpl(isArchive() ? Lang.getString(R.string.ArchiveTitleList) : tdlib.chatTitle(chat));
-    layoutTitle(true);
+    boolean changed = setTitleImpl(isArchive() ? Lang.getString(R.string.ArchiveTitleList) : tdlib.chatTitle(chat));
+    layoutTitle(changed);
   }
 
   public Text getTitle () {
@@ -1069,6 +1143,7 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
   }
 
   public void updateLocale (boolean forceText) {
+    invalidateLayoutCache();
     setTime();
     setCounter(true);
     if (forceText || (flags & FLAG_CONTENT_STRING) != 0 || (flags & FLAG_TEXT_DRAFT) != 0) {
@@ -1155,7 +1230,15 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
     return scheduleAnimator;
   }
 
+  private String lastText;
+  private TextEntity[] lastEntities;
+  private int lastTextAvail = -1, lastTextIconsPadding, lastTextListMode;
+  private boolean lastTextSingleLine;
+
   private void layoutText () {
+    if (deferLayout(FLAG_PENDING_TEXT)) {
+      return;
+    }
     int avail = currentWidth - ChatView.getLeftPadding(listMode) - ChatView.getRightPadding() - (lastCounterAddWidth = getCounterAddWidth());
     textLeft = ChatView.getLeftPadding(listMode);
     if ((flags & FLAG_HAS_PREFIX) != 0 && prefix != null && listMode == Settings.CHAT_MODE_2LINE) {
@@ -1167,6 +1250,17 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
     this.textIconsPadding = textIconIds != null && textIconIds.size() > 0 ? Screen.dp(2f) + Screen.dp(18f) * textIconIds.size() : 0;
 
     if (avail > 0 && !StringUtils.isEmpty(text)) {
+      if (trimmedText != null && lastTextAvail == avail && lastTextIconsPadding == textIconsPadding && lastTextListMode == listMode && lastTextSingleLine == isSingleLine() &&
+        StringUtils.equalsOrBothEmpty(lastText, text) && sameEntities(lastEntities, entities, text)) {
+        layoutChatAction();
+        return;
+      }
+      lastText = text;
+      lastEntities = entities;
+      lastTextAvail = avail;
+      lastTextIconsPadding = textIconsPadding;
+      lastTextListMode = listMode;
+      lastTextSingleLine = isSingleLine();
       trimmedText = new Text.Builder(text, avail, getTextStyleProvider(listMode), TextColorSets.Regular.LIGHT)
         .maxLineCount(isSingleLine() ? 1 : 2)
         .textFlags(Text.FLAG_ELLIPSIZE_NEWLINE)
@@ -1189,11 +1283,24 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
       currentViews.invalidateContent(this);
     } else {
       trimmedText = null;
+      lastTextAvail = -1;
     }
 
     layoutChatAction();
   }
 
+  private static boolean sameEntities (TextEntity[] a, TextEntity[] b, String text) {
+    if (a == b)
+      return true;
+    if (a == null || b == null || a.length != b.length)
+      return false;
+    for (int i = 0; i < a.length; i++) {
+      if (!TextEntity.equals(a[i], b[i], TextEntity.COMPARE_MODE_NORMAL, text))
+        return false;
+    }
+    return true;
+  }
+
   private int textIconsPadding;
 
   private static TextStyleProvider getTextStyleProvider (int chatListMode) {
@@ -1213,6 +1320,9 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
   }
 
   private void setPrefix () {
+    if (deferLayout(FLAG_PENDING_PREFIX)) {
+      return;
+    }
     if ((flags & FLAG_HAS_PREFIX) != 0) {
       final String prefix;
       boolean needSuffix = true;
@@ -1529,6 +1639,9 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
   private void setViewAttached (boolean isAttached) {
     boolean nowIsAttached = (flags & FLAG_ATTACHED) != 0;
     if (isAttached != nowIsAttached) {
+      if (isAttached) {
+        performPendingLayout();
+      }
       flags = BitwiseUtils.setFlag(flags, FLAG_ATTACHED, isAttached);
       if (statusHelper != null) {
         if (isAttached) {
@@ -1545,6 +1658,10 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
     return statusHelper;
   }
 
+  private String lastChatActionText;
+  private int lastChatActionAvail = -1, lastChatActionIconWidth, lastChatActionListMode;
+  private Text lastChatAction;
+
   @Override
   public void layoutChatAction () {
     if (statusHelper == null)
@@ -1556,12 +1673,19 @@ public class TGChat implements TdlibStatusManager.HelperTarget, ContentPreview.R
     } else {
       int avail = currentWidth - ChatView.getLeftPadding(listMode) - ChatView.getRightPadding() - getCounterAddWidth();
       int iconWidth = statusHelper.actionIconWidth();
-      if (avail > 0) {
+      if (lastChatAction != null && lastChatActionAvail == avail && lastChatActionIconWidth == iconWidth && lastChatActionListMode == listMode && chatActionText.equals(lastChatActionText)) {
+        trimmedChatAction = lastChatAction;
+      } else if (avail > 0) {
         Text.Builder b = new Text.Builder(chatActionText, avail, getTextStyleProvider(listMode), TextColorSets.Regular.LIGHT).maxLineCount(listMode == Settings.CHAT_MODE_2LINE ? 1 : 2);
         if (iconWidth > 0) {
           b.lineMarginProvider((lineIndex, y, defaultMaxWidth, lineHeight) -> lineIndex == 0 ? iconWidth : 0);
         }
         trimmedChatAction = b.build();
+        lastChatAction = trimmedChatAction;
+        lastChatActionText = chatActionText;
+        lastChatActionAvail = avail;
+        lastChatActionIconWidth = iconWidth;
+        lastChatActionListMode = listMode;
       } else {
         trimmedChatAction = null;
       }
@@ -81,6 +81,7 @@ import org.thunderdog.challegram.navigation.HeaderView;
 import org.thunderdog.challegram.navigation.ReactionsOverlayView;
 import org.thunderdog.challegram.navigation.TooltipOverlayView;
 import org.thunderdog.challegram.navigation.ViewController;
+import org.thunderdog.challegram.support.ViewSupport;
 import org.thunderdog.challegram.telegram.MessageEditMediaPending;
 import org.thunderdog.challegram.telegram.Tdlib;
 import org.thunderdog.challegram.telegram.TdlibAccentColor;
@@ -94,7 +95,6 @@ import org.thunderdog.challegram.theme.PorterDuffColorId;
 import org.thunderdog.challegram.theme.PropertyId;
 import org.thunderdog.challegram.theme.Theme;
 import org.thunderdog.challegram.theme.ThemeManager;
-import org.thunderdog.challegram.tool.DrawAlgorithms;
 import org.thunderdog.challegram.tool.Drawables;
 import org.thunderdog.challegram.tool.Fonts;
 import org.thunderdog.challegram.tool.Icons;
@@ -110,6 +110,7 @@ import org.thunderdog.challegram.unsorted.Settings;
 import org.thunderdog.challegram.util.EmojiStatusHelper;
 import org.thunderdog.challegram.util.LanguageDetector;
 import org.thunderdog.challegram.util.NonBubbleEmojiLayout;
+import org.thunderdog.challegram.util.PerfTrace;
 import org.thunderdog.challegram.util.ReactionsCounterDrawable;
 import org.thunderdog.challegram.util.TranslationCounterDrawable;
 import org.thunderdog.challegram.util.text.Counter;
@@ -209,6 +210,8 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
   private static final int FLAG_ERROR = 1 << 30;
   private static final int FLAG_BEING_ADDED = 1 << 31;
 
+  private static final int LAYOUT_INDEPENDENT_FLAGS = FLAG_VIEWED | FLAG_ATTACHED | FLAG_READY_QUICK_LEFT | FLAG_READY_QUICK_RIGHT | FLAG_BEING_ADDED;
+
   protected TdApi.Message msg;
   protected final TdApi.SponsoredMessage sponsoredMessage;
   private int flags;
@@ -218,6 +221,10 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
   protected int width;
   protected int height;
 
+  // state the current layout has been built for
+  private int layoutFlags, layoutMergeIndex, layoutGeneration;
+  private String layoutDate;
+
   protected String time;
 
   protected @NonNull final TdlibSender sender;
@@ -296,8 +303,11 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
   private int pDateWidth;
   private int lastDrawReactionsX, lastDrawReactionsY;
 
-  private final Path bubblePath, bubbleClipPath;
+  // Resolved from BubblePathCache on first use, as most messages never need them
+  private Path bubblePath, bubbleClipPath;
+  private boolean isCircleBubble;
   private float topRightRadius, topLeftRadius, bottomLeftRadius, bottomRightRadius;
+  private float clipTopRightRadius, clipTopLeftRadius, clipBottomLeftRadius, clipBottomRightRadius;
   protected final RectF bubblePathRect, bubbleClipPathRect;
 
   private boolean needSponsorSmallPadding;
@@ -336,9 +346,7 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
 
     this.mTranslationsManager = new TranslationsManager(tdlib, this, this::setTranslatedStatus, this::setTranslationResult, this::showTranslateErrorMessageBubbleMode);
 
-    this.bubblePath = new Path();
     this.bubblePathRect = new RectF();
-    this.bubbleClipPath = new Path();
     this.bubbleClipPathRect = new RectF();
 
     this.swipeHelper = new MessageQuickActionSwipeHelper(this);
@@ -727,9 +735,55 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
   }
 
   public final boolean mergeWith (@Nullable TGMessage top, boolean isBottom) {
+    return mergeWith(top != null ? top.captureMergeState() : null, isBottom, top);
+  }
+
+  /**
+   * State of the message that affects merging of the message placed below it.
+   *
+   * Captured on the thread that currently owns the message,
+   * so the merge can be predicted on another thread without touching the message itself.
+   */
+  public static final class MergeState {
+    private final TGMessage source;
+    private final long chatId;
+    private final TdApi.Message message;
+    private final boolean isThreadHeader, headerDisabled, isOutgoingBubble, isForward, isUnreadOrSending;
+    private final int comparingDate, mergeTime, mergeIndex;
+
+    private MergeState (TGMessage source) {
+      this.source = source;
+      this.chatId = source.getChatId();
+      this.message = source.getMessage();
+      this.isThreadHeader = source.isThreadHeader();
+      this.headerDisabled = source.headerDisabled();
+      this.isOutgoingBubble = source.isOutgoingBubble();
+      this.isForward = source.isForward();
+      this.isUnreadOrSending = source.isUnread() || source.isSending();
+      this.comparingDate = source.getComparingDate();
+      this.mergeTime = source.getMergeTime();
+      this.mergeIndex = source.getMergeIndex();
+    }
+
+    public TGMessage getSource () {
+      return source;
+    }
+
+    public long getChatId () {
+      return chatId;
+    }
+  }
+
+  public final MergeState captureMergeState () {
+    return new MergeState(this);
+  }
+
+  private boolean mergeWith (@Nullable MergeState top, boolean isBottom, @Nullable TGMessage updateTop) {
     if (top != null) {
-      top.setNeedExtraPadding(false);
-      top.setNeedExtraPresponsoredPadding(isSponsoredMessage());
+      if (updateTop != null) {
+        updateTop.setNeedExtraPadding(false);
+        updateTop.setNeedExtraPresponsoredPadding(isSponsoredMessage());
+      }
       flags |= MESSAGE_FLAG_HAS_OLDER_MESSAGE;
     } else {
       flags &= ~MESSAGE_FLAG_HAS_OLDER_MESSAGE;
@@ -738,16 +792,16 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
       setNeedExtraPadding(true);
     }
 
-    boolean isBelowHeader = top != null && top.isThreadHeader();
+    boolean isBelowHeader = top != null && top.isThreadHeader;
     flags = BitwiseUtils.setFlag(flags, MESSAGE_FLAG_BELOW_HEADER, isBelowHeader);
     updateShowBadge();
     updateBadgeText();
 
     setIsBottom(true);
 
-    if (top == null || top.isThreadHeader() != isThreadHeader() || !(isEventLog() ? needHideEventDate() || (DateUtils.isSameHour(top.getComparingDate(), getComparingDate()) /*|| !(msg.content instanceof TdApiExt.MessageChatEvent)*/) : DateUtils.isSameDay(top.getComparingDate(), getComparingDate()))) {
-      if (top != null) {
-        top.setIsBottom(true);
+    if (top == null || top.isThreadHeader != isThreadHeader() || !(isEventLog() ? needHideEventDate() || (DateUtils.isSameHour(top.comparingDate, getComparingDate()) /*|| !(msg.content instanceof TdApiExt.MessageChatEvent)*/) : DateUtils.isSameDay(top.comparingDate, getComparingDate()))) {
+      if (updateTop != null) {
+        updateTop.setIsBottom(true);
       }
       setHeaderEnabled(!headerDisabled());
       if ((top != null || getDate() != 0 || isScheduled()) && !isSponsoredMessage() && (!isBelowHeader || messagesController().areScheduledOnly())) {
@@ -764,10 +818,12 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
     boolean useBubbles = useBubbles();
     boolean isChannel = isChannel();
 
-    TdApi.Message topMessage = top.getMessage();
-    if (top.headerDisabled() || (flags & FLAG_SHOW_BADGE) != 0 || !tdlib.isSameSender(topMessage, msg) || !TD.isSameSource(topMessage, msg, forceForwardOrImportInfo()) || topMessage.viaBotUserId != msg.viaBotUserId || !StringUtils.equalsOrBothEmpty(topMessage.authorSignature, msg.authorSignature) || mergeDisabled() || (useBubbles ? top.isOutgoingBubble() != isOutgoingBubble() : top.getMessage().mediaAlbumId != msg.mediaAlbumId || msg.mediaAlbumId != 0)) {
+    TdApi.Message topMessage = top.message;
+    if (top.headerDisabled || (flags & FLAG_SHOW_BADGE) != 0 || !tdlib.isSameSender(topMessage, msg) || !TD.isSameSource(topMessage, msg, forceForwardOrImportInfo()) || topMessage.viaBotUserId != msg.viaBotUserId || !StringUtils.equalsOrBothEmpty(topMessage.authorSignature, msg.authorSignature) || mergeDisabled() || (useBubbles ? top.isOutgoingBubble != isOutgoingBubble() : topMessage.mediaAlbumId != msg.mediaAlbumId || msg.mediaAlbumId != 0)) {
       setHeaderEnabled(!headerDisabled());
-      top.setIsBottom(true);
+      if (updateTop != null) {
+        updateTop.setIsBottom(true);
+      }
       return false;
     }
 
@@ -788,31 +844,39 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
     }
 
     if (!(useBubbles && isChannel && msg.forwardInfo != null && msg.forwardInfo.origin.getConstructor() == TdApi.MessageOriginUser.CONSTRUCTOR) &&
-      msg.date - top.getMergeTime() < maxTimeDiff && top.getMergeIndex() < maxIndex) {
+      msg.date - top.mergeTime < maxTimeDiff && top.mergeIndex < maxIndex) {
       flags &= ~FLAG_HEADER_ENABLED;
-      mergeTime = top.getMergeTime();
-      mergeIndex = top.getMergeIndex() + 1;
-      if (top.isForward() && isForward()) {
+      mergeTime = top.mergeTime;
+      mergeIndex = top.mergeIndex + 1;
+      if (top.isForward && isForward()) {
         flags |= FLAG_MERGE_FORWARD;
-        top.setMergeBottom(true);
+        if (updateTop != null) {
+          updateTop.setMergeBottom(true);
+        }
       } else {
         flags &= ~FLAG_MERGE_FORWARD;
-        top.setMergeBottom(false);
+        if (updateTop != null) {
+          updateTop.setMergeBottom(false);
+        }
       }
       if (isOutgoing()) {
-        if (!headerDisabled() && !isChannel && ((isSending() || isUnread()) != (top.isUnread() || top.isSending()))) {
+        if (!headerDisabled() && !isChannel && ((isSending() || isUnread()) != top.isUnreadOrSending)) {
           flags |= FLAG_SHOW_TICKS;
         } else {
           flags &= ~FLAG_SHOW_TICKS;
         }
       }
 
-      top.setIsBottom(false);
+      if (updateTop != null) {
+        updateTop.setIsBottom(false);
+      }
       return true;
     }
 
     setHeaderEnabled(!headerDisabled());
-    top.setIsBottom(true);
+    if (updateTop != null) {
+      updateTop.setIsBottom(true);
+    }
 
     return false;
   }
@@ -1183,11 +1247,44 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
     }
   }
 
+  /**
+   * Builds layout of the incoming message before it is passed to the UI thread,
+   * assuming it will be placed right below the message {@code top} has been captured from.
+   *
+   * Merge is only predicted from the snapshot, and actual merge is performed once the message is added to the adapter.
+   */
+  @AnyThread
+  public void prepareLayoutAhead (@Nullable MergeState top) {
+    mergeWith(top, true, null);
+    prepareLayout();
+  }
+
+  /**
+   * Same as {@link #prepareLayout()}, but keeps the current layout when it has been built
+   * for the same width and nothing that affects it has changed since then,
+   * e.g. when merge predicted in {@link #prepareLayoutAhead(MergeState)} turned out to be correct.
+   *
+   * @return true when existing layout has been reused
+   */
+  public boolean prepareLayoutIfChanged () {
+    if (this.width != 0 && this.width == manager.getRecyclerWidth() &&
+      layoutGeneration == manager.getLayoutGeneration() &&
+      layoutFlags == (flags & ~LAYOUT_INDEPENDENT_FLAGS) &&
+      layoutMergeIndex == getMergeIndex() &&
+      StringUtils.equalsOrBothEmpty(layoutDate, date)) {
+      return true;
+    }
+    prepareLayout();
+    return false;
+  }
+
   public void buildLayout (int width) {
     if (width == 0 || this.width == width) {
       return;
     }
 
+    PerfTrace.begin("message.layout");
+
     this.width = width;
 
     if (useBubbles()) {
@@ -1267,6 +1364,13 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
     height = computeHeight();
 
     flags |= FLAG_LAYOUT_BUILT;
+
+    layoutFlags = flags & ~LAYOUT_INDEPENDENT_FLAGS;
+    layoutMergeIndex = getMergeIndex();
+    layoutDate = date;
+    layoutGeneration = manager.getLayoutGeneration();
+
+    PerfTrace.end();
   }
 
   protected int getContentMaxWidth () {
@@ -3790,11 +3894,6 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
       this.lastMergeRadius = bubbleMergeRadius;
       this.lastDefaultRadius = bubbleDefaultRadius;
 
-      if (needBubble) {
-        bubblePath.reset();
-        bubbleClipPath.reset();
-      }
-
       if (alignBubbleRight()) {
         int translateBy = width - rightContentEdge - leftContentEdge;
         leftContentEdge += translateBy;
@@ -3814,24 +3913,29 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
         final boolean mergeTop = !headerDisabled(); /* && !drawBubbleTimeOverContent()*/ // !hasHeader() && !headerDisabled();
         final boolean mergeBottom = (flags & MESSAGE_FLAG_IS_BOTTOM) == 0 || (msg.content.getConstructor() == TdApi.MessageGame.CONSTRUCTOR);
 
-        synchronized (bubblePath) {
+        synchronized (bubblePathRect) {
           final boolean alignContentRight = alignBubbleRight();
 
+          bubblePath = bubbleClipPath = null;
+          isCircleBubble = circleBubble;
           if (circleBubble) {
             bottomRightRadius = bottomLeftRadius = topLeftRadius = topRightRadius = dr;
-            float centerX = (leftContentEdge + rightContentEdge) * .5f;
-            float centerY = bottomContentEdge - dr;
-            bubblePath.addCircle(centerX, centerY, dr, Path.Direction.CW);
-            bubbleClipPath.addCircle(centerX, centerY, dr, Path.Direction.CW);
+            clipBottomRightRadius = clipBottomLeftRadius = clipTopLeftRadius = clipTopRightRadius = dr;
             bubblePathRect.set(leftContentEdge, bottomContentEdge - bubbleWidth, rightContentEdge, bottomContentEdge);
             bubbleClipPathRect.set(bubblePathRect);
           } else {
             bubblePathRect.set(leftContentEdge, topContentEdge, rightContentEdge, bottomContentEdge);
-            DrawAlgorithms.buildPath(bubblePath, bubblePathRect, topLeftRadius = (mergeTop && !alignContentRight ? mr : dr), topRightRadius = (mergeTop && alignContentRight ? mr : dr), bottomRightRadius = (mergeBottom && alignContentRight ? mr : dr), bottomLeftRadius = (mergeBottom && !alignContentRight ? mr : dr));
+            topLeftRadius = (mergeTop && !alignContentRight ? mr : dr);
+            topRightRadius = (mergeTop && alignContentRight ? mr : dr);
+            bottomRightRadius = (mergeBottom && alignContentRight ? mr : dr);
+            bottomLeftRadius = (mergeBottom && !alignContentRight ? mr : dr);
             bubbleClipPathRect.set(leftContentEdge + bubblePaddingLeft, topContentEdge + bubblePaddingTop - getBubbleSpecialPaddingTop(), rightContentEdge - bubblePaddingRight, bottomContentEdge - bubblePaddingBottom);
             dr /= 1.5;
             mr /= 1.5;
-            DrawAlgorithms.buildPath(bubbleClipPath, bubbleClipPathRect, mergeTop && !alignContentRight ? mr : dr, mergeTop && alignContentRight ? mr : dr, mergeBottom && alignContentRight ? mr : dr, mergeBottom && !alignContentRight ? mr : dr);
+            clipTopLeftRadius = mergeTop && !alignContentRight ? mr : dr;
+            clipTopRightRadius = mergeTop && alignContentRight ? mr : dr;
+            clipBottomRightRadius = mergeBottom && alignContentRight ? mr : dr;
+            clipBottomLeftRadius = mergeBottom && !alignContentRight ? mr : dr;
           }
         }
       }
@@ -3863,12 +3967,61 @@ public abstract class TGMessage implements InvalidateContentProvider, TdlibDeleg
     // override
   }
 
-  public @Nullable Path getBubblePath () {
-    return disableBubble() ? null : bubblePath;
+  private @Nullable Path getBubblePath () {
+    synchronized (bubblePathRect) {
+      if (bubblePath == null && !bubblePathRect.isEmpty()) {
+        bubblePath = isCircleBubble ?
+          BubblePathCache.obtainCircle(bubblePathRect.width(), topLeftRadius) :
+          BubblePathCache.obtain(bubblePathRect.width(), bubblePathRect.height(), topLeftRadius, topRightRadius, bottomRightRadius, bottomLeftRadius);
+      }
+      return bubblePath;
+    }
   }
 
-  public Path getBubbleClipPath () {
-    return bubbleClipPath;
+  private @Nullable Path getBubbleClipPath () {
+    synchronized (bubblePathRect) {
+      if (bubbleClipPath == null && !bubbleClipPathRect.isEmpty()) {
+        bubbleClipPath = isCircleBubble ?
+          BubblePathCache.obtainCircle(bubbleClipPathRect.width(), clipTopLeftRadius) :
+          BubblePathCache.obtain(bubbleClipPathRect.width(), bubbleClipPathRect.height(), clipTopLeftRadius, clipTopRightRadius, clipBottomRightRadius, clipBottomLeftRadius);
+      }
+      return bubbleClipPath;
+    }
+  }
+
+  /**
+   * Fills bubble outline, paths are shared between messages and are placed at (0, 0), so canvas is translated instead.
+   */
+  protected final void drawBubblePath (Canvas c, Paint paint) {
+    Path path = disableBubble() ? null : getBubblePath();
+    if (path != null) {
+      final float left = bubblePathRect.left, top = bubblePathRect.top;
+      c.translate(left, top);
+      c.drawPath(path, paint);
+      c.translate(-left, -top);
+    }
+  }
+
+  /**
+   * Clips canvas to the bubble content, see {@link ViewSupport#clipPath(Canvas, Path)}.
+   *
+   * @return Save count to be passed to {@link ViewSupport#restoreClipPath(Canvas, int)}.
+   */
+  protected final int clipBubble (Canvas c) {
+    Path path = getBubbleClipPath();
+    if (path == null) {
+      return Integer.MIN_VALUE;
+    }
+    final float left = bubbleClipPathRect.left, top = bubbleClipPathRect.top;
+    final int saveCount = c.save();
+    c.translate(left, top);
+    int clipSaveCount = ViewSupport.clipPath(c, path);
+    c.translate(-left, -top);
+    if (clipSaveCount == Integer.MIN_VALUE) {
+      c.restoreToCount(saveCount);
+      return Integer.MIN_VALUE;
+    }
+    return saveCount;
   }
 
   protected static int getBubbleTimePartHeight () {
@@ -710,7 +710,7 @@ public class TGMessageLocation extends TGMessage implements LiveLocationManager.
   protected void drawContent (MessageView view, Canvas c, final int startX, int startY, int maxWidth, Receiver mapReceiver, Receiver iconReceiver) {
     boolean useBubbles = useBubbles();
     final boolean clipped = useBubbles && !useForward();
-    final int saveCount = clipped ? ViewSupport.clipPath(c, getBubbleClipPath()) : Integer.MIN_VALUE;
+    final int saveCount = clipped ? clipBubble(c) : Integer.MIN_VALUE;
     boolean useFullWidth = useFullWidth();
 
     mapReceiver.setBounds(getContentX(), getContentY(), getContentX() + previewWidth, getContentY() + previewHeight);
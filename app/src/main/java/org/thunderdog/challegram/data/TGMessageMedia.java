@@ -551,7 +551,7 @@ public class TGMessageMedia extends TGMessage {
   @Override
   protected void drawContent (MessageView view, Canvas c, int startX, int startY, int maxWidth, ComplexReceiver complexReceiver) {
     final boolean clipped = useBubbles() && !useForward();
-    final int saveCount = clipped ? ViewSupport.clipPath(c, getBubbleClipPath()) : Integer.MIN_VALUE;
+    final int saveCount = clipped ? clipBubble(c) : Integer.MIN_VALUE;
     mosaicWrapper.draw(view, c, startX, startY, complexReceiver, useFullWidth());
     if (clipped) {
       ViewSupport.restoreClipPath(c, saveCount);
@@ -760,7 +760,7 @@ public class TGMessagePoll extends TGMessage implements ClickHelper.Delegate, Co
       if (useBubble() && !useForward()) {
         final int restoreToCount = Views.save(c);
         c.clipRect(getActualLeftContentEdge(), startY, getActualRightContentEdge(), getBottomContentEdge());
-        c.drawPath(getBubblePath(), Paints.fillingPaint(Theme.getColor(getPressColorId())));
+        drawBubblePath(c, Paints.fillingPaint(Theme.getColor(getPressColorId())));
         Views.restore(c, restoreToCount);
       } else {
         int rightX = startX + maxWidth + (useBubbles() ? getBubblePaddingRight() : 0);
@@ -231,11 +231,13 @@ public class TGStickerSetInfo {
   public void show (ViewController<?> context) {
     StickerSetWrap wrap;
     if (stickerSet != null) {
-      stickerSet.isInstalled = info.isInstalled;
-      stickerSet.isArchived = info.isArchived;
-      stickerSet.isViewed = info.isViewed;
-      stickerSet.stickerType = info.stickerType;
-      wrap = StickerSetWrap.showStickerSet(context, stickerSet);
+      // Sticker set may be shared through TdlibStickerSetManager, so the state is applied to a copy
+      TdApi.StickerSetInfo stickerSetInfo = Td.toStickerSetInfo(stickerSet);
+      stickerSetInfo.isInstalled = info.isInstalled;
+      stickerSetInfo.isArchived = info.isArchived;
+      stickerSetInfo.isViewed = info.isViewed;
+      stickerSetInfo.stickerType = info.stickerType;
+      wrap = StickerSetWrap.showStickerSet(context, stickerSetInfo, stickerSet);
     } else if (info != null && info.id != 0) {
       wrap = StickerSetWrap.showStickerSet(context, info);
     } else {
@@ -1391,21 +1391,19 @@ public class TGWebPage implements FileProgressComponent.SimpleListener, MediaWra
             return;
           }
 
-          button.makeInactive();
-
           InstantViewController controller = new InstantViewController(parent.controller().context(), parent.tdlib());
           controller.setArguments(new InstantViewController.Args(instantViewSource, instantView, anchor));
-          try {
-            controller.show();
-          } catch (UnsupportedOperationException e) {
-            Log.w("Unsupported Instant View block:%s", e, instantViewSource.url);
-            button.showTooltip(view, R.string.InstantViewUnsupported);
-            controller.destroy();
-          } catch (Throwable t) {
-            Log.e("Unable to open Instant View, url:%s", t, instantViewSource.url);
-            button.showTooltip(view, R.string.InstantViewError);
+          controller.showAsync(button::makeInactive, t -> {
+            button.makeInactive();
+            if (t instanceof UnsupportedOperationException) {
+              Log.w("Unsupported Instant View block:%s", t, instantViewSource.url);
+              button.showTooltip(view, R.string.InstantViewUnsupported);
+            } else {
+              Log.e("Unable to open Instant View, url:%s", t, instantViewSource.url);
+              button.showTooltip(view, R.string.InstantViewError);
+            }
             controller.destroy();
-          }
+          });
         });
       }
     };
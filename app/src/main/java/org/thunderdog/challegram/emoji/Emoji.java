@@ -63,7 +63,7 @@ public class Emoji {
   public static final @Deprecated String CUSTOM_EMOJI_CACHE_OLD = "custom_emoji_id_";
   public static final String CUSTOM_EMOJI_CACHE = "_";
 
-  private static Emoji instance;
+  private static volatile Emoji instance;
 
   public static Emoji instance () {
     if (instance == null) {
@@ -1030,12 +1030,34 @@ public class Emoji {
     return spannable != null ? spannable : cs;
   }
 
+  /**
+   * Starts loading sprite tiles of the first {@code limit} emoji, e.g. of the section user is scrolling to.
+   */
+  public void prefetch (String[] emoji, int limit) {
+    int count = Math.min(emoji.length, limit);
+    for (int i = 0; i < count; i++) {
+      EmojiInfo info = getEmojiInfo(emoji[i], false);
+      if (info != null) {
+        bitmaps.prefetch(info);
+      }
+    }
+  }
+
+  /**
+   * Logs time it takes to load all emoji requested from now on, along with sprite memory usage.
+   */
+  public void measureLoading () {
+    if (Log.isEnabled(Log.TAG_EMOJI)) {
+      bitmaps.startMeasuring();
+    }
+  }
+
   public boolean draw (@NonNull Canvas c, EmojiInfo info, Rect outRect, int alpha) {
     if (alpha == 0)
       return false;
     if (alpha == 255)
       return draw(c, info, outRect);
-    EmojiBitmaps.Entry bitmap = bitmaps.getBitmap(info.section, info.page);
+    EmojiBitmaps.Entry bitmap = bitmaps.getBitmap(info);
     if (bitmap != null && bitmap.isLoaded()) {
       Paint paint = Paints.getBitmapPaint();
       paint.setAlpha(alpha);
@@ -1051,7 +1073,7 @@ public class Emoji {
     if (info == null) {
       return false;
     }
-    EmojiBitmaps.Entry bitmap = bitmaps.getBitmap(info.section, info.page);
+    EmojiBitmaps.Entry bitmap = bitmaps.getBitmap(info);
     if (bitmap != null) {
       return bitmap.draw(c, info, outRect, Paints.getBitmapPaint());
     } else {
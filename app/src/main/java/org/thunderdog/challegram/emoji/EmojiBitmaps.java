@@ -16,13 +16,18 @@ package org.thunderdog.challegram.emoji;
 
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
 import android.graphics.Canvas;
 import android.graphics.Paint;
 import android.graphics.Rect;
 import android.os.Build;
+import android.os.SystemClock;
+import android.util.LruCache;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.collection.SparseArrayCompat;
 
 import org.thunderdog.challegram.BuildConfig;
 import org.thunderdog.challegram.Log;
@@ -32,6 +37,7 @@ import org.thunderdog.challegram.core.Media;
 import org.thunderdog.challegram.telegram.TGLegacyManager;
 import org.thunderdog.challegram.tool.EmojiCode;
 import org.thunderdog.challegram.tool.Screen;
+import org.thunderdog.challegram.tool.Strings;
 import org.thunderdog.challegram.tool.UI;
 
 import java.io.File;
@@ -39,8 +45,17 @@ import java.io.InputStream;
 import java.util.Locale;
 
 import me.vkryl.core.lambda.Destroyable;
+import me.vkryl.core.unit.ByteUnit;
 
+/**
+ * Emoji sprite pages split into tiles.
+ *
+ * Each tile is a single row of emoji of a sprite page, decoded on demand with {@link BitmapRegionDecoder},
+ * so only rows that are actually displayed occupy memory. Decoded tiles are kept in LRU cache limited by {@link #MAX_SIZE}.
+ */
 class EmojiBitmaps {
+  private static final long MAX_SIZE = ByteUnit.MIB.toBytes(12);
+
   public static class Entry implements Destroyable {
     public Bitmap bitmap;
     public int inSampleSize;
@@ -75,9 +90,14 @@ class EmojiBitmaps {
       isLoading = false;
     }
 
+    private static final Rect tileRect = new Rect();
+
     public boolean draw (@NonNull Canvas c, EmojiInfo info, Rect outRect, Paint paint) {
       if (isLoaded()) {
-        c.drawBitmap(bitmap, info.getRect(inSampleSize), outRect, paint);
+        Rect rect = info.getRect(inSampleSize);
+        // Tile starts at the top of the emoji row
+        tileRect.set(rect.left, 0, rect.right, rect.height());
+        c.drawBitmap(bitmap, tileRect, outRect, paint);
         return true;
       }
       return false;
@@ -85,7 +105,21 @@ class EmojiBitmaps {
   }
 
   public final String identifier;
-  private final Entry[][] bitmaps = new Entry[5][EmojiCode.SPLIT_COUNT];
+  private final LruCache<Integer, Entry> tiles = new LruCache<Integer, Entry>((int) MAX_SIZE) {
+    @Override
+    protected int sizeOf (Integer key, Entry value) {
+      return value.bitmap.getByteCount();
+    }
+
+    @Override
+    protected void entryRemoved (boolean evicted, Integer key, Entry oldValue, Entry newValue) {
+      oldValue.performDestroy();
+    }
+  };
+  // Tiles that are being loaded or failed to load, LruCache requires entry sizes to stay unchanged
+  private final SparseArrayCompat<Entry> pendingTiles = new SparseArrayCompat<>();
+  private int loadingTileCount;
+  private final RegionDecoder[][] decoders = new RegionDecoder[5][EmojiCode.SPLIT_COUNT];
   private boolean recycled;
 
   public final float scaleDp;
@@ -99,6 +133,10 @@ class EmojiBitmaps {
     }
   }
 
+  private static InputStream openAsset (String filePath, boolean isAsset) throws java.io.IOException {
+    return isAsset ? UI.getAppContext().getAssets().open(filePath) : U.openInputStream(filePath);
+  }
+
   private static Bitmap loadAsset (String filePath, boolean isAsset, int sampleSize) {
     if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P && Config.MODERN_IMAGE_DECODER_ENABLED) {
       try {
@@ -122,7 +160,7 @@ class EmojiBitmaps {
         Log.e("Cannot load emoji bitmap (Pie)", t);
       }
     } else {
-      try (InputStream is = isAsset ? UI.getAppContext().getAssets().open(filePath) : U.openInputStream(filePath)) {
+      try (InputStream is = openAsset(filePath, isAsset)) {
         BitmapFactory.Options opts = new BitmapFactory.Options();
         opts.inJustDecodeBounds = false;
         opts.inSampleSize = sampleSize;
@@ -138,71 +176,267 @@ class EmojiBitmaps {
     return Screen.density() <= 1.0f ? 2 : 1;
   }
 
+  private static int getRow (EmojiInfo info) {
+    return info.position / EmojiCode.COLUMNS[info.section][info.page];
+  }
+
+  private static int makeKey (int section, int page, int row) {
+    return (section << 24) | (page << 16) | row;
+  }
+
   @Nullable
-  public Entry getBitmap (int section, int page) {
-    return isReady(section, page) ? bitmaps[section][page] : null;
+  @UiThread
+  public Entry getBitmap (EmojiInfo info) {
+    if (recycled)
+      return null;
+    int row = getRow(info);
+    Entry entry = tiles.get(makeKey(info.section, info.page, row));
+    if (entry != null) {
+      return entry;
+    }
+    requestTile(info.section, info.page, row);
+    return null;
   }
 
-  private boolean isReady (int page1, int page2) {
+  /**
+   * Starts loading tile containing the emoji, if it is not loaded yet.
+   */
+  @UiThread
+  public void prefetch (EmojiInfo info) {
     if (recycled)
-      return false;
-    Entry bitmap = bitmaps[page1][page2];
-    if (bitmap == null) {
-      bitmap = new Entry();
-      bitmaps[page1][page2] = bitmap;
-    }
-    if (!bitmap.isLoaded()) {
-      if (bitmap.markAsLoading()) {
-        Media.instance().post(() -> loadEmoji(page1, page2));
-      }
-      return false;
+      return;
+    int row = getRow(info);
+    int key = makeKey(info.section, info.page, row);
+    if (tiles.get(key) == null) {
+      requestTile(info.section, info.page, row);
+    }
+  }
+
+  private void requestTile (int section, int page, int row) {
+    int key = makeKey(section, page, row);
+    Entry entry = pendingTiles.get(key);
+    if (entry == null) {
+      entry = new Entry();
+      pendingTiles.put(key, entry);
+    }
+    if (entry.markAsLoading()) {
+      loadingTileCount++;
+      final Entry pendingEntry = entry;
+      Media.instance().post(() -> loadTile(pendingEntry, key, section, page, row));
     }
-    return true;
   }
 
   public void recycle () {
     if (!recycled) {
       recycled = true;
-      for (Entry[] bitmaps : this.bitmaps) {
-        for (int i = 0; i < bitmaps.length; i++) {
-          Entry bitmap = bitmaps[i];
-          if (bitmap != null) {
-            bitmap.performDestroy();
-            bitmaps[i] = null;
+      tiles.evictAll();
+      pendingTiles.clear();
+      loadingTileCount = 0;
+      Media.instance().post(() -> {
+        for (RegionDecoder[] decoders : this.decoders) {
+          for (int i = 0; i < decoders.length; i++) {
+            if (decoders[i] != null) {
+              decoders[i].recycle();
+              decoders[i] = null;
+            }
           }
         }
+        pageDecoder = null;
+      });
+    }
+  }
+
+  // Measurements
+
+  private long measureStartTime;
+  private int measureLoadedTileCount;
+
+  /**
+   * Reports time until all requested tiles get loaded, e.g. when emoji keyboard is opened.
+   */
+  @UiThread
+  public void startMeasuring () {
+    measureStartTime = SystemClock.uptimeMillis();
+    measureLoadedTileCount = 0;
+  }
+
+  public String getStats () {
+    return String.format(Locale.US, "tiles:%d size:%s loading:%d hits:%d misses:%d evictions:%d",
+      tiles.snapshot().size(),
+      Strings.buildSize(tiles.size()),
+      loadingTileCount,
+      tiles.hitCount(),
+      tiles.missCount(),
+      tiles.evictionCount()
+    );
+  }
+
+  // Loading
+
+  private static class RegionDecoder {
+    private final BitmapRegionDecoder decoder;
+    private final String filePath;
+    private final boolean isAsset;
+
+    // Whole page, when region decoding is unavailable
+    private Bitmap page;
+    private int pageSampleSize;
+
+    RegionDecoder (@Nullable BitmapRegionDecoder decoder, String filePath, boolean isAsset) {
+      this.decoder = decoder;
+      this.filePath = filePath;
+      this.isAsset = isAsset;
+    }
+
+    @Nullable
+    Bitmap getPage (int sampleSize) {
+      if (page == null || pageSampleSize != sampleSize) {
+        releasePage();
+        page = loadAsset(filePath, isAsset, sampleSize);
+        pageSampleSize = sampleSize;
+      }
+      return U.isValidBitmap(page) ? page : null;
+    }
+
+    void releasePage () {
+      if (page != null) {
+        page.recycle();
+        page = null;
+      }
+    }
+
+    void recycle () {
+      if (decoder != null) {
+        try {
+          decoder.recycle();
+        } catch (Throwable ignored) { }
       }
+      releasePage();
     }
   }
 
-  private void loadEmoji (int section, int page) {
-    String fileSuffix = String.format(Locale.US, "%d_%d.png", section, page);
+  // Only one whole page is kept in memory, Media thread only
+  private RegionDecoder pageDecoder;
 
-    int sampleSize = calculateSampleSize();
-    Bitmap result = null;
-    int attemptNo = 0;
-    do {
+  private static RegionDecoder openDecoder (String filePath, boolean isAsset) {
+    try (InputStream is = openAsset(filePath, isAsset)) {
+      BitmapRegionDecoder decoder;
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+        decoder = BitmapRegionDecoder.newInstance(is);
+      } else {
+        //noinspection deprecation
+        decoder = BitmapRegionDecoder.newInstance(is, false);
+      }
+      return new RegionDecoder(decoder, filePath, isAsset);
+    } catch (Throwable t) {
+      Log.i(Log.TAG_EMOJI, "BitmapRegionDecoder failed, falling back to full decoding", t);
+    }
+    if (isAsset || new File(filePath).exists()) {
+      return new RegionDecoder(null, filePath, isAsset);
+    }
+    return null;
+  }
+
+  private RegionDecoder getDecoder (int section, int page) {
+    RegionDecoder decoder = decoders[section][page];
+    if (decoder == null) {
+      String fileSuffix = String.format(Locale.US, "%d_%d.png", section, page);
       if (!BuildConfig.EMOJI_BUILTIN_ID.equals(identifier)) {
         File file = new File(new File(Emoji.getEmojiPackDirectory(), identifier), fileSuffix);
-        result = loadAsset(file.getPath(), false, sampleSize);
+        if (file.exists()) {
+          decoder = openDecoder(file.getPath(), false);
+        }
       }
-      if (result == null) {
-        result = loadAsset(String.format(Locale.US, "emoji/v%d_%s", (12 + BuildConfig.EMOJI_VERSION), fileSuffix), true, sampleSize);
+      if (decoder == null) {
+        decoder = openDecoder(String.format(Locale.US, "emoji/v%d_%s", (12 + BuildConfig.EMOJI_VERSION), fileSuffix), true);
       }
-      if (U.isValidBitmap(result)) {
-        break;
+      decoders[section][page] = decoder;
+    }
+    return decoder;
+  }
+
+  private Bitmap decodeRow (RegionDecoder decoder, int section, int page, int row, int sampleSize) {
+    int emojiSize = (int) (30 * EmojiCode.SCALE);
+    int margin = (int) (EmojiCode.MARGINS[section][page] * EmojiCode.SCALE);
+    int top = row * (emojiSize + margin);
+    if (decoder.decoder != null) {
+      int bottom = Math.min(top + emojiSize, decoder.decoder.getHeight());
+      if (top >= bottom)
+        return null;
+      BitmapFactory.Options opts = new BitmapFactory.Options();
+      opts.inSampleSize = sampleSize;
+      try {
+        return decoder.decoder.decodeRegion(new Rect(0, top, decoder.decoder.getWidth(), bottom), opts);
+      } catch (Throwable t) {
+        Log.e("Cannot decode emoji row", t);
+        return null;
+      }
+    }
+    // Region decoding is unavailable, cutting row out of the whole page,
+    // which is decoded once for all rows of the page
+    if (pageDecoder != decoder) {
+      if (pageDecoder != null) {
+        pageDecoder.releasePage();
+      }
+      pageDecoder = decoder;
+    }
+    Bitmap pageBitmap = decoder.getPage(sampleSize);
+    if (pageBitmap == null)
+      return null;
+    Bitmap result = null;
+    try {
+      int sampledTop = row * (emojiSize / sampleSize + (int) (EmojiCode.MARGINS[section][page] * (EmojiCode.SCALE / sampleSize)));
+      int sampledBottom = Math.min(sampledTop + emojiSize / sampleSize, pageBitmap.getHeight());
+      if (sampledTop < sampledBottom) {
+        result = Bitmap.createBitmap(pageBitmap, 0, sampledTop, pageBitmap.getWidth(), sampledBottom - sampledTop);
       }
-      attemptNo++;
-      sampleSize++;
-    } while (attemptNo < 3);
+    } catch (Throwable t) {
+      Log.e("Cannot cut emoji row", t);
+    }
+    if (result == pageBitmap) {
+      // Row covers the whole page, so the page is now owned by the tile
+      decoder.page = null;
+    }
+    return result;
+  }
+
+  private void loadTile (Entry entry, int key, int section, int page, int row) {
+    if (recycled)
+      return;
+    RegionDecoder decoder = getDecoder(section, page);
+    int sampleSize = calculateSampleSize();
+    Bitmap result = null;
+    if (decoder != null) {
+      int attemptNo = 0;
+      do {
+        result = decodeRow(decoder, section, page, row, sampleSize);
+        if (U.isValidBitmap(result)) {
+          break;
+        }
+        attemptNo++;
+        sampleSize++;
+      } while (attemptNo < 3);
+    }
     final Bitmap resultFinal = result;
     final int sampleSizeFinal = sampleSize;
     UI.post(() -> {
-      if (recycled) {
+      if (recycled || pendingTiles.get(key) != entry) {
         if (resultFinal != null)
           resultFinal.recycle();
-      } else {
-        bitmaps[section][page].setBitmap(resultFinal, sampleSizeFinal);
+        return;
+      }
+      loadingTileCount--;
+      if (U.isValidBitmap(resultFinal)) {
+        pendingTiles.remove(key);
+        entry.setBitmap(resultFinal, sampleSizeFinal);
+        tiles.put(key, entry);
+        measureLoadedTileCount++;
+      } // Otherwise keeping failed entry, so it doesn't get requested on every frame
+      if (measureStartTime != 0 && loadingTileCount == 0) {
+        if (Log.isEnabled(Log.TAG_EMOJI)) {
+          Log.i(Log.TAG_EMOJI, "Loaded %d emoji tiles in %dms, %s", measureLoadedTileCount, SystemClock.uptimeMillis() - measureStartTime, getStats());
+        }
+        measureStartTime = 0;
       }
       TGLegacyManager.instance().notifyEmojiChanged(false);
     });
@@ -29,19 +29,25 @@ public abstract class GenerationInfo {
   public static final String TYPE_LOTTIE_STICKER_PREVIEW = "asthumb";
   public static final String TYPE_VIDEO_STICKER_PREVIEW = "vsthumb";
 
+  private static final String[] TYPES = {
+    TYPE_PHOTO, TYPE_PHOTO_THUMB, TYPE_VIDEO_THUMB, TYPE_MUSIC_THUMB, TYPE_VIDEO, TYPE_AVATAR, TYPE_LOTTIE_STICKER_PREVIEW, TYPE_VIDEO_STICKER_PREVIEW
+  };
+
   protected final long generationId;
   protected final String originalPath;
   protected final String conversion;
   protected final String destinationPath;
+  private final long startTimeMs;
 
   public GenerationInfo (long generationId, String originalPath, String destinationPath, String conversion, boolean hasThumb) {
     this.generationId = generationId;
     this.conversion = conversion;
     this.originalPath = originalPath;
     this.destinationPath = destinationPath;
+    this.startTimeMs = SystemClock.elapsedRealtime();
   }
 
-  public String getKey () {
+  public static String makeKey (String originalPath, String conversion) {
     StringBuilder b = new StringBuilder(originalPath);
     if (conversion != null) {
       b.append('?');
@@ -50,6 +56,25 @@ public abstract class GenerationInfo {
     return b.toString();
   }
 
+  public String getKey () {
+    return makeKey(originalPath, conversion);
+  }
+
+  public String getStatsType () {
+    if (conversion != null) {
+      for (String type : TYPES) {
+        if (conversion.startsWith(type)) {
+          return type;
+        }
+      }
+    }
+    return "unknown";
+  }
+
+  public long getElapsedTime () {
+    return SystemClock.elapsedRealtime() - startTimeMs;
+  }
+
   public long getGenerationId () {
     return generationId;
   }
@@ -68,6 +93,7 @@ public abstract class GenerationInfo {
   }
 
   private Runnable onCancel;
+  private volatile boolean isCanceled, isDetached;
 
   public void setOnCancel (Runnable onCancel) {
     synchronized (this) {
@@ -77,6 +103,7 @@ public abstract class GenerationInfo {
 
   public void cancel () {
     synchronized (this) {
+      isCanceled = true;
       if (onCancel != null) {
         onCancel.run();
         onCancel = null;
@@ -84,6 +111,21 @@ public abstract class GenerationInfo {
     }
   }
 
+  public boolean isCanceled () {
+    return isCanceled;
+  }
+
+  /**
+   * Marks generation as stopped by TDLib, while its result is still awaited by identical generations.
+   */
+  public void detach () {
+    isDetached = true;
+  }
+
+  public boolean isDetached () {
+    return isDetached;
+  }
+
   public static String randomStamp () {
     return SystemClock.uptimeMillis() + "_" + System.currentTimeMillis() + "_" + Math.random();
   }
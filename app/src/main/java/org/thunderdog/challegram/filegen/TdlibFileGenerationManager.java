@@ -70,6 +70,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Future;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -112,13 +113,51 @@ public final class TdlibFileGenerationManager {
     if (_contentExecutor == null) {
       synchronized (this) {
         if (_contentExecutor == null) {
-          _contentExecutor = new ThreadPoolExecutor(1, 4, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>());
+          _contentExecutor = newExecutor(4);
         }
       }
     }
     return _contentExecutor;
   }
 
+  private ThreadPoolExecutor photoExecutor () {
+    if (_photoExecutor == null) {
+      synchronized (this) {
+        if (_photoExecutor == null) {
+          _photoExecutor = newExecutor(getPhotoLaneCount());
+        }
+      }
+    }
+    return _photoExecutor;
+  }
+
+  private ThreadPoolExecutor thumbExecutor () {
+    if (_thumbExecutor == null) {
+      synchronized (this) {
+        if (_thumbExecutor == null) {
+          _thumbExecutor = newExecutor(getPhotoLaneCount());
+        }
+      }
+    }
+    return _thumbExecutor;
+  }
+
+  private static ThreadPoolExecutor newExecutor (int threadCount) {
+    // ThreadPoolExecutor never grows beyond core size when its queue is unbounded,
+    // so core size is the actual concurrency. Idle threads are allowed to die.
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(threadCount, threadCount, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>());
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
+  private static int getPhotoLaneCount () {
+    // Each photo generation may hold several full-sized bitmaps at once
+    if (Runtime.getRuntime().maxMemory() < ByteUnit.MIB.toBytes(256)) {
+      return 1;
+    }
+    return MathUtils.clamp(Runtime.getRuntime().availableProcessors() / 2, 1, 3);
+  }
+
   private static class FileGenQueue extends BaseThread {
     private final TdlibFileGenerationManager context;
 
@@ -133,8 +172,6 @@ public final class TdlibFileGenerationManager {
     }
   }
 
-  private static final int TASK_GENERATE_PHOTO = 0;
-  private static final int TASK_GENERATE_THUMB = 1;
   private static final int TASK_GENERATE_AVATAR = 3;
   private static final int TASK_DOWNLOAD_HTTP = 5;
   private static final int TASK_COPY_CONTENT_STREAM = 6;
@@ -146,9 +183,13 @@ public final class TdlibFileGenerationManager {
 
   private final Tdlib tdlib;
 
-  private BaseThread _queue, _thumbQueue;
+  private BaseThread _queue;
+  private ThreadPoolExecutor _photoExecutor, _thumbExecutor;
   private VideoGen _videoGen;
   private final HashMap<Long, GenerationInfo> pendingTasks = new HashMap<>();
+  private final HashMap<String, GenerationInfo> inFlightTasks = new HashMap<>();
+  private final HashMap<Long, List<GenerationInfo>> duplicateTasks = new HashMap<>();
+  private final HashMap<String, GenerationStats> generationStats = new HashMap<>();
 
   private OkHttpClient _client;
 
@@ -167,17 +208,6 @@ public final class TdlibFileGenerationManager {
     return _queue;
   }
 
-  private BaseThread thumbQueue () {
-    if (_thumbQueue == null) {
-      synchronized (this) {
-        if (_thumbQueue == null) {
-          _thumbQueue = new FileGenQueue(this);
-        }
-      }
-    }
-    return _thumbQueue;
-  }
-
   private VideoGen videoGen () {
     if (_videoGen == null) {
       synchronized (this) {
@@ -191,16 +221,6 @@ public final class TdlibFileGenerationManager {
 
   private void process (Message msg) {
     switch (msg.what) {
-      case TASK_GENERATE_PHOTO: {
-        PhotoGenerationInfo info = (PhotoGenerationInfo) msg.obj;
-        try {
-          generatePhoto(info);
-        } catch (Throwable t) {
-          Log.e("Cannot generate photo", t);
-          failGeneration(info, ERROR_UNKNOWN, "Unknown error, see logs for details");
-        }
-        break;
-      }
       case TASK_GENERATE_AVATAR: {
         SimpleGenerationInfo info = (SimpleGenerationInfo) msg.obj;
         try {
@@ -211,13 +231,6 @@ public final class TdlibFileGenerationManager {
         }
         break;
       }
-      case TASK_GENERATE_THUMB: {
-        Object[] obj = (Object[]) msg.obj;
-        generateThumb((ThumbGenerationInfo) obj[0], (String) obj[1], msg.arg1);
-        obj[0] = null;
-        obj[1] = null;
-        break;
-      }
       case TASK_DOWNLOAD_HTTP: {
         Object[] obj = (Object[]) msg.obj;
         downloadHttpFile(BitwiseUtils.mergeLong(msg.arg1, msg.arg2), (String) obj[0], (String) obj[1]);
@@ -346,10 +359,62 @@ public final class TdlibFileGenerationManager {
     if (call != null) {
       call.cancel();
     }
-    GenerationInfo info = pendingTasks.get(generationId);
-    if (info != null) {
-      pendingTasks.remove(generationId);
-      info.cancel();
+    GenerationInfo info = pendingTasks.remove(generationId);
+    if (info == null) {
+      return;
+    }
+    String key = info.getKey();
+    GenerationInfo primary = inFlightTasks.get(key);
+    if (primary == info) {
+      List<GenerationInfo> duplicates = duplicateTasks.get(generationId);
+      if (duplicates != null && !duplicates.isEmpty()) {
+        // Identical generations still wait for the result,
+        // so keep going, but do not report it for the stopped one
+        info.detach();
+        return;
+      }
+      inFlightTasks.remove(key);
+      duplicateTasks.remove(generationId);
+    } else if (primary != null) {
+      List<GenerationInfo> duplicates = duplicateTasks.get(primary.getGenerationId());
+      if (duplicates != null && duplicates.remove(info) && duplicates.isEmpty() && primary.isDetached()) {
+        // Nobody needs the result anymore
+        inFlightTasks.remove(key);
+        duplicateTasks.remove(primary.getGenerationId());
+        primary.cancel();
+      }
+    }
+    info.cancel();
+  }
+
+  private boolean registerTask (GenerationInfo task, boolean allowDeduplication) {
+    pendingTasks.put(task.getGenerationId(), task);
+    if (allowDeduplication) {
+      String key = task.getKey();
+      GenerationInfo primary = inFlightTasks.get(key);
+      if (primary != null) {
+        List<GenerationInfo> duplicates = duplicateTasks.get(primary.getGenerationId());
+        if (duplicates == null) {
+          duplicates = new ArrayList<>();
+          duplicateTasks.put(primary.getGenerationId(), duplicates);
+        }
+        duplicates.add(task);
+        Log.i(Log.TAG_IMAGE_LOADER, "Waiting for identical generation: %s", key);
+        return false;
+      }
+      inFlightTasks.put(key, task);
+    }
+    return true;
+  }
+
+  private void submitTask (ThreadPoolExecutor executor, GenerationInfo task, Runnable act) {
+    if (registerTask(task, true)) {
+      Future<?> future = executor.submit(() -> {
+        if (!task.isCanceled()) {
+          act.run();
+        }
+      });
+      task.setOnCancel(() -> future.cancel(false));
     }
   }
 
@@ -428,7 +493,10 @@ public final class TdlibFileGenerationManager {
       if (!dataConversion.isEmpty() && type == ThumbGenerationInfo.TYPE_VIDEO) {
         VideoGenerationInfo.parseConversion(generationInfo, dataConversion);
       }
-      generateThumb(generationInfo, originalPath, resolution);
+      final int thumbResolution = resolution;
+      submitTask(thumbExecutor(), generationInfo, () ->
+        generateThumb(generationInfo, originalPath, thumbResolution)
+      );
       return;
     }
 
@@ -448,9 +516,18 @@ public final class TdlibFileGenerationManager {
         failGeneration(originalPath, conversion, generationId, ERROR_APP_FAILURE, "Incorrect conversion input: " + conversion);
         return;
       }
-      int resolutionLimit = ((PhotoGenerationInfo) task).getResolutionLimit();
-      targetQueue = resolutionLimit > 0 && resolutionLimit <= BIG_THUMB_RESOLUTION ? thumbQueue() : queue();
-      targetMessage = TASK_GENERATE_PHOTO;
+      PhotoGenerationInfo photoTask = (PhotoGenerationInfo) task;
+      int resolutionLimit = photoTask.getResolutionLimit();
+      ThreadPoolExecutor executor = resolutionLimit > 0 && resolutionLimit <= BIG_THUMB_RESOLUTION ? thumbExecutor() : photoExecutor();
+      submitTask(executor, photoTask, () -> {
+        try {
+          generatePhoto(photoTask);
+        } catch (Throwable t) {
+          Log.e("Cannot generate photo", t);
+          failGeneration(photoTask, ERROR_UNKNOWN, "Unknown error, see logs for details");
+        }
+      });
+      return;
     } else if (conversion.startsWith(GenerationInfo.TYPE_VIDEO)) {
       boolean isKnownConversion = tdlib.settings().isKnownConversion(originalPath, conversion);
       if (isKnownConversion) {
@@ -468,7 +545,7 @@ public final class TdlibFileGenerationManager {
       return;
     }
 
-    pendingTasks.put(generationId, task);
+    registerTask(task, false);
     targetQueue.sendMessage(Message.obtain(targetQueue.getHandler(), targetMessage, task), 0);
   }
 
@@ -477,10 +554,95 @@ public final class TdlibFileGenerationManager {
   private static final int ERROR_BAD_INPUT = -3;
 
   private void finishGenerationImpl (String originalPath, String conversion, long generationId, @Nullable TdApi.Error error) {
+    GenerationInfo info;
+    List<GenerationInfo> duplicates = null;
     synchronized (this) {
-      pendingTasks.remove(generationId);
-      tdlib.client().send(new TdApi.FinishFileGeneration(generationId, error), tdlib.silentHandler());
+      info = pendingTasks.remove(generationId);
+      String key = GenerationInfo.makeKey(originalPath, conversion);
+      GenerationInfo primary = inFlightTasks.get(key);
+      if (primary != null && primary.getGenerationId() == generationId) {
+        inFlightTasks.remove(key);
+        duplicates = duplicateTasks.remove(generationId);
+        info = primary;
+      }
+    }
+    if (duplicates != null && !duplicates.isEmpty()) {
+      // Result has to be copied before finishing the original generation,
+      // as TDLib moves the file out of destinationPath after that
+      for (GenerationInfo duplicate : duplicates) {
+        TdApi.Error duplicateError = error;
+        if (duplicateError == null && !copyFile(info.getDestinationPath(), duplicate.getDestinationPath())) {
+          duplicateError = new TdApi.Error(ERROR_APP_FAILURE, "Unable to copy result of the identical generation");
+        }
+        finishGenerationImpl(duplicate.getOriginalPath(), duplicate.conversion, duplicate.getGenerationId(), duplicateError);
+      }
+    }
+    synchronized (this) {
+      if (info == null || !info.isDetached()) {
+        tdlib.client().send(new TdApi.FinishFileGeneration(generationId, error), tdlib.silentHandler());
+      }
       tdlib.settings().forgetConversion(originalPath, conversion);
+      if (info != null) {
+        trackGenerationTime(info, error == null);
+      }
+    }
+  }
+
+  private static boolean copyFile (String fromPath, String toPath) {
+    try (Source in = Okio.source(new File(fromPath)); BufferedSink out = Okio.buffer(Okio.sink(new File(toPath)))) {
+      out.writeAll(in);
+      return true;
+    } catch (IOException e) {
+      Log.e("Unable to copy generated file %s to %s", e, fromPath, toPath);
+      return false;
+    }
+  }
+
+  // Stats
+
+  public static final class GenerationStats {
+    public int count, failedCount;
+    public long totalDurationMs, maxDurationMs;
+
+    public long getAverageDurationMs () {
+      return count > 0 ? totalDurationMs / count : 0;
+    }
+
+    @NonNull
+    @Override
+    public String toString () {
+      return "count: " + count + ", failed: " + failedCount + ", avg: " + getAverageDurationMs() + "ms, max: " + maxDurationMs + "ms";
+    }
+  }
+
+  private void trackGenerationTime (GenerationInfo info, boolean success) {
+    long durationMs = info.getElapsedTime();
+    GenerationStats stats = generationStats.get(info.getStatsType());
+    if (stats == null) {
+      stats = new GenerationStats();
+      generationStats.put(info.getStatsType(), stats);
+    }
+    stats.count++;
+    if (!success) {
+      stats.failedCount++;
+    }
+    stats.totalDurationMs += durationMs;
+    stats.maxDurationMs = Math.max(stats.maxDurationMs, durationMs);
+  }
+
+  public Map<String, GenerationStats> getGenerationStats () {
+    synchronized (this) {
+      Map<String, GenerationStats> result = new HashMap<>(generationStats.size());
+      for (Map.Entry<String, GenerationStats> entry : generationStats.entrySet()) {
+        GenerationStats stats = entry.getValue();
+        GenerationStats copy = new GenerationStats();
+        copy.count = stats.count;
+        copy.failedCount = stats.failedCount;
+        copy.totalDurationMs = stats.totalDurationMs;
+        copy.maxDurationMs = stats.maxDurationMs;
+        result.put(entry.getKey(), copy);
+      }
+      return result;
     }
   }
 
@@ -1006,6 +1168,9 @@ public final class TdlibFileGenerationManager {
   // Compress bitmap
 
   private void compress (GenerationInfo info, Bitmap bitmap, int quality, boolean transparent) {
+    if (info.isCanceled()) {
+      return;
+    }
     boolean failed = true;
     try (FileOutputStream out = new FileOutputStream(info.getDestinationPath())) {
       failed = !bitmap.compress(U.compressFormat(transparent), quality, out);
@@ -1205,10 +1370,6 @@ public final class TdlibFileGenerationManager {
   // Common thumb logic
 
   private void generateThumb (ThumbGenerationInfo info, String originalPath, int resolution) {
-    if (Thread.currentThread() != queue()) {
-      queue().sendMessage(Message.obtain(queue().getHandler(), TASK_GENERATE_THUMB, resolution, 0, new Object[] {info, originalPath}), 0);
-      return;
-    }
     try {
       switch (info.getType()) {
         case ThumbGenerationInfo.TYPE_PHOTO:
@@ -15,12 +15,16 @@
 package org.thunderdog.challegram.filegen;
 
 import android.annotation.TargetApi;
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
 import android.media.MediaFormat;
 import android.media.MediaMetadataRetriever;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Message;
+import android.os.SystemClock;
 
+import androidx.annotation.AnyThread;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
@@ -79,6 +83,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
 import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -88,6 +93,7 @@ import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import me.vkryl.core.MathUtils;
 import me.vkryl.core.StringUtils;
 import me.vkryl.core.lambda.RunnableData;
 import me.vkryl.core.lambda.RunnableLong;
@@ -121,24 +127,33 @@ public class VideoGen {
     private final AtomicBoolean transcodeFinished = new AtomicBoolean(false);
     private final AtomicBoolean sendOriginal = new AtomicBoolean(false);
     private final AtomicBoolean canceled = new AtomicBoolean(false);
+    private final AtomicBoolean released = new AtomicBoolean(false);
     private double transcodeProgress;
     private long readyBytes;
     private long reportedBytesCount, reportedExpectedBytesCount;
 
     private final VideoGen context;
+    private final VideoGenerationInfo info;
     private final long generationId;
     private Future<Void> task;
-    private Transformer transformer;
+    private volatile Transformer transformer;
 
-    private Entry (VideoGen context, long generationId) {
+    private final long queuedTimeMs;
+    private volatile long startTimeMs, finishTimeMs;
+
+    private Entry (VideoGen context, VideoGenerationInfo info) {
       this.context = context;
-      this.generationId = generationId;
+      this.info = info;
+      this.generationId = info.getGenerationId();
+      this.queuedTimeMs = SystemClock.elapsedRealtime();
     }
 
-    public void onTranscodeProgress (double progress, long expectedSize) {
+    public void onTranscodeProgress (double progress, long outputBytesCount) {
       if (this.transcodeProgress != progress) {
         this.transcodeProgress = progress;
-        reportBytes(expectedSize, this.reportedBytesCount);
+        this.readyBytes = outputBytesCount;
+        long expectedSize = getEstimatedTotalBytesCount();
+        reportBytes(expectedSize != -1 ? expectedSize : outputBytesCount, this.reportedBytesCount);
       }
     }
 
@@ -167,6 +182,31 @@ public class VideoGen {
       return transcodeProgress;
     }
 
+    public boolean isStarted () {
+      return startTimeMs != 0;
+    }
+
+    /**
+     * @return Time spent waiting for a free transcoding slot, in milliseconds.
+     */
+    public long getQueueDuration () {
+      long startTimeMs = this.startTimeMs;
+      return (startTimeMs != 0 ? startTimeMs : finishTimeMs != 0 ? finishTimeMs : SystemClock.elapsedRealtime()) - queuedTimeMs;
+    }
+
+    /**
+     * @return Time spent on generation since the slot was acquired, in milliseconds,
+     * or 0, if generation hasn't yet started.
+     */
+    public long getGenerationDuration () {
+      long startTimeMs = this.startTimeMs;
+      if (startTimeMs == 0) {
+        return 0;
+      }
+      long finishTimeMs = this.finishTimeMs;
+      return (finishTimeMs != 0 ? finishTimeMs : SystemClock.elapsedRealtime()) - startTimeMs;
+    }
+
     public void cancel () {
       if (task != null && !task.isDone()) {
         task.cancel(true);
@@ -177,10 +217,16 @@ public class VideoGen {
     }
   }
 
+  private static final int MAX_CONCURRENT_TRANSCODES = 3;
+
   private final Tdlib tdlib;
   private final Queue queue;
   private final HashMap<String, Entry> entries;
 
+  private int maxConcurrentTranscodes; // Accessed only from Queue
+  private final ArrayDeque<Entry> pendingEntries = new ArrayDeque<>();
+  private int activeTranscodeCount;
+
   public VideoGen (Tdlib tdlib) {
     this.tdlib = tdlib;
     this.entries = new HashMap<>();
@@ -212,11 +258,117 @@ public class VideoGen {
     void onReadyToUpload (long bytesCount, long expectedSize);
   }
 
+  // Scheduling
+
+  private static int getMaxConcurrentTranscodes () {
+    // Each transcode holds a video encoder and a decoder instance,
+    // running more of them than hardware allows makes codec configuration fail.
+    int maxEncoderInstances = 1;
+    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+      try {
+        MediaCodecList codecList = new MediaCodecList(MediaCodecList.REGULAR_CODECS);
+        for (MediaCodecInfo codecInfo : codecList.getCodecInfos()) {
+          if (!codecInfo.isEncoder()) {
+            continue;
+          }
+          for (String type : codecInfo.getSupportedTypes()) {
+            if (MimeTypes.VIDEO_H264.equalsIgnoreCase(type)) {
+              maxEncoderInstances = Math.max(maxEncoderInstances, codecInfo.getCapabilitiesForType(type).getMaxSupportedInstances());
+            }
+          }
+        }
+      } catch (Throwable t) {
+        Log.w(Log.TAG_VIDEO, "Unable to query video encoders", t);
+      }
+    }
+    int processorCount = Runtime.getRuntime().availableProcessors();
+    return MathUtils.clamp(Math.min(maxEncoderInstances, processorCount / 2), 1, MAX_CONCURRENT_TRANSCODES);
+  }
+
+  private static boolean needEncoder (VideoGenerationInfo info) {
+    return Config.MODERN_VIDEO_TRANSCODING_ENABLED || !info.disableTranscoding();
+  }
+
   @WorkerThread
   private void startConversion (final VideoGenerationInfo info) {
-    final Entry entry = new Entry(this, info.generationId);
+    final Entry entry = new Entry(this, info);
     entries.put(info.getDestinationPath(), entry);
-    convertVideo(info, entry);
+    if (!needEncoder(info)) {
+      startEntry(entry, false);
+      return;
+    }
+    if (maxConcurrentTranscodes == 0) {
+      maxConcurrentTranscodes = getMaxConcurrentTranscodes();
+      Log.i(Log.TAG_VIDEO, "Max concurrent video transcodes: %d", maxConcurrentTranscodes);
+    }
+    synchronized (pendingEntries) {
+      if (activeTranscodeCount >= maxConcurrentTranscodes) {
+        pendingEntries.offer(entry);
+        info.setOnCancel(() -> {
+          boolean removed;
+          synchronized (pendingEntries) {
+            removed = pendingEntries.remove(entry);
+          }
+          synchronized (entry) {
+            entry.canceled.set(true);
+            entry.transcodeFinished.set(true);
+          }
+          if (removed) {
+            // Entry never acquired a slot
+            entry.released.set(true);
+            releaseEntry(entry);
+          }
+        });
+        Log.i(Log.TAG_VIDEO, "Video generation postponed, active: %d, pending: %d", activeTranscodeCount, pendingEntries.size());
+        return;
+      }
+      activeTranscodeCount++;
+    }
+    startEntry(entry, true);
+  }
+
+  @WorkerThread
+  private void startEntry (Entry entry, boolean holdsSlot) {
+    entry.startTimeMs = SystemClock.elapsedRealtime();
+    if (!holdsSlot) {
+      // Mark as released, so finishing this entry does not free someone else's slot
+      entry.released.set(true);
+    }
+    convertVideo(entry.info, entry);
+  }
+
+  @WorkerThread
+  private void startPendingEntries () {
+    while (true) {
+      Entry entry;
+      synchronized (pendingEntries) {
+        if (activeTranscodeCount >= maxConcurrentTranscodes || pendingEntries.isEmpty()) {
+          return;
+        }
+        entry = pendingEntries.poll();
+        activeTranscodeCount++;
+      }
+      startEntry(entry, true);
+    }
+  }
+
+  @AnyThread
+  private void releaseEntry (Entry entry) {
+    entries.remove(entry.info.getDestinationPath());
+    if (entry.finishTimeMs == 0) {
+      entry.finishTimeMs = SystemClock.elapsedRealtime();
+      Log.i(Log.TAG_VIDEO, "Video generation finished in %dms, queued for %dms, canceled: %b", entry.getGenerationDuration(), entry.getQueueDuration(), entry.canceled.get());
+    }
+    if (!entry.released.getAndSet(true)) {
+      boolean needStartPending;
+      synchronized (pendingEntries) {
+        activeTranscodeCount--;
+        needStartPending = !pendingEntries.isEmpty();
+      }
+      if (needStartPending) {
+        queue.post(this::startPendingEntries, 0);
+      }
+    }
   }
 
   @WorkerThread
@@ -264,7 +416,10 @@ public class VideoGen {
       synchronized (entry) {
         if (!entry.transcodeFinished.getAndSet(true)) {
           tdlib.filegen().finishGeneration(info);
-          entries.remove(destinationPath);
+          releaseEntry(entry);
+        } else if (entry.canceled.get()) {
+          // Transcoder has stopped after cancellation by TDLib
+          releaseEntry(entry);
         }
       }
     };
@@ -283,8 +438,10 @@ public class VideoGen {
             }
             String error = b.toString();
             tdlib.filegen().failGeneration(info, -1, error);
-            entries.remove(destinationPath);
+            releaseEntry(entry);
           }
+        } else if (entry.canceled.get()) {
+          releaseEntry(entry);
         }
       }
     };
@@ -292,7 +449,6 @@ public class VideoGen {
       synchronized (entry) {
         entry.canceled.set(true);
         entry.transcodeFinished.set(true);
-        entries.remove(destinationPath);
       }
       try {
         Log.i("Cancelling video generation");
@@ -300,7 +456,17 @@ public class VideoGen {
       } catch (Throwable t) {
         Log.i(t);
       }
+      // Transcoding slot is released once the transcoder stops.
+      // Transformer doesn't notify about cancellation, but releases its codecs before cancel() returns.
+      if (entry.transformer != null) {
+        releaseEntry(entry);
+      }
     });
+    if (entry.canceled.get()) {
+      // Generation has been stopped while waiting in the queue
+      releaseEntry(entry);
+      return;
+    }
     RunnableData<Throwable> onFailure = t -> {
       synchronized (entry) {
         if (!entry.transcodeFinished.getAndSet(true)) {
@@ -313,8 +479,10 @@ public class VideoGen {
             sendOriginal(info, entry);
           } else {
             tdlib.filegen().failGeneration(info, -1, Lang.getString(R.string.SendVideoError));
-            entries.remove(destinationPath);
+            releaseEntry(entry);
           }
+        } else if (entry.canceled.get()) {
+          releaseEntry(entry);
         }
       }
     };
@@ -477,7 +645,13 @@ public class VideoGen {
       }
     };
 
-    entry.transformer.start(editedMediaItem, destinationPath);
+    synchronized (entry) {
+      if (entry.canceled.get()) {
+        releaseEntry(entry);
+        return;
+      }
+      entry.transformer.start(editedMediaItem, destinationPath);
+    }
     progressRunner.run();
   }
 
@@ -625,7 +799,9 @@ public class VideoGen {
           } else {
             tdlib.filegen().failGeneration(info, -1, Lang.getString(R.string.SendVideoError));
           }
-          entries.remove(destinationPath);
+          releaseEntry(entry);
+        } else if (entry.canceled.get()) {
+          releaseEntry(entry);
         }
       }
       return;
@@ -652,7 +828,7 @@ public class VideoGen {
             tdlib.filegen().failGeneration(info, -1, "Failed to copy file, make sure there's enough disk space");
           }
         }
-        entries.remove(destinationPath);
+        releaseEntry(entry);
       }
     });
   }
@@ -0,0 +1,233 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026
+ */
+package org.thunderdog.challegram.loader;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.util.LruCache;
+
+import androidx.annotation.ColorInt;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+
+import org.thunderdog.challegram.Log;
+import org.thunderdog.challegram.telegram.TGLegacyManager;
+import org.thunderdog.challegram.theme.ColorId;
+import org.thunderdog.challegram.theme.ColorState;
+import org.thunderdog.challegram.theme.Theme;
+import org.thunderdog.challegram.theme.ThemeChangeListener;
+import org.thunderdog.challegram.theme.ThemeDelegate;
+import org.thunderdog.challegram.theme.ThemeManager;
+import org.thunderdog.challegram.tool.Screen;
+import org.thunderdog.challegram.tool.Strings;
+import org.thunderdog.challegram.util.text.Text;
+
+import java.util.Locale;
+
+import me.vkryl.core.unit.ByteUnit;
+
+/**
+ * Shared storage of rendered letter avatar placeholders.
+ *
+ * Chat lists, member lists and reactions display the same placeholders over and over again,
+ * so instead of drawing background and glyphs for every receiver on every frame,
+ * each distinct placeholder is rendered once into a tile and then drawn as a bitmap.
+ *
+ * Tiles depend on theme colors, so all of them are dropped once theme changes.
+ * Letters may be emoji, which are drawn only once their bitmaps are loaded,
+ * so tiles are dropped once emoji get loaded as well.
+ */
+public final class AvatarPlaceholderAtlas implements ThemeChangeListener, TGLegacyManager.EmojiLoadListener {
+  private static final long MAX_SIZE = ByteUnit.MIB.toBytes(4);
+  private static final float MAX_TILE_SIZE_DP = 96f;
+
+  private static AvatarPlaceholderAtlas instance;
+
+  @UiThread
+  public static AvatarPlaceholderAtlas instance () {
+    if (instance == null) {
+      instance = new AvatarPlaceholderAtlas();
+    }
+    return instance;
+  }
+
+  private static final class Key {
+    private final String letters;
+    private final float textSizeDp, scale, cornerRadius;
+    private final int width, height;
+    private final int backgroundColor, contentColor;
+
+    Key (String letters, float textSizeDp, float scale, int width, int height, float cornerRadius, int backgroundColor, int contentColor) {
+      this.letters = letters;
+      this.textSizeDp = textSizeDp;
+      this.scale = scale;
+      this.width = width;
+      this.height = height;
+      this.cornerRadius = cornerRadius;
+      this.backgroundColor = backgroundColor;
+      this.contentColor = contentColor;
+    }
+
+    @Override
+    public boolean equals (Object obj) {
+      if (!(obj instanceof Key))
+        return false;
+      Key other = (Key) obj;
+      return other.width == width && other.height == height &&
+        other.backgroundColor == backgroundColor && other.contentColor == contentColor &&
+        other.textSizeDp == textSizeDp && other.scale == scale && other.cornerRadius == cornerRadius &&
+        other.letters.equals(letters);
+    }
+
+    @Override
+    public int hashCode () {
+      int result = letters.hashCode();
+      result = 31 * result + Float.floatToIntBits(textSizeDp);
+      result = 31 * result + Float.floatToIntBits(scale);
+      result = 31 * result + Float.floatToIntBits(cornerRadius);
+      result = 31 * result + width;
+      result = 31 * result + height;
+      result = 31 * result + backgroundColor;
+      result = 31 * result + contentColor;
+      return result;
+    }
+  }
+
+  private final LruCache<Key, Bitmap> tiles = new LruCache<Key, Bitmap>((int) MAX_SIZE) {
+    @Override
+    protected int sizeOf (Key key, Bitmap value) {
+      return value.getByteCount();
+    }
+  };
+  private final Paint backgroundPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+  private final RectF rect = new RectF();
+
+  private AvatarPlaceholderAtlas () {
+    ThemeManager.instance().addThemeListener(this);
+    TGLegacyManager.instance().addEmojiListener(this);
+  }
+
+  /**
+   * Finds or renders tile with the placeholder of the given size:
+   * background filled with {@code backgroundColor} and {@code letters} in its center.
+   *
+   * @param letters Letters built with {@code textSizeDp} text size, used only when tile is missing.
+   * @param scale Scale applied to {@code letters} when drawing.
+   * @param cornerRadius Radius of background corners, in pixels.
+   * @return Tile of exactly {@code width}x{@code height} size, or null, when placeholder must be drawn directly.
+   */
+  @UiThread
+  @Nullable
+  public Bitmap getTile (@NonNull Text letters, float textSizeDp, float scale, int width, int height, float cornerRadius, @ColorInt int backgroundColor) {
+    int maxSize = Screen.dp(MAX_TILE_SIZE_DP);
+    if (width <= 0 || height <= 0 || width > maxSize || height > maxSize) {
+      return null;
+    }
+    Key key = new Key(letters.getText(), textSizeDp, scale, width, height, cornerRadius, backgroundColor, Theme.getColor(ColorId.avatar_content));
+    Bitmap tile = tiles.get(key);
+    if (tile == null || tile.isRecycled()) {
+      tile = renderTile(letters, scale, width, height, cornerRadius, backgroundColor);
+      if (tile != null) {
+        tiles.put(key, tile);
+      }
+    }
+    return tile;
+  }
+
+  @Nullable
+  private Bitmap renderTile (Text letters, float scale, int width, int height, float cornerRadius, int backgroundColor) {
+    Bitmap tile;
+    try {
+      tile = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+    } catch (OutOfMemoryError e) {
+      Log.e(Log.TAG_IMAGE_LOADER, "Cannot allocate avatar placeholder tile, %s", e, getStats());
+      tiles.evictAll();
+      return null;
+    }
+    Canvas c = new Canvas(tile);
+    backgroundPaint.setColor(backgroundColor);
+    if (cornerRadius > 0) {
+      rect.set(0, 0, width, height);
+      if (width == cornerRadius * 2 && height == cornerRadius * 2) {
+        c.drawCircle(rect.centerX(), rect.centerY(), cornerRadius, backgroundPaint);
+      } else {
+        c.drawRoundRect(rect, cornerRadius, cornerRadius, backgroundPaint);
+      }
+    } else {
+      c.drawColor(backgroundColor);
+    }
+    int centerX = width / 2;
+    int centerY = height / 2;
+    if (scale != 1f) {
+      c.scale(scale, scale, centerX, centerY);
+    }
+    letters.draw(c, (int) (centerX - letters.getWidth() / 2), (int) (centerY - letters.getHeight() / 2), null, 1f);
+    return tile;
+  }
+
+  /**
+   * @return Amount of memory occupied by tiles, in bytes.
+   */
+  public long getMemoryUsage () {
+    return tiles.size();
+  }
+
+  public String getStats () {
+    return String.format(Locale.US, "tiles:%d size:%s hits:%d misses:%d evictions:%d",
+      tiles.snapshot().size(),
+      Strings.buildSize(tiles.size()),
+      tiles.hitCount(),
+      tiles.missCount(),
+      tiles.evictionCount()
+    );
+  }
+
+  private void invalidate () {
+    if (tiles.size() > 0) {
+      if (Log.isEnabled(Log.TAG_IMAGE_LOADER)) {
+        Log.i(Log.TAG_IMAGE_LOADER, "Dropping avatar placeholder tiles, %s", getStats());
+      }
+      tiles.evictAll();
+    }
+  }
+
+  // Emoji
+
+  @Override
+  public void onEmojiUpdated (boolean isPackSwitch) {
+    // Tiles rendered before emoji were loaded are missing them
+    invalidate();
+  }
+
+  // Theme
+
+  @Override
+  public boolean needsTempUpdates () {
+    return true;
+  }
+
+  @Override
+  public void onThemeColorsChanged (boolean areTemp, @Nullable ColorState state) {
+    invalidate();
+  }
+
+  @Override
+  public void onThemeChanged (ThemeDelegate fromTheme, ThemeDelegate toTheme) {
+    invalidate();
+  }
+}
@@ -1,5 +1,6 @@
 package org.thunderdog.challegram.loader;
 
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.drawable.Drawable;
 import android.view.View;
@@ -1177,6 +1178,8 @@ public class AvatarReceiver implements Receiver, ChatListener, TdlibCache.UserDa
           }
         }
       }
+    } else if (requestedPlaceholder != null && requestedPlaceholder.drawableRes == 0 && isFullScreen.getFloatValue() == 0f && drawPlaceholderTile(c, requestedPlaceholder.letters, displayRadius, requestedPlaceholder.accentColor.getPrimaryColor(), alpha)) {
+      // Drawn from AvatarPlaceholderAtlas
     } else if (requestedPlaceholder != null) {
       int placeholderColor = ColorUtils.fromToArgb(
         requestedPlaceholder.accentColor.getPrimaryColor(),
@@ -1213,11 +1216,49 @@ public class AvatarReceiver implements Receiver, ChatListener, TdlibCache.UserDa
   private Text displayingLetters;
   private float displayingLettersTextSize;
 
+  private boolean drawPlaceholderTile (Canvas c, Letters letters, float displayRadius, int backgroundColor, float alpha) {
+    if (letters == null || StringUtils.isEmpty(letters.text)) {
+      return false;
+    }
+    float scale = prepareDisplayingLetters(letters);
+    Bitmap tile = AvatarPlaceholderAtlas.instance().getTile(displayingLetters, displayingLettersTextSize, scale, getWidth(), getHeight(), displayRadius, backgroundColor);
+    if (tile == null) {
+      return false;
+    }
+    c.drawBitmap(tile, getLeft(), getTop(), Paints.bitmapPaint(alpha));
+    return true;
+  }
+
   private void drawPlaceholderLetters (Canvas c, Letters letters, float alpha) {
     if (letters == null || StringUtils.isEmpty(letters.text)) {
       return;
     }
 
+    float scale = prepareDisplayingLetters(letters);
+
+    float centerX = centerX();
+    float centerY = centerY();
+
+    final boolean needRestore = scale != 1f;
+    final int saveCount;
+    if (needRestore) {
+      saveCount = Views.save(c);
+      c.scale(scale, scale, centerX, centerY);
+    } else {
+      saveCount = -1;
+    }
+    displayingLetters.draw(c, (int) (centerX - displayingLetters.getWidth() / 2),  (int) (centerY - displayingLetters.getHeight() / 2), null, alpha);
+    if (needRestore) {
+      Views.restore(c, saveCount);
+    }
+  }
+
+  /**
+   * Builds {@link #displayingLetters} for current bounds, if needed.
+   *
+   * @return scale that must be applied to {@link #displayingLetters} when drawing
+   */
+  private float prepareDisplayingLetters (@NonNull Letters letters) {
     float currentRadiusPx = Math.min(getWidth(), getHeight()) / 2f;
 
     float textSizeDp = (int) ((primaryPlaceholderRadius != 0 ? primaryPlaceholderRadius : Screen.px(currentRadiusPx)) * .75f);
@@ -1238,22 +1279,7 @@ public class AvatarReceiver implements Receiver, ChatListener, TdlibCache.UserDa
     if (size > maxSize) {
       scale *= maxSize / size;
     }
-
-    float centerX = centerX();
-    float centerY = centerY();
-
-    final boolean needRestore = scale != 1f;
-    final int saveCount;
-    if (needRestore) {
-      saveCount = Views.save(c);
-      c.scale(scale, scale, centerX, centerY);
-    } else {
-      saveCount = -1;
-    }
-    displayingLetters.draw(c, (int) (centerX - displayingLetters.getWidth() / 2),  (int) (centerY - displayingLetters.getHeight() / 2), null, alpha);
-    if (needRestore) {
-      Views.restore(c, saveCount);
-    }
+    return scale;
   }
 
   private void drawPlaceholderDrawable (Canvas c, int resId, int colorId, float alpha) {
@@ -37,6 +37,7 @@ import org.thunderdog.challegram.filegen.TdlibFileGenerationManager;
 import org.thunderdog.challegram.loader.svg.SvgRender;
 import org.thunderdog.challegram.support.Mp3Support;
 import org.thunderdog.challegram.tool.UI;
+import org.thunderdog.challegram.util.PerfTrace;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -128,7 +129,9 @@ public class ImageReader {
       return;
     }
 
+    PerfTrace.begin("image.decode");
     Bitmap bitmap = readImage(file, path);
+    PerfTrace.end();
     listener.onImageLoaded(bitmap != null, bitmap);
   }
 
@@ -38,6 +38,7 @@ import org.thunderdog.challegram.tool.Screen;
 import org.thunderdog.challegram.ui.EmojiMediaListController;
 import org.thunderdog.challegram.ui.StickersListController;
 import org.thunderdog.challegram.unsorted.Settings;
+import org.thunderdog.challegram.util.PerfTrace;
 
 import java.io.File;
 import java.lang.annotation.Retention;
@@ -484,6 +485,7 @@ public class GifActor implements GifState.Callback, TGPlayerController.TrackChan
     boolean async = false;
     final GifState.Frame free = gif.takeFree();
     if (free != null) {
+      PerfTrace.begin("gif.frame");
       double desiredNextFrameNo;
       if (isLottie) {
         double frameDelta = frameDelta();
@@ -609,6 +611,7 @@ public class GifActor implements GifState.Callback, TGPlayerController.TrackChan
           }
         }
       }
+      PerfTrace.end();
       if (!async) {
         if (success) {
           gif.addBusy(free);
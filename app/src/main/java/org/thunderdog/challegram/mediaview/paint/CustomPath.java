@@ -18,6 +18,7 @@ import android.graphics.Path;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 import me.vkryl.core.collection.FloatList;
@@ -77,16 +78,27 @@ public class CustomPath {
     this.actions = new FloatList(data);
   }
 
+  public CustomPath (SimpleDrawing context, ByteBuffer buffer) {
+    this.context = context;
+    this.path = new Path();
+
+    int size = PaintFile.readVarint(buffer);
+    float[] data = new float[size];
+    // Bulk copy instead of reading values one by one
+    buffer.asFloatBuffer().get(data);
+    buffer.position(buffer.position() + size * 4);
+    this.actions = new FloatList(data);
+  }
+
   public boolean compare (CustomPath path) {
     return path == this || path.actions == actions || (path.actions.size() == actions.size() && Arrays.equals(path.actions.get(), actions.get()));
   }
 
-  public void saveData (RandomAccessFile file) throws IOException {
+  public void saveData (ByteBuffer buffer) {
     int size = actions.size();
-    Blob.writeVarint(file, size);
-    for (int i = 0; i < size; i++) {
-      file.writeFloat(actions.get(i));
-    }
+    PaintFile.writeVarint(buffer, size);
+    buffer.asFloatBuffer().put(actions.get(), 0, size);
+    buffer.position(buffer.position() + size * 4);
   }
 
   public void saveData (Blob out) {
@@ -102,6 +114,11 @@ public class CustomPath {
     return Blob.sizeOf(size) + size * 4;
   }
 
+  public int getOutputSize () {
+    int size = actions.size();
+    return PaintFile.sizeOfVarint(size) + size * 4;
+  }
+
   public void trim () {
     actions.trim();
   }
@@ -0,0 +1,159 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026
+ */
+package org.thunderdog.challegram.mediaview.paint;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Storage of drawings in {@code paints/<paintId>.paint} files.
+ *
+ * File starts with a header containing the number of stored drawings,
+ * followed by drawings written one after another with {@link SimpleDrawing#save(ByteBuffer)}.
+ * Files are memory-mapped when read, and new drawings are appended to the end of the file
+ * with a single write followed by the header update, so already stored drawings are never rewritten.
+ */
+final class PaintFile {
+  private static final int MAGIC = 0x54475850; // TGXP
+  private static final int VERSION = 1;
+
+  static final int HEADER_SIZE = 4 /*magic*/ + 1 /*version*/ + 4 /*drawingCount*/;
+  private static final int DRAWING_COUNT_OFFSET = 5;
+
+  private PaintFile () { }
+
+  static File getFile (int paintId) {
+    return new File(PaintState.getPaintsDir(), paintId + ".paint");
+  }
+
+  /**
+   * @return Total number of drawings stored in the file.
+   */
+  static int readDrawingCount (ByteBuffer buffer) {
+    if (buffer.getInt() != MAGIC)
+      throw new IllegalArgumentException("Not a paint file");
+    int version = buffer.get();
+    if (version != VERSION)
+      throw new IllegalArgumentException("Unsupported version: " + version);
+    return buffer.getInt();
+  }
+
+  /**
+   * Reads first {@code count} drawings.
+   *
+   * @param totalCount Receives total amount of drawings stored in the file.
+   */
+  @NonNull
+  static List<SimpleDrawing> read (File file, int count, int[] totalCount) throws IOException {
+    try (RandomAccessFile f = new RandomAccessFile(file, "r"); FileChannel channel = f.getChannel()) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      int drawingCount = readDrawingCount(buffer);
+      if (count > drawingCount)
+        throw new IllegalStateException("Requested " + count + " drawings, but file contains only " + drawingCount);
+      if (totalCount != null)
+        totalCount[0] = drawingCount;
+      List<SimpleDrawing> drawings = new ArrayList<>(count);
+      for (int i = 0; i < count; i++) {
+        drawings.add(SimpleDrawing.restore(buffer));
+      }
+      return drawings;
+    }
+  }
+
+  static int sizeOf (List<SimpleDrawing> drawings, int fromIndex) {
+    int size = 0;
+    for (int i = fromIndex; i < drawings.size(); i++) {
+      size += drawings.get(i).getOutputSize();
+    }
+    return size;
+  }
+
+  /**
+   * Writes drawings starting from {@code fromIndex} to the end of the file.
+   * When {@code fromIndex} is 0, file is created from scratch.
+   */
+  static void write (File file, List<SimpleDrawing> drawings, int fromIndex) throws IOException {
+    boolean isNew = fromIndex == 0;
+    ByteBuffer buffer = ByteBuffer.allocate((isNew ? HEADER_SIZE : 0) + sizeOf(drawings, fromIndex));
+    if (isNew) {
+      buffer.putInt(MAGIC);
+      buffer.put((byte) VERSION);
+      buffer.putInt(drawings.size());
+    }
+    for (int i = fromIndex; i < drawings.size(); i++) {
+      drawings.get(i).save(buffer);
+    }
+    buffer.flip();
+    try (RandomAccessFile f = new RandomAccessFile(file, "rw"); FileChannel channel = f.getChannel()) {
+      if (isNew) {
+        channel.truncate(0);
+        writeFully(channel, buffer, 0);
+      } else {
+        long position = channel.size();
+        if (position < HEADER_SIZE)
+          throw new IllegalStateException("Cannot append to " + file.getName() + ", size: " + position);
+        writeFully(channel, buffer, position);
+        // Header is updated last, so readers never see count of drawings that are not fully written yet
+        ByteBuffer header = ByteBuffer.allocate(4);
+        header.putInt(drawings.size());
+        header.flip();
+        writeFully(channel, header, DRAWING_COUNT_OFFSET);
+      }
+    }
+  }
+
+  private static void writeFully (FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+    while (buffer.hasRemaining()) {
+      position += channel.write(buffer, position);
+    }
+  }
+
+  // Varint
+
+  static int sizeOfVarint (int value) {
+    int size = 1;
+    while ((value & ~0x7f) != 0) {
+      value >>>= 7;
+      size++;
+    }
+    return size;
+  }
+
+  static void writeVarint (ByteBuffer buffer, int value) {
+    while ((value & ~0x7f) != 0) {
+      buffer.put((byte) ((value & 0x7f) | 0x80));
+      value >>>= 7;
+    }
+    buffer.put((byte) value);
+  }
+
+  static int readVarint (ByteBuffer buffer) {
+    int value = 0;
+    for (int shift = 0; shift < 32; shift += 7) {
+      byte b = buffer.get();
+      value |= (b & 0x7f) << shift;
+      if ((b & 0x80) == 0)
+        return value;
+    }
+    throw new IllegalArgumentException("Malformed varint");
+  }
+}
@@ -16,7 +16,9 @@ package org.thunderdog.challegram.mediaview.paint;
 
 import android.graphics.Canvas;
 import android.util.Base64;
+import android.util.SparseIntArray;
 
+import androidx.annotation.Nullable;
 import androidx.collection.SparseArrayCompat;
 
 import org.thunderdog.challegram.Log;
@@ -25,6 +27,7 @@ import org.thunderdog.challegram.tool.UI;
 import org.thunderdog.challegram.unsorted.Settings;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.RandomAccessFile;
 import java.lang.ref.Reference;
 import java.util.ArrayList;
@@ -61,11 +64,17 @@ public class PaintState {
       this.paintActions = new ArrayList<>(copy.paintActions.size());
       this.paintActions.addAll(copy.paintActions);
     }
+    this.sourcePaintId = copy.sourcePaintId;
+    this.sourceDrawings = copy.sourceDrawings;
   }
 
   // TODO save & restore paint
 
+  private static final int MIN_FILE_SIZE = 256;
+  private static final String FILE_REFERENCE_PREFIX = "@";
+
   private static SparseArrayCompat<PaintState> pendingPaints;
+  private static SparseIntArray paintFileDrawingCounts;
 
   public static void putPaintState (int paintId, PaintState paintState) {
     synchronized (PaintState.class) {
@@ -76,9 +85,10 @@ public class PaintState {
     }
   }
 
-  public static void forgetPaintState (int paintId) {
+  public static void forgetPaintState (int paintId, PaintState paintState) {
     synchronized (PaintState.class) {
-      if (pendingPaints != null) {
+      // Newer state may have been saved to the same file in the meantime
+      if (pendingPaints != null && pendingPaints.get(paintId) == paintState) {
         pendingPaints.remove(paintId);
       }
     }
@@ -90,14 +100,46 @@ public class PaintState {
     }
   }
 
+  private static int getPaintFileDrawingCount (int paintId) {
+    return paintFileDrawingCounts != null ? paintFileDrawingCounts.get(paintId, -1) : -1;
+  }
+
+  private static void setPaintFileDrawingCount (int paintId, int drawingCount) {
+    if (paintFileDrawingCounts == null) {
+      paintFileDrawingCounts = new SparseIntArray();
+    }
+    paintFileDrawingCounts.put(paintId, drawingCount);
+  }
+
   public static File getPaintsDir () {
     return new File(UI.getAppContext().getFilesDir(), "paints");
   }
 
+  // Drawings stored in paints/<sourcePaintId>.paint, which are the first drawings of drawingsList.
+  // When only new drawings were added since, they are appended to the same file.
+  private int sourcePaintId;
+  private List<SimpleDrawing> sourceDrawings;
+
+  private void setSource (int paintId, List<SimpleDrawing> drawings) {
+    this.sourcePaintId = paintId;
+    this.sourceDrawings = drawings;
+  }
+
   public static PaintState parse (String in) {
     if (StringUtils.isEmpty(in)) {
       return null;
     }
+    if (in.startsWith(FILE_REFERENCE_PREFIX)) {
+      try {
+        int split = in.indexOf('.');
+        int paintId = Integer.parseInt(in.substring(FILE_REFERENCE_PREFIX.length(), split));
+        int count = Integer.parseInt(in.substring(split + 1));
+        return restoreFromFile(paintId, count);
+      } catch (Throwable t) {
+        Log.e("Unable to restore painting: %s", t, in);
+        return null;
+      }
+    }
     byte[] data;
     try {
       data = Base64.decode(in, Base64.NO_PADDING);
@@ -165,76 +207,137 @@ public class PaintState {
     return null;
   }
 
+  private static PaintState restoreFromFile (int paintId, int count) throws IOException {
+    List<SimpleDrawing> drawings;
+    PaintState pendingState = obtainPaintState(paintId);
+    if (pendingState != null && pendingState.drawingsList.size() >= count) {
+      drawings = new ArrayList<>(pendingState.drawingsList.subList(0, count));
+    } else {
+      int[] totalCount = new int[1];
+      drawings = PaintFile.read(PaintFile.getFile(paintId), count, totalCount);
+      synchronized (PaintState.class) {
+        if (getPaintFileDrawingCount(paintId) == -1) {
+          setPaintFileDrawingCount(paintId, totalCount[0]);
+        }
+      }
+    }
+    PaintState state = new PaintState();
+    state.drawingsList = drawings;
+    state.setSource(paintId, new ArrayList<>(drawings));
+    return state;
+  }
+
   public byte[] save () {
-    int size = Blob.sizeOf(drawingsList.size());
+    int size = Blob.sizeOf(0) + Blob.sizeOf(drawingsList.size());
     for (SimpleDrawing drawing : drawingsList) {
       size += drawing.getEstimatedOutputSize();
     }
+    Blob b = new Blob(size);
+    b.writeVarint(0);
+    b.writeVarint(drawingsList.size());
+    for (SimpleDrawing drawing : drawingsList) {
+      drawing.save(b);
+    }
+    return b.toByteArray();
+  }
+
+  private boolean startsWithSourceDrawings (List<SimpleDrawing> drawings) {
+    if (sourcePaintId == 0 || drawings.size() < sourceDrawings.size()) {
+      return false;
+    }
+    for (int i = 0; i < sourceDrawings.size(); i++) {
+      if (drawings.get(i) != sourceDrawings.get(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
 
-    Blob b = null;
+  /**
+   * Saves drawings to paints/<paintId>.paint, appending them to the file this state was restored from when possible.
+   *
+   * @return Reference to the stored drawings, or null, if drawings should be stored inline.
+   */
+  @Nullable
+  private String saveToFile () {
+    final List<SimpleDrawing> drawings = new ArrayList<>(drawingsList);
+    final int drawingCount = drawings.size();
+
+    int paintId = 0, fromIndex = 0;
+    synchronized (PaintState.class) {
+      if (startsWithSourceDrawings(drawings)) {
+        int fileDrawingCount = getPaintFileDrawingCount(sourcePaintId);
+        if (drawingCount == sourceDrawings.size() && fileDrawingCount >= drawingCount) {
+          // Nothing has changed
+          return FILE_REFERENCE_PREFIX + sourcePaintId + "." + drawingCount;
+        }
+        if (fileDrawingCount == sourceDrawings.size() && PaintFile.getFile(sourcePaintId).exists()) {
+          paintId = sourcePaintId;
+          fromIndex = fileDrawingCount;
+          setPaintFileDrawingCount(paintId, drawingCount);
+        }
+      }
+    }
 
-    if (size >= 256) {
-      int paintId = Settings.instance().getPaintId();
-      File paintCacheDirectory = new File(UI.getAppContext().getFilesDir(), "paints");
-      if (FileUtils.createDirectory(paintCacheDirectory)) {
-        File file;
+    if (paintId == 0) {
+      if (PaintFile.sizeOf(drawings, 0) < MIN_FILE_SIZE) {
+        return null;
+      }
+      File paintsDir = getPaintsDir();
+      if (!FileUtils.createDirectory(paintsDir)) {
+        return null;
+      }
+      File file;
+      boolean ok;
+      synchronized (PaintState.class) {
+        paintId = Settings.instance().getPaintId();
         do {
           paintId++;
-          Settings.instance().setPaintId(paintId);
-          file = new File(paintCacheDirectory, paintId + ".bin");
-        } while (file.exists());
-
-        b = new Blob(Blob.sizeOf(paintId));
-        b.writeVarint(paintId);
-
-        putPaintState(paintId, this);
-        final int paintIdFinal = paintId;
-        final File fileFinal = file;
-        final int sizeFinal = size;
-
-        boolean ok = false;
+          file = PaintFile.getFile(paintId);
+        } while (file.exists() || new File(paintsDir, paintId + ".bin").exists());
+        Settings.instance().setPaintId(paintId);
         try {
           ok = file.createNewFile();
         } catch (Throwable t) {
-          Log.w("Cannot create %d.bin paint file", t, paintId);
+          Log.w("Cannot create %d.paint file", t, paintId);
+          ok = false;
         }
         if (ok) {
-          Background.instance().post(() -> {
-            RandomAccessFile f = null;
-            try {
-              f = new RandomAccessFile(fileFinal, "rw");
-              f.setLength(sizeFinal);
-              Blob.writeVarint(f, drawingsList.size());
-              for (SimpleDrawing drawing : drawingsList) {
-                drawing.save(f);
-              }
-              forgetPaintState(paintIdFinal);
-            } catch (Throwable t) {
-              Log.w("Cannot save paint file: %s", t, fileFinal.getName());
-            }
-            if (f != null) { try { f.close(); } catch (Throwable t) { Log.w(t); } }
-          });
+          setPaintFileDrawingCount(paintId, drawingCount);
         }
       }
+      if (!ok) {
+        return null;
+      }
     }
 
-    if (b != null) {
-      return b.toByteArray();
-    }
+    final PaintState pendingState = new PaintState();
+    pendingState.drawingsList = drawings;
+    putPaintState(paintId, pendingState);
 
-    b = new Blob(size);
-    b.writeVarint(0);
-    b.writeVarint(drawingsList.size());
-    for (SimpleDrawing drawing : drawingsList) {
-      drawing.save(b);
-    }
-    return b.toByteArray();
+    final int paintIdFinal = paintId;
+    final int fromIndexFinal = fromIndex;
+    Background.instance().post(() -> {
+      try {
+        PaintFile.write(PaintFile.getFile(paintIdFinal), drawings, fromIndexFinal);
+        forgetPaintState(paintIdFinal, pendingState);
+      } catch (Throwable t) {
+        Log.w("Cannot save paint file: %d.paint", t, paintIdFinal);
+      }
+    });
+
+    setSource(paintId, drawings);
+    return FILE_REFERENCE_PREFIX + paintId + "." + drawingCount;
   }
 
   public String saveAndSerializeToString () {
     if (isEmpty()) {
       return "";
     }
+    String reference = saveToFile();
+    if (reference != null) {
+      return reference;
+    }
     byte[] data = save();
     return Base64.encodeToString(data, Base64.NO_PADDING);
   }
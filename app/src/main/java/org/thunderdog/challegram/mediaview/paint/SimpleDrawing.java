@@ -24,6 +24,7 @@ import org.thunderdog.challegram.tool.Screen;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 
 import me.vkryl.core.MathUtils;
@@ -437,22 +438,52 @@ public class SimpleDrawing {
 
   // Blob
 
-  public void save (RandomAccessFile file) throws IOException {
-    file.writeByte((byte) type);
+  public void save (ByteBuffer buffer) {
+    buffer.put((byte) type);
 
-    Blob.writeVarint(file, canvasWidth);
-    Blob.writeVarint(file, canvasHeight);
-    file.writeFloat(canvasScale);
+    PaintFile.writeVarint(buffer, canvasWidth);
+    PaintFile.writeVarint(buffer, canvasHeight);
+    buffer.putFloat(canvasScale);
     if (needsCanvasRotation(type)) {
-      file.writeFloat(canvasRotation);
+      buffer.putFloat(canvasRotation);
     }
 
-    file.writeInt(color);
+    buffer.putInt(color);
     if (needsStrokeRadius(type)) {
-      file.writeFloat(strokeRadius);
+      buffer.putFloat(strokeRadius);
     }
 
-    savePositionData(file);
+    switch (type) {
+      case TYPE_ARROW:
+      case TYPE_RECTANGLE: {
+        buffer.putFloat(x1);
+        buffer.putFloat(x2);
+        buffer.putFloat(y1);
+        buffer.putFloat(y2);
+        break;
+      }
+      case TYPE_PATH: {
+        path.saveData(buffer);
+        break;
+      }
+    }
+  }
+
+  /**
+   * @return Exact amount of bytes written by {@link #save(ByteBuffer)}.
+   */
+  public int getOutputSize () {
+    int size = 1 + PaintFile.sizeOfVarint(canvasWidth) + PaintFile.sizeOfVarint(canvasHeight) + 4 + (needsCanvasRotation(type) ? 4 : 0) + 4 + (needsStrokeRadius(type) ? 4 : 0);
+    switch (type) {
+      case TYPE_ARROW:
+      case TYPE_RECTANGLE:
+        size += 4 * 4;
+        break;
+      case TYPE_PATH:
+        size += path.getOutputSize();
+        break;
+    }
+    return size;
   }
 
   public void save (Blob blob) {
@@ -473,22 +504,6 @@ public class SimpleDrawing {
     savePositionData(blob);
   }
 
-  private void savePositionData (RandomAccessFile file) throws IOException {
-    switch (type) {
-      case TYPE_ARROW:
-      case TYPE_RECTANGLE:
-        file.writeFloat(x1);
-        file.writeFloat(x2);
-        file.writeFloat(y1);
-        file.writeFloat(y2);
-        break;
-      case TYPE_PATH: {
-        path.saveData(file);
-        break;
-      }
-    }
-  }
-
   private void savePositionData (Blob blob) {
     switch (type) {
       case TYPE_ARROW:
@@ -550,6 +565,46 @@ public class SimpleDrawing {
     return drawing;
   }
 
+  public static SimpleDrawing restore (ByteBuffer buffer) {
+    int type = buffer.get();
+
+    int canvasWidth = PaintFile.readVarint(buffer);
+    int canvasHeight = PaintFile.readVarint(buffer);
+    float canvasScale = buffer.getFloat();
+    float canvasRotation = 0f;
+    if (needsCanvasRotation(type)) {
+      canvasRotation = buffer.getFloat();
+    }
+
+    int color = buffer.getInt();
+    float strokeRadius;
+    if (needsStrokeRadius(type)) {
+      strokeRadius = buffer.getFloat();
+    } else {
+      strokeRadius = 0f;
+    }
+
+    SimpleDrawing drawing = new SimpleDrawing(type, canvasWidth, canvasHeight, canvasScale, canvasRotation);
+    drawing.setBrushParameters(color, strokeRadius);
+
+    switch (type) {
+      case TYPE_ARROW:
+      case TYPE_RECTANGLE: {
+        drawing.x1 = buffer.getFloat();
+        drawing.x2 = buffer.getFloat();
+        drawing.y1 = buffer.getFloat();
+        drawing.y2 = buffer.getFloat();
+        break;
+      }
+      case TYPE_PATH: {
+        drawing.path = new CustomPath(drawing, buffer);
+        break;
+      }
+    }
+
+    return drawing;
+  }
+
   public static SimpleDrawing restore (Blob blob) {
     int type = blob.readByte();
 
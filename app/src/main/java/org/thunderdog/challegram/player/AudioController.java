@@ -386,6 +386,7 @@ public class AudioController extends BasePlaybackController implements TGAudio.P
     exoPlayer.prepare();
     seekTo(exoPlayer, trackIndex, mediaSources.size(), reverseMode);
     exoPlayer.setPlayWhenReady(isPlaying);
+    prefetchUpcomingTracks(tdlib);
   }
 
   @Override
@@ -412,6 +413,7 @@ public class AudioController extends BasePlaybackController implements TGAudio.P
       seekTo(exoPlayer, newIndex, playList.size(), (playFlags & TGPlayerController.PLAYLIST_FLAG_REVERSE) != 0);
       exoPlayer.setPlayWhenReady(isPlaying);
     }
+    prefetchUpcomingTracks(tdlib);
   }
 
   @UiThread
@@ -558,6 +560,7 @@ public class AudioController extends BasePlaybackController implements TGAudio.P
     if (!areNew) {
       playIndex += addedItems.size();
     }
+    prefetchUpcomingTracks(tdlib);
   }
 
   @Override
@@ -608,6 +611,49 @@ public class AudioController extends BasePlaybackController implements TGAudio.P
     }
 
     this.playFlags = playFlags;
+    prefetchUpcomingTracks(tdlib);
+  }
+
+  // Prefetch
+
+  /**
+   * Collects upcoming tracks in the order ExoPlayer is going to play them, so shuffle and repeat modes are respected,
+   * and passes them to {@link TGPlayerController#prefetchTracks}.
+   *
+   * Media sources of the whole play list are already prepared by ExoPlayer,
+   * so warming the next track comes down to having its data downloaded by the time it starts.
+   */
+  private void prefetchUpcomingTracks (@Nullable Tdlib tdlib) {
+    if (playbackMode != PLAYBACK_MODE_EXOPLAYER_LIST || exoPlayer == null || tdlib == null || playList == null || playList.isEmpty()) {
+      return;
+    }
+    Timeline timeline = exoPlayer.getCurrentTimeline();
+    if (timeline.isEmpty()) {
+      return;
+    }
+    final int currentIndex = exoPlayer.getCurrentMediaItemIndex();
+    // When single track is repeated, the rest are played once user skips it
+    final int repeatMode = exoPlayer.getRepeatMode() == Player.REPEAT_MODE_ONE ? Player.REPEAT_MODE_OFF : exoPlayer.getRepeatMode();
+    final boolean shuffleModeEnabled = exoPlayer.getShuffleModeEnabled();
+    final boolean reverse = inReverseMode();
+    final int totalCount = playList.size();
+
+    ArrayList<TdApi.Message> upcomingTracks = new ArrayList<>(TGPlayerController.PREFETCH_TRACK_COUNT);
+    int index = currentIndex;
+    while (upcomingTracks.size() < TGPlayerController.PREFETCH_TRACK_COUNT) {
+      index = timeline.getNextWindowIndex(index, repeatMode, shuffleModeEnabled);
+      if (index == C.INDEX_UNSET || index == currentIndex) {
+        break;
+      }
+      int position = reverse ? totalCount - index - 1 : index;
+      if (position < 0 || position >= totalCount) {
+        break;
+      }
+      upcomingTracks.add(playList.get(position));
+    }
+    if (!upcomingTracks.isEmpty()) {
+      context.player().prefetchTracks(tdlib, upcomingTracks);
+    }
   }
 
   @Override
@@ -860,6 +906,9 @@ public class AudioController extends BasePlaybackController implements TGAudio.P
     }
     Log.d(Log.TAG_PLAYER, "[state] onPositionDiscontinuity mode:%d, reason:%d", playbackMode, reason);
     checkPlayerPosition();
+    if (oldPosition.mediaItemIndex != newPosition.mediaItemIndex) {
+      prefetchUpcomingTracks(tdlib);
+    }
     // findApic(exoPlayer.getCurrentTrackGroups());
   }
 
@@ -0,0 +1,134 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026
+ */
+package org.thunderdog.challegram.player;
+
+import androidx.annotation.NonNull;
+
+import org.drinkless.tdlib.TdApi;
+
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Maps (chatId, messageId) of tracks to their positions in the play list.
+ *
+ * Index is updated lazily: modifications only mark positions starting from the first affected one as outdated,
+ * and they get re-indexed on the next lookup. This way paging, inserts and bursts of removals
+ * cost at most one pass over the tail of the list, instead of a pass per lookup.
+ *
+ * Tracks without chat and message identifiers, e.g. inline results, are not indexed and have to be looked up by scanning.
+ */
+final class PlayListIndex {
+  private static final class Key {
+    private long chatId, messageId;
+
+    Key () { }
+
+    Key (long chatId, long messageId) {
+      this.chatId = chatId;
+      this.messageId = messageId;
+    }
+
+    Key set (long chatId, long messageId) {
+      this.chatId = chatId;
+      this.messageId = messageId;
+      return this;
+    }
+
+    @Override
+    public boolean equals (Object obj) {
+      if (!(obj instanceof Key))
+        return false;
+      Key other = (Key) obj;
+      return other.chatId == chatId && other.messageId == messageId;
+    }
+
+    @Override
+    public int hashCode () {
+      return 31 * (int) (chatId ^ (chatId >>> 32)) + (int) (messageId ^ (messageId >>> 32));
+    }
+  }
+
+  private final List<TdApi.Message> tracks;
+  private final HashMap<Key, Integer> positions = new HashMap<>();
+  private final Key lookupKey = new Key();
+  private int indexedCount;
+
+  PlayListIndex (@NonNull List<TdApi.Message> tracks) {
+    this.tracks = tracks;
+  }
+
+  static boolean isIndexable (TdApi.Message track) {
+    return isIndexable(track.chatId, track.id);
+  }
+
+  private static boolean isIndexable (long chatId, long messageId) {
+    return chatId != 0 || messageId != 0;
+  }
+
+  /**
+   * Must be called after any modification of the list, with the smallest affected position.
+   */
+  void invalidate (int fromPosition) {
+    indexedCount = Math.min(indexedCount, Math.max(0, fromPosition));
+  }
+
+  void clear () {
+    positions.clear();
+    indexedCount = 0;
+  }
+
+  private void indexRemaining () {
+    final int size = tracks.size();
+    if (positions.size() > size * 2) {
+      // Too many entries of removed tracks, starting over
+      positions.clear();
+      indexedCount = 0;
+    }
+    for (int i = indexedCount; i < size; i++) {
+      TdApi.Message track = tracks.get(i);
+      if (isIndexable(track.chatId, track.id)) {
+        positions.put(new Key(track.chatId, track.id), i);
+      }
+    }
+    indexedCount = size;
+  }
+
+  private boolean isAt (int position, long chatId, long messageId) {
+    if (position < 0 || position >= indexedCount)
+      return false;
+    TdApi.Message track = tracks.get(position);
+    return track.chatId == chatId && track.id == messageId;
+  }
+
+  /**
+   * @return Position of the track with the given identifiers, or -1, if it's not in the list.
+   */
+  int indexOf (long chatId, long messageId) {
+    if (!isIndexable(chatId, messageId)) {
+      throw new IllegalArgumentException();
+    }
+    Integer position = positions.get(lookupKey.set(chatId, messageId));
+    if (position != null && isAt(position, chatId, messageId)) {
+      return position;
+    }
+    if (indexedCount == tracks.size()) {
+      return -1;
+    }
+    indexRemaining();
+    position = positions.get(lookupKey.set(chatId, messageId));
+    return position != null && isAt(position, chatId, messageId) ? position : -1;
+  }
+}
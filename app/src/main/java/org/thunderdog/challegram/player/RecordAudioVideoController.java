@@ -32,10 +32,10 @@ import androidx.annotation.NonNull;
 import org.drinkless.tdlib.TdApi;
 import org.thunderdog.challegram.BaseActivity;
 import org.thunderdog.challegram.Log;
-import org.thunderdog.challegram.N;
 import org.thunderdog.challegram.R;
 import org.thunderdog.challegram.U;
 import org.thunderdog.challegram.component.chat.VoiceVideoButtonView;
+import org.thunderdog.challegram.component.chat.WaveformCache;
 import org.thunderdog.challegram.core.Background;
 import org.thunderdog.challegram.core.Lang;
 import org.thunderdog.challegram.data.TD;
@@ -1948,7 +1948,7 @@ public class RecordAudioVideoController implements
     if (initialSendOptions != null && record != null) {
       if (record.getWaveform() == null) {
         Background.instance().post(() -> {
-          byte[] waveform = N.getWaveform(record.getPath());
+          byte[] waveform = WaveformCache.instance().getWaveform(record.getPath());
           sendAudioNote(new TdApi.InputMessageVoiceNote(record.toInputFile(), record.getDuration(), waveform, null, obtainSelfDestructType()), initialSendOptions);
         });
       } else {
@@ -35,6 +35,7 @@ import org.thunderdog.challegram.ui.PlaybackController;
 import org.thunderdog.challegram.unsorted.Settings;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -108,6 +109,7 @@ public class TGPlayerController implements GlobalMessageListener, ProximityManag
 
   private int messageListStateFlags;
   private final List<TdApi.Message> messageList = new ArrayList<>();
+  private final PlayListIndex playListIndex = new PlayListIndex(messageList);
   private final List<TdApi.Message> removedMessageList = new ArrayList<>();
   private final HashMap<Integer, List<TdApi.File>> filesMap = new HashMap<>();
   private int messageListContextId;
@@ -261,6 +263,7 @@ public class TGPlayerController implements GlobalMessageListener, ProximityManag
           insertPosition--;
         }
         messageList.add(insertPosition, existingItem);
+        playListIndex.invalidate(Math.min(fromPosition, insertPosition));
         notifyTrackListItemMoved(trackListChangeListeners, tdlib, track, fromPosition, insertPosition);
       } else {
         addMessageImpl(insertPosition, track);
@@ -287,6 +290,7 @@ public class TGPlayerController implements GlobalMessageListener, ProximityManag
 
   private void addMessageImpl (int position, TdApi.Message message) {
     messageList.add(position, message);
+    playListIndex.invalidate(position);
     addFileImpl(TD.getFile(message));
   }
 
@@ -304,6 +308,7 @@ public class TGPlayerController implements GlobalMessageListener, ProximityManag
 
   private void addMessagesImpl (int i, List<TdApi.Message> messages) {
     messageList.addAll(i, messages);
+    playListIndex.invalidate(i);
     for (TdApi.Message message : messages) {
       addFileImpl(TD.getFile(message));
     }
@@ -311,6 +316,7 @@ public class TGPlayerController implements GlobalMessageListener, ProximityManag
 
   private void clearMessagesImpl () {
     messageList.clear();
+    playListIndex.clear();
     clearFilesImpl();
   }
 
@@ -395,6 +401,7 @@ public class TGPlayerController implements GlobalMessageListener, ProximityManag
       if (this.message != null && playState != STATE_NONE && Td.isAudio(this.message.content)) {
         TdApi.Message track = messageList.remove(fromPosition);
         messageList.add(toPosition, track);
+        playListIndex.invalidate(Math.min(fromPosition, toPosition));
         notifyTrackListItemMoved(trackListChangeListeners, tdlib, track, fromPosition, toPosition);
         playListFlags |= PLAYLIST_FLAG_ALTERED;
       }
@@ -420,6 +427,7 @@ public class TGPlayerController implements GlobalMessageListener, ProximityManag
       } else {
         boolean isCurrent = TGPlayerController.compareTracks(track, message);
         messageList.remove(position);
+        playListIndex.invalidate(position);
         notifyTrackListItemRemoved(trackListChangeListeners, tdlib, track, position, isCurrent);
         if (byUserRequest) {
           removedMessageList.add(track);
@@ -788,14 +796,19 @@ public class TGPlayerController implements GlobalMessageListener, ProximityManag
   }
 
   private int indexOfMessage (TdApi.Message message) {
-    if (message != null) {
-      int i = 0;
-      for (TdApi.Message msg : messageList) {
-        if (compareTracks(message, msg)) {
-          return i;
-        }
-        i++;
+    if (message == null) {
+      return -1;
+    }
+    if (PlayListIndex.isIndexable(message)) {
+      int i = playListIndex.indexOf(message.chatId, message.id);
+      return i != -1 && compareTracks(message, messageList.get(i)) ? i : -1;
+    }
+    int i = 0;
+    for (TdApi.Message msg : messageList) {
+      if (compareTracks(message, msg)) {
+        return i;
       }
+      i++;
     }
     return -1;
   }
@@ -907,31 +920,45 @@ public class TGPlayerController implements GlobalMessageListener, ProximityManag
         return;
       }
       int currentIndex = indexOfCurrentMessage();
-      if (currentIndex == -1) {
+      if (currentIndex == -1 || chatId == 0) {
         return;
       }
-      final int size = messageList.size();
-      main: for (int i = size - 1; i >= 0; i--) {
+      int[] positions = new int[messageIds.length];
+      int positionCount = 0;
+      for (long messageId : messageIds) {
+        int position = playListIndex.indexOf(chatId, messageId);
+        if (position != -1) {
+          positions[positionCount++] = position;
+        }
+      }
+      Arrays.sort(positions, 0, positionCount);
+      // Removing from the end, so positions of remaining tracks stay valid
+      main: for (int j = positionCount - 1; j >= 0; j--) {
+        int i = positions[j];
+        if (j + 1 < positionCount && positions[j + 1] == i) {
+          continue;
+        }
+        if (i >= messageList.size()) {
+          break;
+        }
         TdApi.Message track = messageList.get(i);
-        if (track.chatId != 0 && track.chatId == chatId && ArrayUtils.indexOf(messageIds, track.id) != -1) {
-          if (i == currentIndex) {
-            //noinspection SwitchIntDef
-            switch (track.content.getConstructor()) {
-              case TdApi.MessageAudio.CONSTRUCTOR:
-                // Do nothing. Let user finish playback
-                break;
-              case TdApi.MessageVoiceNote.CONSTRUCTOR:
-              case TdApi.MessageVideoNote.CONSTRUCTOR:
-                // TODO switch to the next track?
-                // removeTrackImpl(track, i, false);
-                stopPlaybackImpl(false);
-                break main;
-            }
-          } else {
-            removeTrackImpl(track, i, false);
-            if (i < currentIndex) {
-              currentIndex--;
-            }
+        if (i == currentIndex) {
+          //noinspection SwitchIntDef
+          switch (track.content.getConstructor()) {
+            case TdApi.MessageAudio.CONSTRUCTOR:
+              // Do nothing. Let user finish playback
+              break;
+            case TdApi.MessageVoiceNote.CONSTRUCTOR:
+            case TdApi.MessageVideoNote.CONSTRUCTOR:
+              // TODO switch to the next track?
+              // removeTrackImpl(track, i, false);
+              stopPlaybackImpl(false);
+              break main;
+          }
+        } else {
+          removeTrackImpl(track, i, false);
+          if (i < currentIndex) {
+            currentIndex--;
           }
         }
       }
@@ -1142,17 +1169,7 @@ public class TGPlayerController implements GlobalMessageListener, ProximityManag
       PlayList playList = null;
 
       if (message != null) {
-        int existingMessageIndex = -1;
-        if (!messageList.isEmpty()) {
-          int i = 0;
-          for (TdApi.Message oldMessage : messageList) {
-            if (compareTracks(oldMessage, message)) {
-              existingMessageIndex = i;
-              break;
-            }
-            i++;
-          }
-        }
+        int existingMessageIndex = indexOfMessage(message);
         if (existingMessageIndex != -1) {
           if (builder == null && (playListFlags & PLAYLIST_FLAG_ALTERED) != 0) { // Keeping custom user playlist
             messageIndex = existingMessageIndex;
@@ -1270,6 +1287,52 @@ public class TGPlayerController implements GlobalMessageListener, ProximityManag
     return null;
   }
 
+  // Prefetch
+
+  /**
+   * Amount of upcoming tracks downloaded ahead of playback.
+   */
+  public static final int PREFETCH_TRACK_COUNT = 3;
+
+  private static final int PREFETCH_PRIORITY_NEXT = 16;
+  private static final int PREFETCH_PRIORITY = 1;
+
+  /**
+   * Starts downloading upcoming tracks, so playback doesn't stall on track boundaries.
+   *
+   * The immediate next track is requested with higher priority, the rest with the lowest one.
+   * Total amount of requested bytes is limited by {@link Settings#getPlayerPrefetchBudget()},
+   * tracks that don't fit into the remaining budget are downloaded partially.
+   *
+   * @param upcomingTracks Tracks in the order they are going to be played, with shuffle and repeat modes applied.
+   */
+  public void prefetchTracks (Tdlib tdlib, List<TdApi.Message> upcomingTracks) {
+    long budget = Settings.instance().getPlayerPrefetchBudget();
+    if (budget <= 0 || upcomingTracks.isEmpty() || tdlib.files().isDataSaverActive()) {
+      return;
+    }
+    final int count = Math.min(upcomingTracks.size(), PREFETCH_TRACK_COUNT);
+    for (int i = 0; i < count && budget > 0; i++) {
+      TdApi.File file = TD.getFile(upcomingTracks.get(i));
+      if (file == null || TD.isFileLoaded(file) || file.local.isDownloadingActive || !file.local.canBeDownloaded) {
+        continue;
+      }
+      long size = Math.max(file.size, file.expectedSize);
+      long remainingSize = size != 0 ? Math.max(0, size - file.local.downloadedPrefixSize) : budget;
+      long limit = Math.min(remainingSize, budget);
+      if (limit <= 0) {
+        continue;
+      }
+      budget -= limit;
+      if (Log.isEnabled(Log.TAG_PLAYER)) {
+        Log.i(Log.TAG_PLAYER, "Prefetching track fileId:%d position:%d bytes:%d", file.id, i, limit);
+      }
+      // Limit is counted from the beginning of the file, fully fitting files are downloaded without one
+      long prefixLimit = limit == remainingSize ? 0 : file.local.downloadedPrefixSize + limit;
+      tdlib.files().downloadFile(file, i == 0 ? PREFETCH_PRIORITY_NEXT : PREFETCH_PRIORITY, 0, prefixLimit, null);
+    }
+  }
+
   private static boolean canControlQueue (TdApi.Message message) {
     return Td.isAudio(message.content);
   }
@@ -22,8 +22,8 @@ import android.view.animation.AnticipateOvershootInterpolator;
 
 import androidx.annotation.NonNull;
 
-import org.thunderdog.challegram.N;
 import org.thunderdog.challegram.component.chat.Waveform;
+import org.thunderdog.challegram.component.chat.WaveformCache;
 import org.thunderdog.challegram.core.Background;
 import org.thunderdog.challegram.data.TGRecord;
 import org.thunderdog.challegram.theme.Theme;
@@ -67,7 +67,7 @@ public class VoiceWaveformView extends View implements FactorAnimator.Target {
     this.seekStr = Strings.buildDuration(record.getDuration());
 
     Background.instance().post(() -> {
-      final byte[] waveform = record.getWaveform() != null ? record.getWaveform() : N.getWaveform(record.getPath());
+      final byte[] waveform = record.getWaveform() != null ? record.getWaveform() : WaveformCache.instance().getWaveform(record.getPath());
       if (waveform != null) {
         UI.post(() -> setWaveform(record, waveform));
       }
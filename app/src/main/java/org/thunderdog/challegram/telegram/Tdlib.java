@@ -78,6 +78,7 @@ import org.thunderdog.challegram.unsorted.Passcode;
 import org.thunderdog.challegram.unsorted.Settings;
 import org.thunderdog.challegram.util.ChangeLogList;
 import org.thunderdog.challegram.util.DrawableProvider;
+import org.thunderdog.challegram.util.PerfTrace;
 import org.thunderdog.challegram.util.UserProvider;
 import org.thunderdog.challegram.util.WrapperProvider;
 import org.thunderdog.challegram.util.text.Letters;
@@ -378,7 +379,9 @@ public class Tdlib implements TdlibProvider, Settings.SettingsChangeListener, Da
       if (running) {
         long ms = SystemClock.uptimeMillis();
         if (object instanceof TdApi.Update) {
+          PerfTrace.begin("tdlib.update");
           tdlib.processUpdate(this, (TdApi.Update) object);
+          PerfTrace.end();
         } else {
           Log.e("Invalid update type: %s", object);
         }
@@ -441,6 +444,7 @@ public class Tdlib implements TdlibProvider, Settings.SettingsChangeListener, Da
   private final HashMap<Long, Integer> chatOnlineMemberCount = new HashMap<>();
   private final TdlibCache cache;
   private final TdlibEmojiManager emoji;
+  private final TdlibStickerSetManager stickerSets;
   private final TdlibEmojiReactionsManager reactions;
   private final TdlibSingleton<TdApi.Stickers> genericReactionEffects;
   private final TdlibListeners listeners;
@@ -548,6 +552,11 @@ public class Tdlib implements TdlibProvider, Settings.SettingsChangeListener, Da
       Log.v("INITIALIZATION: Tdlib.emoji -> %dms", SystemClock.uptimeMillis() - ms);
       ms = SystemClock.uptimeMillis();
     }
+    this.stickerSets = new TdlibStickerSetManager(this);
+    if (needMeasure) {
+      Log.v("INITIALIZATION: Tdlib.stickerSets -> %dms", SystemClock.uptimeMillis() - ms);
+      ms = SystemClock.uptimeMillis();
+    }
     this.reactions = new TdlibEmojiReactionsManager(this);
     if (needMeasure) {
       Log.v("INITIALIZATION: Tdlib.reaction -> %dms", SystemClock.uptimeMillis() - ms);
@@ -2286,6 +2295,10 @@ public class Tdlib implements TdlibProvider, Settings.SettingsChangeListener, Da
     return emoji;
   }
 
+  public TdlibStickerSetManager stickerSets () {
+    return stickerSets;
+  }
+
   public TdlibEmojiReactionsManager reactions () {
     return reactions;
   }
@@ -0,0 +1,328 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026
+ */
+package org.thunderdog.challegram.telegram;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.SparseArrayCompat;
+
+import org.drinkless.tdlib.TdApi;
+import org.thunderdog.challegram.Log;
+import org.thunderdog.challegram.core.WatchDog;
+import org.thunderdog.challegram.data.TD;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import me.vkryl.core.collection.LongSparseIntArray;
+
+/**
+ * Schedules automatic downloads of media in the opened chat based on its distance from the visible messages.
+ *
+ * Visible media gets the highest TDLib priority, priority of the rest decreases with distance.
+ * Amount of simultaneous automatic downloads is limited depending on connection type,
+ * and downloads that scrolled further than {@link #FAR_DISTANCE} messages away are paused,
+ * until they get close to the viewport again.
+ *
+ * Downloads requested outside of the opened chat are not handled and start right away,
+ * and downloads that did not start before the chat was closed start as well.
+ */
+public final class TdlibAutoDownloadScheduler {
+  /**
+   * Maximum distance from the visible messages, in messages, at which media is still downloaded automatically.
+   */
+  public static final int FAR_DISTANCE = 40;
+
+  private static final int MAX_PRIORITY = 32;
+  private static final int MIN_PRIORITY = 2;
+
+  private static final int STATE_QUEUED = 0;
+  private static final int STATE_ACTIVE = 1;
+  private static final int STATE_PAUSED = 2;
+
+  private static class Request {
+    final TdApi.File file;
+    final TdApi.ChatType chatType;
+    final int mediaType;
+    final long messageId;
+    int state = STATE_QUEUED;
+    int priority;
+
+    Request (TdApi.File file, @Nullable TdApi.ChatType chatType, @MediaDownloadType int mediaType, long messageId) {
+      this.file = file;
+      this.chatType = chatType;
+      this.mediaType = mediaType;
+      this.messageId = messageId;
+    }
+  }
+
+  private final Tdlib tdlib;
+  private final TdlibFilesManager files;
+
+  private final SparseArrayCompat<Request> requests = new SparseArrayCompat<>();
+  private int activeCount;
+
+  private long viewportChatId;
+  private LongSparseIntArray viewportDistances = new LongSparseIntArray();
+
+  TdlibAutoDownloadScheduler (Tdlib tdlib, TdlibFilesManager files) {
+    this.tdlib = tdlib;
+    this.files = files;
+  }
+
+  // Viewport
+
+  /**
+   * Starts handling automatic downloads in the chat. Nothing is downloaded until the first {@link #setViewport} call.
+   */
+  public void openViewport (long chatId) {
+    synchronized (this) {
+      if (viewportChatId != chatId) {
+        dropRequests();
+        viewportChatId = chatId;
+        viewportDistances = new LongSparseIntArray();
+      }
+    }
+  }
+
+  public void closeViewport (long chatId) {
+    synchronized (this) {
+      if (viewportChatId == chatId) {
+        dropRequests();
+        viewportChatId = 0;
+        viewportDistances = new LongSparseIntArray();
+      }
+    }
+  }
+
+  /**
+   * @param distances Distance of messages around the viewport from the closest visible message, 0 for visible messages.
+   *                  Messages that are not present are considered far away. Must not be modified after the call.
+   */
+  public void setViewport (long chatId, @NonNull LongSparseIntArray distances) {
+    synchronized (this) {
+      if (viewportChatId != chatId) {
+        return;
+      }
+      viewportDistances = distances;
+      schedule();
+    }
+  }
+
+  // Requests
+
+  /**
+   * @return false, if download is not handled by scheduler and has to be started right away.
+   */
+  boolean requestDownload (@NonNull TdApi.File file, @Nullable TdApi.ChatType chatType, @MediaDownloadType int mediaType, long chatId, long messageId) {
+    if (chatId == 0 || messageId == 0 || TD.isFileLoaded(file)) {
+      return false;
+    }
+    synchronized (this) {
+      if (viewportChatId != chatId) {
+        return false;
+      }
+      Request request = requests.get(file.id);
+      if (request != null) {
+        return true;
+      }
+      request = new Request(file, chatType, mediaType, messageId);
+      requests.put(file.id, request);
+      schedule();
+    }
+    return true;
+  }
+
+  /**
+   * Forgets the file without touching its download, e.g. when user has started it manually.
+   */
+  void forget (int fileId) {
+    synchronized (this) {
+      Request request = requests.get(fileId);
+      if (request != null) {
+        requests.remove(fileId);
+        if (request.state == STATE_ACTIVE) {
+          activeCount--;
+          schedule();
+        }
+      }
+    }
+  }
+
+  /**
+   * Called when download is no longer in progress: it was either finished, failed, or cancelled.
+   */
+  void onDownloadStopped (int fileId, boolean isLoaded) {
+    synchronized (this) {
+      Request request = requests.get(fileId);
+      if (request == null || (request.state == STATE_PAUSED && !isLoaded)) {
+        // Paused by scheduler, keeping until it becomes close to the viewport again
+        return;
+      }
+      requests.remove(fileId);
+      if (request.state == STATE_ACTIVE) {
+        activeCount--;
+        schedule();
+      }
+    }
+  }
+
+  /**
+   * Called when connection type or data saver state has changed.
+   */
+  void onDownloadPolicyChanged () {
+    synchronized (this) {
+      schedule();
+    }
+  }
+
+  /**
+   * Forgets all requests, as their downloads were cancelled by data saver.
+   */
+  void onAllDownloadsCancelled () {
+    synchronized (this) {
+      requests.clear();
+      activeCount = 0;
+    }
+  }
+
+  // Impl
+
+  private void dropRequests () {
+    // Media of the chat that is no longer in focus is downloaded the same way as outside of the opened chat
+    final int size = requests.size();
+    for (int i = 0; i < size; i++) {
+      Request request = requests.valueAt(i);
+      if (request.state != STATE_ACTIVE) {
+        files.startAutomaticDownload(request.file, request.chatType, request.mediaType, MIN_PRIORITY);
+      }
+    }
+    requests.clear();
+    activeCount = 0;
+  }
+
+  private int getMaxActiveCount () {
+    WatchDog watchDog = tdlib.context().watchDog();
+    if (watchDog.isWifi()) {
+      return 6;
+    }
+    if (watchDog.isMobile()) {
+      return 3;
+    }
+    if (watchDog.isRoaming()) {
+      return 1;
+    }
+    return 2;
+  }
+
+  private static int priorityForDistance (int distance) {
+    return Math.max(MIN_PRIORITY, MAX_PRIORITY - distance);
+  }
+
+  private void schedule () {
+    ArrayList<Request> candidates = null;
+    ArrayList<Request> actives = null;
+
+    final int size = requests.size();
+    for (int i = 0; i < size; i++) {
+      Request request = requests.valueAt(i);
+      int distance = viewportDistances.get(request.messageId, -1);
+      boolean isFar = distance == -1 || distance > FAR_DISTANCE;
+      switch (request.state) {
+        case STATE_ACTIVE: {
+          if (isFar) {
+            pause(request);
+          } else {
+            int priority = priorityForDistance(distance);
+            if (request.priority != priority) {
+              request.priority = priority;
+              files.setAutomaticDownloadPriority(request.file.id, priority);
+            }
+            if (actives == null) {
+              actives = new ArrayList<>();
+            }
+            actives.add(request);
+          }
+          break;
+        }
+        case STATE_QUEUED:
+        case STATE_PAUSED: {
+          if (!isFar) {
+            request.priority = priorityForDistance(distance);
+            if (candidates == null) {
+              candidates = new ArrayList<>();
+            }
+            candidates.add(request);
+          }
+          break;
+        }
+      }
+    }
+
+    final int maxActiveCount = getMaxActiveCount();
+    Request lowestActive = null;
+    if (actives != null) {
+      Collections.sort(actives, (a, b) -> Integer.compare(b.priority, a.priority));
+      // Limit could have been lowered after connection type change
+      while (activeCount > maxActiveCount && !actives.isEmpty()) {
+        pause(actives.remove(actives.size() - 1));
+      }
+      if (!actives.isEmpty()) {
+        lowestActive = actives.get(actives.size() - 1);
+      }
+    }
+
+    if (candidates == null) {
+      return;
+    }
+    Collections.sort(candidates, (a, b) -> Integer.compare(b.priority, a.priority));
+    for (Request request : candidates) {
+      if (activeCount >= maxActiveCount) {
+        // Visible media takes the place of the least important download
+        if (request.priority == MAX_PRIORITY && lowestActive != null && lowestActive.priority < MAX_PRIORITY) {
+          pause(lowestActive);
+          lowestActive = null;
+        } else {
+          break;
+        }
+      }
+      start(request);
+    }
+  }
+
+  private void start (Request request) {
+    if (!files.startAutomaticDownload(request.file, request.chatType, request.mediaType, request.priority)) {
+      // Settings have changed since the request was made
+      requests.remove(request.file.id);
+      return;
+    }
+    request.state = STATE_ACTIVE;
+    activeCount++;
+    if (Log.isEnabled(Log.TAG_TDLIB_FILES)) {
+      Log.i(Log.TAG_TDLIB_FILES, "Starting automatic download id=%d priority=%d active=%d", request.file.id, request.priority, activeCount);
+    }
+  }
+
+  private void pause (@Nullable Request request) {
+    if (request == null || request.state != STATE_ACTIVE)
+      return;
+    request.state = STATE_PAUSED;
+    activeCount--;
+    if (Log.isEnabled(Log.TAG_TDLIB_FILES)) {
+      Log.i(Log.TAG_TDLIB_FILES, "Pausing automatic download id=%d active=%d", request.file.id, activeCount);
+    }
+    files.pauseAutomaticDownload(request.file.id);
+  }
+}
@@ -50,6 +50,7 @@ import org.thunderdog.challegram.util.text.Letters;
 
 import java.lang.ref.Reference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
@@ -57,6 +58,7 @@ import java.util.List;
 import me.vkryl.core.ArrayUtils;
 import me.vkryl.core.DateUtils;
 import me.vkryl.core.StringUtils;
+import me.vkryl.core.collection.LongSet;
 import me.vkryl.core.lambda.CancellableRunnable;
 import me.vkryl.core.reference.ReferenceList;
 import me.vkryl.core.reference.ReferenceUtils;
@@ -91,6 +93,8 @@ public class TdlibContactManager implements CleanupStartupDelegate {
   public static final int HIDE_OPTION_LATER = 1;
   public static final int HIDE_OPTION_NEVER = 2;
 
+  private static final String _SNAPSHOT_KEY = "sync_snapshot";
+
   private static final String _STATUS_KEY = "sync_state";
   public static final int STATUS_INACTIVE = 0;
   public static final int STATUS_IN_FIRST_PROGRESS = 1;
@@ -107,12 +111,10 @@ public class TdlibContactManager implements CleanupStartupDelegate {
 
   private int state;
 
-  private long maxModificationDate;
-  private long lastRetrievedContactCount;
-
   private List<Reference<Object>> avatarExpectors;
 
   private final Tdlib tdlib;
+  private final TdlibContactSnapshot snapshot;
 
   private String key (String key) {
     return tdlib.id() != 0 ? key + "_" + tdlib.id() : key;
@@ -120,6 +122,7 @@ public class TdlibContactManager implements CleanupStartupDelegate {
 
   TdlibContactManager (Tdlib tdlib) {
     this.tdlib = tdlib;
+    this.snapshot = new TdlibContactSnapshot(key(_SNAPSHOT_KEY));
     this.checkLimiter = new RateLimiter(() -> {
       tdlib.searchContacts(null, 5, newHandler());
     }, 200L, null);
@@ -200,6 +203,7 @@ public class TdlibContactManager implements CleanupStartupDelegate {
   }
 
   public void deleteContacts () {
+    snapshot.clear();
     tdlib.client().send(new TdApi.ClearImportedContacts(), new Client.ResultHandler() {
       @Override
       public void onResult (TdApi.Object clearImportResult) {
@@ -247,7 +251,7 @@ public class TdlibContactManager implements CleanupStartupDelegate {
     setStatus(STATUS_INACTIVE);
     setState(STATE_NOT_STARTED);
     setRegisteredContactsImpl(null, 0, false);
-    maxModificationDate = 0;
+    snapshot.clear();
     if (includeServer) {
       tdlib.client().send(new TdApi.ClearImportedContacts(), tdlib.okHandler());
       tdlib.client().send(new TdApi.ChangeImportedContacts(new TdApi.Contact[0]), object -> {
@@ -834,71 +838,18 @@ public class TdlibContactManager implements CleanupStartupDelegate {
 
   private void importContactsImpl (CancellableRunnable cancellationSignal, boolean ignoreIfNoChanges) {
     Cursor c = null;
-    int count;
     Context context = UI.getAppContext();
-    TdApi.Contact[] result = null;
-    long maxModificationDate = 0;
+    final boolean hasModificationDates = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2;
+    ArrayList<TdlibContactSnapshot.Contact> updatedContacts = null;
+    ArrayList<TdlibContactSnapshot.Entry> importEntries = null;
+    long[] removedContactIds = null;
     try {
       ContentResolver resolver = context.getContentResolver();
 
-      if (ignoreIfNoChanges) {
-        boolean ok = false;
-        try {
-          if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
-            if (this.maxModificationDate == 0) {
-              ok = true;
-            } else {
-              c = resolver.query(ContactsContract.Contacts.CONTENT_URI,
-                new String[]{
-                  ContactsContract.Contacts._ID
-                },
-                ContactsContract.Contacts.HAS_PHONE_NUMBER + "<>0 AND " + ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP + " > " + this.maxModificationDate,
-                null,
-                ContactsContract.Contacts.CONTACT_LAST_UPDATED_TIMESTAMP + " DESC LIMIT 1"
-              );
-              if (c != null) {
-                ok = c.getCount() > 0;
-                U.closeCursor(c); c = null;
-                if (ok) {
-                  Log.i(Log.TAG_CONTACT, "Found newer contact modifications, starting sync process");
-                }
-              }
-            }
-          }
-          if (!ok) {
-            c = resolver.query(
-                ContactsContract.Contacts.CONTENT_URI,
-                new String[] {
-                  ContactsContract.Contacts._ID
-                },
-              ContactsContract.Contacts.HAS_PHONE_NUMBER + "<>0",
-              null,
-              null
-              );
-            if (c != null) {
-              long totalContactCount = c.getCount();
-              ok = totalContactCount != lastRetrievedContactCount;
-              if (ok) {
-                Log.i(Log.TAG_CONTACT, "Contact list size changed, starting sync process: prev_size:%d, new_size: %d", lastRetrievedContactCount, totalContactCount);
-              }
-            }
-            U.closeCursor(c); c = null;
-          }
-        } catch (Throwable t) {
-          Log.critical(Log.TAG_CONTACT, "Contact changes check failed", t);
-        }
-        if (!ok) {
-          Log.i(Log.TAG_CONTACT, "No contact changes has been found, aborting.");
-          setState(STATE_FINISHED);
-
-          U.closeCursor(c); c = null;
-
-          return;
-        }
-      }
+      // Finding added and modified contacts by their modification date, without reading their data rows
 
       String[] projection;
-      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
+      if (hasModificationDates) {
         projection = new String[] {
           ContactsContract.Contacts._ID,
           ContactsContract.Contacts.DISPLAY_NAME,
@@ -920,145 +871,280 @@ public class TdlibContactManager implements CleanupStartupDelegate {
         throw new NullPointerException("Contacts.CONTENT_URI query failed");
       }
 
-      count = c.getCount();
-      lastRetrievedContactCount = count;
-      ArrayList<ContactData> contacts = new ArrayList<>(count);
-
+      final int totalCount = c.getCount();
+      final LongSet presentContactIds = new LongSet(totalCount);
+      final HashMap<Long, ContactData> changedContacts = new HashMap<>();
       while (c.moveToNext()) {
         long _id = c.getLong(0);
-        String displayName = StringUtils.trim(c.getString(1));
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR2) {
-          maxModificationDate = Math.max(maxModificationDate, c.getLong(2));
+        long lastUpdated = hasModificationDates ? c.getLong(2) : 0;
+        presentContactIds.add(_id);
+        TdlibContactSnapshot.Contact knownContact = snapshot.get(_id);
+        if (knownContact == null || lastUpdated == 0 || knownContact.lastUpdated != lastUpdated) {
+          changedContacts.put(_id, new ContactData(_id, StringUtils.trim(c.getString(1)), lastUpdated));
         }
-        contacts.add(new ContactData(_id, displayName));
       }
       U.closeCursor(c); c = null;
 
-      if (!contacts.isEmpty()) {
-        final HashMap<Long, ContactData> contactMap = new HashMap<>(contacts.size());
-        for (ContactData contactData : contacts) {
-          contactMap.put(contactData.contactId, contactData);
+      if (UI.inTestMode()) {
+        presentContactIds.add(ROBOTS_CONTACT_ID);
+      }
+      long[] knownContactIds = snapshot.getContactIds();
+      int removedCount = 0;
+      for (long knownContactId : knownContactIds) {
+        if (!presentContactIds.has(knownContactId)) {
+          knownContactIds[removedCount++] = knownContactId;
         }
-        c = resolver.query(ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
-          new String[] {
-            ContactsContract.Data._ID,
-            ContactsContract.Data.CONTACT_ID,
-            ContactsContract.CommonDataKinds.Phone.NUMBER
-          },
-          null,
-          null,
-          null);
-        if (c == null) {
-          throw new NullPointerException("Phone.CONTENT_URI query failed");
+      }
+      removedContactIds = Arrays.copyOf(knownContactIds, removedCount);
+
+      if (!changedContacts.isEmpty()) {
+        readContactData(resolver, changedContacts);
+      }
+
+      // Comparing imported content, as modification date also changes when contact is starred, called, etc
+
+      updatedContacts = new ArrayList<>(changedContacts.size());
+      importEntries = new ArrayList<>();
+      ArrayList<TdApi.Contact> converted = new ArrayList<>();
+      for (ContactData contact : changedContacts.values()) {
+        converted.clear();
+        contact.convertToContact(converted);
+        addUpdatedContact(contact.contactId, contact.lastUpdated, converted, updatedContacts, importEntries);
+      }
+      if (UI.inTestMode()) {
+        converted.clear();
+        addRobots(converted);
+        addUpdatedContact(ROBOTS_CONTACT_ID, 0, converted, updatedContacts, importEntries);
+      }
+      Log.i(Log.TAG_CONTACT, "Found contact changes, total:%d, modified:%d, changed:%d, removed:%d", totalCount, changedContacts.size(), updatedContacts.size(), removedContactIds.length);
+    } catch (Throwable t) {
+      U.closeCursor(c);
+      Log.critical(Log.TAG_CONTACT, "Contacts synchronization failed", t);
+      updatedContacts = null;
+    }
+
+    if (!cancellationSignal.isPending()) {
+      return;
+    }
+    if (updatedContacts == null) {
+      setState(STATE_NOT_STARTED);
+      return;
+    }
+    if (updatedContacts.isEmpty() && removedContactIds.length == 0) {
+      Log.i(Log.TAG_CONTACT, "No contact changes has been found");
+      if (!ignoreIfNoChanges) {
+        setUnregisteredContactsFromSnapshot();
+        checkRegisteredCount();
+      }
+      setState(STATE_FINISHED);
+      return;
+    }
+    importContactChanges(cancellationSignal, updatedContacts, importEntries, removedContactIds);
+  }
+
+  private static final long ROBOTS_CONTACT_ID = -1;
+  private static final int MAX_FILTERED_CONTACT_COUNT = 500;
+
+  /**
+   * Reads phone numbers and names of the given contacts.
+   */
+  private static void readContactData (ContentResolver resolver, HashMap<Long, ContactData> contactMap) {
+    String filter;
+    if (contactMap.size() <= MAX_FILTERED_CONTACT_COUNT) {
+      StringBuilder b = new StringBuilder(ContactsContract.Data.CONTACT_ID).append(" IN (");
+      boolean first = true;
+      for (Long contactId : contactMap.keySet()) {
+        if (first) {
+          first = false;
+        } else {
+          b.append(',');
         }
+        b.append(contactId);
+      }
+      filter = b.append(')').toString();
+    } else {
+      // Too many contacts were modified, reading everything and skipping rows of unmodified contacts
+      filter = null;
+    }
 
-        int validContactCount = 0;
-        ArrayList<String[]> unknownPhoneNumbers = null;
-        while (c.moveToNext()) {
-          long _id = c.getLong(0);
-          long contactId = c.getLong(1);
-          String rawPhoneNumber = c.getString(2);
-          String phoneNumber = cleanPhoneNumber(rawPhoneNumber);
-          if (!StringUtils.isEmpty(phoneNumber)) {
-            ContactData data = contactMap.get(contactId);
-            if (data != null) {
-              if (!data.phoneNumbers.contains(phoneNumber)) {
-                data.phoneNumbers.add(phoneNumber);
-                data.rawPhoneNumbers.add(phoneNumber);
-                validContactCount++;
-              }
-            } else {
-              if (unknownPhoneNumbers == null) {
-                unknownPhoneNumbers = new ArrayList<>();
-              }
-              unknownPhoneNumbers.add(new String[] {phoneNumber, rawPhoneNumber});
-            }
+    Cursor c = null;
+    try {
+      c = resolver.query(ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
+        new String[] {
+          ContactsContract.Data._ID,
+          ContactsContract.Data.CONTACT_ID,
+          ContactsContract.CommonDataKinds.Phone.NUMBER
+        },
+        filter,
+        null,
+        null);
+      if (c == null) {
+        throw new NullPointerException("Phone.CONTENT_URI query failed");
+      }
+      while (c.moveToNext()) {
+        long contactId = c.getLong(1);
+        String phoneNumber = cleanPhoneNumber(c.getString(2));
+        if (!StringUtils.isEmpty(phoneNumber)) {
+          ContactData data = contactMap.get(contactId);
+          if (data != null && !data.phoneNumbers.contains(phoneNumber)) {
+            data.phoneNumbers.add(phoneNumber);
+            data.rawPhoneNumbers.add(phoneNumber);
           }
         }
-        U.closeCursor(c); c = null;
-        if (unknownPhoneNumbers != null) {
-          Log.w(Log.TAG_CONTACT, "%d phone numbers do not belong to any known contact_id", unknownPhoneNumbers.size());
-          // TODO ?
-        }
+      }
+      U.closeCursor(c); c = null;
 
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && USE_FULL_NAME_STYLES) {
-          projection = new String[] {
-            ContactsContract.Data._ID,
-            ContactsContract.Data.CONTACT_ID,
-            ContactsContract.CommonDataKinds.StructuredName.GIVEN_NAME,
-            ContactsContract.CommonDataKinds.StructuredName.FAMILY_NAME,
-            ContactsContract.CommonDataKinds.StructuredName.MIDDLE_NAME,
-            ContactsContract.CommonDataKinds.StructuredName.FULL_NAME_STYLE
-          };
-        } else {
-          projection = new String[] {
-            ContactsContract.Data._ID,
-            ContactsContract.Data.CONTACT_ID,
-            ContactsContract.CommonDataKinds.StructuredName.GIVEN_NAME,
-            ContactsContract.CommonDataKinds.StructuredName.FAMILY_NAME,
-            ContactsContract.CommonDataKinds.StructuredName.MIDDLE_NAME,
-          };
-        }
-        c = resolver.query(ContactsContract.Data.CONTENT_URI,
-          projection,
-          ContactsContract.Data.MIMETYPE + "=?",
-          new String[] {
-            ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE
-          },
-          null
-        );
-        if (c == null) {
-          throw new NullPointerException("Data.CONTENT_URI query failed");
+      String[] projection;
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && USE_FULL_NAME_STYLES) {
+        projection = new String[] {
+          ContactsContract.Data._ID,
+          ContactsContract.Data.CONTACT_ID,
+          ContactsContract.CommonDataKinds.StructuredName.GIVEN_NAME,
+          ContactsContract.CommonDataKinds.StructuredName.FAMILY_NAME,
+          ContactsContract.CommonDataKinds.StructuredName.MIDDLE_NAME,
+          ContactsContract.CommonDataKinds.StructuredName.FULL_NAME_STYLE
+        };
+      } else {
+        projection = new String[] {
+          ContactsContract.Data._ID,
+          ContactsContract.Data.CONTACT_ID,
+          ContactsContract.CommonDataKinds.StructuredName.GIVEN_NAME,
+          ContactsContract.CommonDataKinds.StructuredName.FAMILY_NAME,
+          ContactsContract.CommonDataKinds.StructuredName.MIDDLE_NAME,
+        };
+      }
+      c = resolver.query(ContactsContract.Data.CONTENT_URI,
+        projection,
+        ContactsContract.Data.MIMETYPE + "=?" + (filter != null ? " AND " + filter : ""),
+        new String[] {
+          ContactsContract.CommonDataKinds.StructuredName.CONTENT_ITEM_TYPE
+        },
+        null
+      );
+      if (c == null) {
+        throw new NullPointerException("Data.CONTENT_URI query failed");
+      }
+      while (c.moveToNext()) {
+        long contactId = c.getLong(1);
+        ContactData contact = contactMap.get(contactId);
+        if (contact == null) {
+          continue;
         }
-        while (c.moveToNext()) {
-          long _id = c.getLong(0);
-          long contactId = c.getLong(1);
-          ContactData contact = contactMap.get(contactId);
-          if (contact == null) {
-            continue;
-          }
-          String firstName = StringUtils.trim(c.getString(2));
-          String lastName = StringUtils.trim(c.getString(3));
-          String middleName = StringUtils.trim(c.getString(4));
-          long fullNameStyle = -1;
-          if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && USE_FULL_NAME_STYLES) {
-            fullNameStyle = c.getLong(5);
-            if (!StringUtils.isEmpty(middleName)) {
-              if (StringUtils.isEmpty(lastName)) {
-                lastName = middleName;
-              } else {
-                lastName = middleName + ' ' + lastName;
-              }
+        String firstName = StringUtils.trim(c.getString(2));
+        String lastName = StringUtils.trim(c.getString(3));
+        String middleName = StringUtils.trim(c.getString(4));
+        long fullNameStyle = -1;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && USE_FULL_NAME_STYLES) {
+          fullNameStyle = c.getLong(5);
+          if (!StringUtils.isEmpty(middleName)) {
+            if (StringUtils.isEmpty(lastName)) {
+              lastName = middleName;
+            } else {
+              lastName = middleName + ' ' + lastName;
             }
           }
-          contact.addVariation(new NameVariation(contact.phoneNumbers, firstName, lastName, middleName, fullNameStyle));
-        }
-        U.closeCursor(c); c = null;
-        ArrayList<TdApi.Contact> futureResult = new ArrayList<>(validContactCount);
-        for (ContactData contact : contacts) {
-          contact.convertToContact(futureResult);
-        }
-        if (UI.inTestMode()) {
-          addRobots(futureResult);
         }
-        result = new TdApi.Contact[futureResult.size()];
-        futureResult.toArray(result);
-      } else {
-        result = new TdApi.Contact[0];
+        contact.addVariation(new NameVariation(contact.phoneNumbers, firstName, lastName, middleName, fullNameStyle));
       }
-    } catch (Throwable t) {
+      U.closeCursor(c); c = null;
+    } finally {
       U.closeCursor(c);
-      Log.critical(Log.TAG_CONTACT, "Contacts synchronization failed", t);
     }
+  }
 
-    if (cancellationSignal.isPending()) {
-      if (result != null) {
-        this.maxModificationDate = maxModificationDate;
-        importContacts(cancellationSignal, result);
+  private void addUpdatedContact (long contactId, long lastUpdated, List<TdApi.Contact> contacts, List<TdlibContactSnapshot.Contact> outUpdatedContacts, List<TdlibContactSnapshot.Entry> outImportEntries) {
+    TdlibContactSnapshot.Contact updatedContact = new TdlibContactSnapshot.Contact(contactId, lastUpdated, TdlibContactSnapshot.Contact.toEntries(contacts));
+    TdlibContactSnapshot.Contact knownContact = snapshot.get(contactId);
+    if (knownContact != null && knownContact.contentHash == updatedContact.contentHash) {
+      if (knownContact.lastUpdated != lastUpdated) {
+        outUpdatedContacts.add(knownContact.withLastUpdated(lastUpdated));
+      }
+    } else {
+      outUpdatedContacts.add(updatedContact);
+      Collections.addAll(outImportEntries, updatedContact.entries);
+    }
+  }
+
+  private void importContactChanges (final CancellableRunnable cancellationSignal, final List<TdlibContactSnapshot.Contact> updatedContacts, final List<TdlibContactSnapshot.Entry> importEntries, final long[] removedContactIds) {
+    if (importEntries.isEmpty()) {
+      applyContactChanges(cancellationSignal, updatedContacts, removedContactIds);
+      return;
+    }
+    TdApi.Contact[] contacts = new TdApi.Contact[importEntries.size()];
+    for (int i = 0; i < contacts.length; i++) {
+      contacts[i] = importEntries.get(i).toContact();
+    }
+    if (Log.isEnabled(Log.TAG_CONTACT)) {
+      if (Log.checkLogLevel(Log.LEVEL_VERBOSE)) {
+        Log.v(Log.TAG_CONTACT, "Importing %d contacts...\n%s", contacts.length, TextUtils.join("\n", contacts));
       } else {
-        setState(STATE_NOT_STARTED);
+        Log.i(Log.TAG_CONTACT, "Found %d changed contacts, importing...", contacts.length);
       }
     }
+    tdlib.client().send(new TdApi.ImportContacts(contacts), object -> {
+      switch (object.getConstructor()) {
+        case TdApi.ImportedContacts.CONSTRUCTOR: {
+          TdApi.ImportedContacts imported = (TdApi.ImportedContacts) object;
+          for (int i = 0; i < contacts.length; i++) {
+            TdlibContactSnapshot.Entry entry = importEntries.get(i);
+            entry.userId = imported.userIds[i];
+            entry.importerCount = imported.importerCount[i];
+          }
+          Background.instance().post(() -> applyContactChanges(cancellationSignal, updatedContacts, removedContactIds));
+          break;
+        }
+        case TdApi.Error.CONSTRUCTOR: {
+          // Snapshot stays as is, so changes will be imported again during the next synchronization
+          Log.e(Log.TAG_CONTACT, "importContacts: %s", TD.toErrorString(object));
+          setState(STATE_FINISHED);
+          break;
+        }
+      }
+    });
+  }
+
+  private void applyContactChanges (CancellableRunnable cancellationSignal, List<TdlibContactSnapshot.Contact> updatedContacts, long[] removedContactIds) {
+    if (cancellationSignal.isPending()) {
+      long[] removedUserIds = snapshot.apply(updatedContacts, removedContactIds);
+      if (removedUserIds.length > 0) {
+        Log.i(Log.TAG_CONTACT, "Removing %d contacts that are no longer present on the device", removedUserIds.length);
+        tdlib.client().send(new TdApi.RemoveContacts(removedUserIds), tdlib.okHandler());
+      }
+      setUnregisteredContactsFromSnapshot();
+      checkRegisteredCount();
+    }
+    setState(STATE_FINISHED);
+  }
+
+  private void setUnregisteredContactsFromSnapshot () {
+    List<TdlibContactSnapshot.Entry> entries = snapshot.getUnregisteredEntries();
+    if (entries.isEmpty()) {
+      setUnregisteredContacts(null);
+      return;
+    }
+    ArrayList<UnregisteredContact> unregisteredContacts = new ArrayList<>(entries.size());
+    for (TdlibContactSnapshot.Entry entry : entries) {
+      unregisteredContacts.add(new UnregisteredContact(entry.toContact(), formatPhoneNumber(entry.phoneNumber), entry.importerCount));
+    }
+    sortUnregisteredContacts(unregisteredContacts);
+    setUnregisteredContacts(unregisteredContacts);
+  }
+
+  private static void sortUnregisteredContacts (ArrayList<UnregisteredContact> unregisteredContacts) {
+    Collections.sort(unregisteredContacts, (o1, o2) -> {
+      int c;
+      c = Integer.compare(o2.importerCount, o1.importerCount);
+      if (c != 0) {
+        return c;
+      }
+      String n1 = TD.getUserName(o1.contact.firstName, o1.contact.lastName).toLowerCase();
+      String n2 = TD.getUserName(o2.contact.firstName, o2.contact.lastName).toLowerCase();
+      c = n1.compareTo(n2);
+      if (c != 0) {
+        return c;
+      }
+      return o1.contact.phoneNumber.compareTo(o2.contact.phoneNumber);
+    });
   }
 
   private void importContacts (final CancellableRunnable cancellationSingal, final TdApi.Contact[] contacts) {
@@ -1089,20 +1175,7 @@ public class TdlibContactManager implements CleanupStartupDelegate {
           if (cancellationSingal.isPending()) {
             if (unregisteredContacts != null) {
               unregisteredContacts.trimToSize();
-              Collections.sort(unregisteredContacts, (o1, o2) -> {
-                int c;
-                c = Integer.compare(o2.importerCount, o1.importerCount);
-                if (c != 0) {
-                  return c;
-                }
-                String n1 = TD.getUserName(o1.contact.firstName, o1.contact.lastName).toLowerCase();
-                String n2 = TD.getUserName(o2.contact.firstName, o2.contact.lastName).toLowerCase();
-                c = n1.compareTo(n2);
-                if (c != 0) {
-                  return c;
-                }
-                return o1.contact.phoneNumber.compareTo(o2.contact.phoneNumber);
-              });
+              sortUnregisteredContacts(unregisteredContacts);
               setUnregisteredContacts(unregisteredContacts);
             } else {
               setUnregisteredContacts(null);
@@ -1220,13 +1293,15 @@ public class TdlibContactManager implements CleanupStartupDelegate {
   private static class ContactData {
     public final long contactId;
     public final String displayName;
+    public final long lastUpdated;
     public final ArrayList<String> phoneNumbers = new ArrayList<>();
     public final ArrayList<String> rawPhoneNumbers = new ArrayList<>();
     public ArrayList<NameVariation> nameVariations;
 
-    public ContactData (long contactId, String displayName) {
+    public ContactData (long contactId, String displayName, long lastUpdated) {
       this.contactId = contactId;
       this.displayName = displayName;
+      this.lastUpdated = lastUpdated;
     }
 
     public static @Nullable String filterName (String name, List<String> phoneNumbers) {
@@ -0,0 +1,289 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026
+ */
+package org.thunderdog.challegram.telegram;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.drinkless.tdlib.TdApi;
+import org.thunderdog.challegram.Log;
+import org.thunderdog.challegram.unsorted.Settings;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+import me.vkryl.core.StringUtils;
+import me.vkryl.core.collection.LongSet;
+import me.vkryl.core.util.Blob;
+
+/**
+ * Persisted state of the address book as it was last imported to TDLib.
+ *
+ * For every device contact it keeps its modification date, a hash of the imported content
+ * and the imported phone numbers along with the import results,
+ * so synchronization is able to find exact additions, changes and removals
+ * without reading the whole address book and re-importing it.
+ */
+final class TdlibContactSnapshot {
+  private static final int VERSION = 1;
+
+  static final class Entry {
+    final String phoneNumber, firstName, lastName;
+    long userId;
+    int importerCount;
+
+    Entry (@NonNull String phoneNumber, @Nullable String firstName, @Nullable String lastName) {
+      this.phoneNumber = phoneNumber;
+      this.firstName = firstName;
+      this.lastName = lastName;
+    }
+
+    TdApi.Contact toContact () {
+      return new TdApi.Contact(phoneNumber, firstName, lastName, null, 0);
+    }
+  }
+
+  static final class Contact {
+    final long contactId;
+    final long lastUpdated;
+    final long contentHash;
+    final Entry[] entries;
+
+    Contact (long contactId, long lastUpdated, @NonNull Entry[] entries) {
+      this(contactId, lastUpdated, hashOf(entries), entries);
+    }
+
+    private Contact (long contactId, long lastUpdated, long contentHash, @NonNull Entry[] entries) {
+      this.contactId = contactId;
+      this.lastUpdated = lastUpdated;
+      this.contentHash = contentHash;
+      this.entries = entries;
+    }
+
+    Contact withLastUpdated (long lastUpdated) {
+      return new Contact(contactId, lastUpdated, contentHash, entries);
+    }
+
+    /**
+     * @return Entries sorted by phone number, so content hash does not depend on the order rows were returned in.
+     */
+    static Entry[] toEntries (List<TdApi.Contact> contacts) {
+      Entry[] entries = new Entry[contacts.size()];
+      for (int i = 0; i < entries.length; i++) {
+        TdApi.Contact contact = contacts.get(i);
+        entries[i] = new Entry(contact.phoneNumber, contact.firstName, contact.lastName);
+      }
+      Arrays.sort(entries, (a, b) -> a.phoneNumber.compareTo(b.phoneNumber));
+      return entries;
+    }
+
+    private static long hashOf (Entry[] entries) {
+      // FNV-1a
+      long hash = 0xcbf29ce484222325L;
+      for (Entry entry : entries) {
+        hash = hashOf(hash, entry.phoneNumber);
+        hash = hashOf(hash, entry.firstName);
+        hash = hashOf(hash, entry.lastName);
+      }
+      return hash;
+    }
+
+    private static long hashOf (long hash, @Nullable String value) {
+      if (value != null) {
+        final int length = value.length();
+        for (int i = 0; i < length; i++) {
+          hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+      }
+      // Separator, so "ab" + "c" and "a" + "bc" do not collide
+      return (hash ^ 0xffff) * 0x100000001b3L;
+    }
+  }
+
+  private final String storageKey;
+  private final HashMap<Long, Contact> contacts = new HashMap<>();
+  private boolean isLoaded;
+
+  TdlibContactSnapshot (String storageKey) {
+    this.storageKey = storageKey;
+  }
+
+  // Access
+
+  synchronized int size () {
+    load();
+    return contacts.size();
+  }
+
+  synchronized @Nullable Contact get (long contactId) {
+    load();
+    return contacts.get(contactId);
+  }
+
+  synchronized long[] getContactIds () {
+    load();
+    long[] contactIds = new long[contacts.size()];
+    int i = 0;
+    for (Long contactId : contacts.keySet()) {
+      contactIds[i++] = contactId;
+    }
+    return contactIds;
+  }
+
+  /**
+   * @return Imported phone numbers that do not belong to any Telegram user.
+   */
+  synchronized List<Entry> getUnregisteredEntries () {
+    load();
+    List<Entry> result = new ArrayList<>();
+    for (Contact contact : contacts.values()) {
+      for (Entry entry : contact.entries) {
+        if (entry.userId == 0) {
+          result.add(entry);
+        }
+      }
+    }
+    return result;
+  }
+
+  // Modification
+
+  /**
+   * Applies results of synchronization and saves snapshot.
+   *
+   * @param updated Added, changed and touched contacts.
+   * @param removedContactIds Identifiers of contacts that are no longer present in the address book.
+   * @return Users that were imported from removed or changed contacts and are no longer referenced by any contact.
+   */
+  synchronized long[] apply (Collection<Contact> updated, long[] removedContactIds) {
+    load();
+    LongSet droppedUserIds = new LongSet();
+    for (long contactId : removedContactIds) {
+      Contact contact = contacts.remove(contactId);
+      if (contact != null) {
+        addUserIds(droppedUserIds, contact);
+      }
+    }
+    for (Contact contact : updated) {
+      Contact prevContact = contacts.put(contact.contactId, contact);
+      if (prevContact != null && prevContact.contentHash != contact.contentHash) {
+        addUserIds(droppedUserIds, prevContact);
+      }
+    }
+    if (!droppedUserIds.isEmpty()) {
+      // The same phone number may be saved in multiple contacts
+      for (Contact contact : contacts.values()) {
+        for (Entry entry : contact.entries) {
+          if (entry.userId != 0) {
+            droppedUserIds.remove(entry.userId);
+          }
+        }
+      }
+    }
+    save();
+    return droppedUserIds.toArray();
+  }
+
+  synchronized void clear () {
+    contacts.clear();
+    isLoaded = true;
+    Settings.instance().remove(storageKey);
+  }
+
+  private static void addUserIds (LongSet out, Contact contact) {
+    for (Entry entry : contact.entries) {
+      if (entry.userId != 0) {
+        out.add(entry.userId);
+      }
+    }
+  }
+
+  // Storage
+
+  private static String nonNull (@Nullable String value) {
+    return value != null ? value : "";
+  }
+
+  private void load () {
+    if (isLoaded)
+      return;
+    isLoaded = true;
+    byte[] data = Settings.instance().pmc().getByteArray(storageKey);
+    if (data == null || data.length == 0)
+      return;
+    try {
+      Blob blob = new Blob(data);
+      int version = blob.readByte();
+      if (version != VERSION)
+        throw new IllegalStateException("Unsupported version: " + version);
+      int contactCount = blob.readVarint();
+      for (int i = 0; i < contactCount; i++) {
+        long contactId = blob.readLong();
+        long lastUpdated = blob.readLong();
+        long contentHash = blob.readLong();
+        Entry[] entries = new Entry[blob.readVarint()];
+        for (int j = 0; j < entries.length; j++) {
+          String phoneNumber = blob.readString();
+          String firstName = blob.readString();
+          String lastName = blob.readString();
+          Entry entry = new Entry(phoneNumber, StringUtils.isEmpty(firstName) ? null : firstName, StringUtils.isEmpty(lastName) ? null : lastName);
+          entry.userId = blob.readLong();
+          entry.importerCount = blob.readVarint();
+          entries[j] = entry;
+        }
+        contacts.put(contactId, new Contact(contactId, lastUpdated, contentHash, entries));
+      }
+    } catch (Throwable t) {
+      // Next synchronization will import everything again
+      Log.e(Log.TAG_CONTACT, "Unable to restore contacts snapshot", t);
+      contacts.clear();
+    }
+  }
+
+  private void save () {
+    int size = 1 /*version*/ + Blob.sizeOf(contacts.size());
+    for (Contact contact : contacts.values()) {
+      size += 8 /*contactId*/ + 8 /*lastUpdated*/ + 8 /*contentHash*/ + Blob.sizeOf(contact.entries.length);
+      for (Entry entry : contact.entries) {
+        size +=
+          Blob.sizeOf(entry.phoneNumber, true) +
+          Blob.sizeOf(nonNull(entry.firstName), true) +
+          Blob.sizeOf(nonNull(entry.lastName), true) +
+          8 /*userId*/ +
+          Blob.sizeOf(entry.importerCount);
+      }
+    }
+    Blob blob = new Blob(size);
+    blob.writeByte((byte) VERSION);
+    blob.writeVarint(contacts.size());
+    for (Contact contact : contacts.values()) {
+      blob.writeLong(contact.contactId);
+      blob.writeLong(contact.lastUpdated);
+      blob.writeLong(contact.contentHash);
+      blob.writeVarint(contact.entries.length);
+      for (Entry entry : contact.entries) {
+        blob.writeString(entry.phoneNumber);
+        blob.writeString(nonNull(entry.firstName));
+        blob.writeString(nonNull(entry.lastName));
+        blob.writeLong(entry.userId);
+        blob.writeVarint(entry.importerCount);
+      }
+    }
+    Settings.instance().pmc().putByteArray(storageKey, blob.toByteArray());
+  }
+}
@@ -34,6 +34,7 @@ import org.thunderdog.challegram.config.Config;
 import org.thunderdog.challegram.core.Lang;
 import org.thunderdog.challegram.core.WatchDog;
 import org.thunderdog.challegram.data.TD;
+import org.thunderdog.challegram.tool.Screen;
 import org.thunderdog.challegram.tool.Strings;
 import org.thunderdog.challegram.unsorted.Settings;
 import org.thunderdog.challegram.util.StringList;
@@ -58,7 +59,7 @@ import me.vkryl.core.reference.ReferenceList;
 import me.vkryl.core.unit.ByteUnit;
 import tgx.td.Td;
 
-public class TdlibFilesManager implements GlobalConnectionListener {
+public class TdlibFilesManager implements GlobalConnectionListener, CleanupStartupDelegate {
   public static final int STATE_PAUSED = 0;
   public static final int STATE_IN_PROGRESS = 1;
   public static final int STATE_DOWNLOADED_OR_UPLOADED = 2;
@@ -97,6 +98,12 @@ public class TdlibFilesManager implements GlobalConnectionListener {
 
   private final HashSet<Integer> manuallyCancelledFiles;
 
+  private final TdlibAutoDownloadScheduler autoDownloads;
+
+  // Latest progress of each file not yet delivered to listeners
+  private final SparseArrayCompat<TdApi.File> pendingProgress = new SparseArrayCompat<>();
+  private boolean progressFlushScheduled;
+
   TdlibFilesManager (Tdlib tdlib) {
     this.tdlib = tdlib;
 
@@ -112,9 +119,21 @@ public class TdlibFilesManager implements GlobalConnectionListener {
 
     this.manuallyCancelledFiles = new HashSet<>();
 
+    this.autoDownloads = new TdlibAutoDownloadScheduler(tdlib, this);
+
     loadSettings();
 
     tdlib.context().global().addConnectionListener(this);
+    tdlib.listeners().addCleanupListener(this);
+  }
+
+  @Override
+  public void onPerformRestart () {
+    // Alarm scheduled on the previous client is never going to fire
+    synchronized (pendingProgress) {
+      pendingProgress.clear();
+      progressFlushScheduled = false;
+    }
   }
 
   public void syncFile (@NonNull final TdApi.File file, @Nullable TdApi.FileType remoteFileType, final long timeoutMs) {
@@ -372,14 +391,61 @@ public class TdlibFilesManager implements GlobalConnectionListener {
 
   // Automatic media download
 
+  public TdlibAutoDownloadScheduler autoDownloads () {
+    return autoDownloads;
+  }
+
   public boolean downloadAutomatically (@NonNull TdApi.File file, @Nullable TdApi.ChatType chat, @MediaDownloadType int mediaType, boolean force) {
+    return downloadAutomatically(file, chat, mediaType, force, 0, 0);
+  }
+
+  /**
+   * @param chatId Chat, in which media is displayed, or 0, if it doesn't come from a chat.
+   * @param messageId Message the media belongs to, used to schedule the download based on its position in the opened chat.
+   */
+  public boolean downloadAutomatically (@NonNull TdApi.File file, @Nullable TdApi.ChatType chat, @MediaDownloadType int mediaType, boolean force, long chatId, long messageId) {
     synchronized (this) {
-      if (canAutomaticallyDownload(file, mediaType, chat) && (!TD.isFileLoaded(file) || force)) {
-        downloadFile(file);
-        return true;
+      if (!canAutomaticallyDownload(file, mediaType, chat) || (TD.isFileLoaded(file) && !force)) {
+        return false;
+      }
+    }
+    if (!autoDownloads.requestDownload(file, chat, mediaType, chatId, messageId)) {
+      downloadFile(file);
+    }
+    return true;
+  }
+
+  // Called by TdlibAutoDownloadScheduler
+
+  /**
+   * @return false, if download is no longer allowed by the current settings.
+   */
+  boolean startAutomaticDownload (@NonNull TdApi.File file, @Nullable TdApi.ChatType chat, @MediaDownloadType int mediaType, int priority) {
+    synchronized (this) {
+      if (manuallyCancelledFiles.contains(file.id) || !canAutomaticallyDownload(file, mediaType, chat)) {
+        return false;
+      }
+      downloadFileInternal(file.id, priority, 0, 0, null);
+      return true;
+    }
+  }
+
+  void setAutomaticDownloadPriority (int fileId, int priority) {
+    synchronized (this) {
+      if (pendingOperations.get(fileId) == OPERATION_DOWNLOAD && !Config.DEBUG_DISABLE_DOWNLOAD) {
+        // Repeated DownloadFile only changes priority of the download in progress
+        tdlib.client().send(new TdApi.DownloadFile(fileId, priority, 0, 0, false), filesHandler);
+      }
+    }
+  }
+
+  void pauseAutomaticDownload (int fileId) {
+    synchronized (this) {
+      int pendingOperation = pendingOperations.get(fileId);
+      if (pendingOperation != OPERATION_NONE) {
+        cancelDownloadOrUploadFileInternal(fileId, pendingOperation, false);
       }
     }
-    return false;
   }
 
   // Internal logic (synchronized in public)
@@ -518,6 +584,7 @@ public class TdlibFilesManager implements GlobalConnectionListener {
   // Download for whatever reason
 
   public void downloadFile (@NonNull TdApi.File file, @IntRange(from = 1, to = 32) int priority, long offset, long limit, @Nullable Client.ResultHandler handler) {
+    autoDownloads.forget(file.id);
     synchronized (this) {
       manuallyCancelledFiles.remove(file.id);
       if (!TD.isFileLoaded(file)) {
@@ -565,6 +632,7 @@ public class TdlibFilesManager implements GlobalConnectionListener {
   }
 
   public void cancelAllPendingDownloads () { // When Data Saver becomes active due to network type change
+    autoDownloads.onAllDownloadsCancelled();
     synchronized (this) {
       final int size = pendingOperations.size();
       for (int i = size - 1; i >= 0; i--) {
@@ -610,27 +678,33 @@ public class TdlibFilesManager implements GlobalConnectionListener {
   // Update handlers
 
   public void onFileUpdate (TdApi.UpdateFile update) {
-    // pendingOperations.get()
+    final int fileId = update.file.id;
+    int newState = -1;
     synchronized (this) {
-      int pendingOperation = pendingOperations.get(update.file.id);
+      int pendingOperation = pendingOperations.get(fileId);
 
       if (pendingOperation != OPERATION_NONE) {
         if (!update.file.remote.isUploadingActive && !update.file.local.isDownloadingActive && !update.file.remote.isUploadingCompleted && !update.file.local.isDownloadingCompleted) {
-          removePendingOperation(update.file.id);
-          notifyFileState(update.file.id, STATE_PAUSED, null);
+          removePendingOperation(fileId);
+          newState = STATE_PAUSED;
         }
       } else if (update.file.local.isDownloadingActive) {
-        pendingOperations.put(update.file.id, OPERATION_DOWNLOAD);
-        notifyFileState(update.file.id, STATE_IN_PROGRESS, null);
+        pendingOperations.put(fileId, OPERATION_DOWNLOAD);
+        newState = STATE_IN_PROGRESS;
       }
-
-      final Iterator<SimpleListener> list = simpleListeners.iterator(update.file.id);
-      if (list != null) {
-        while (list.hasNext()) {
-          list.next().onUpdateFile(update.file);
-        }
+    }
+    if (newState != -1) {
+      flushFileProgress(fileId);
+      notifyFileState(fileId, newState, null);
+      if (newState == STATE_PAUSED) {
+        autoDownloads.onDownloadStopped(fileId, false);
       }
     }
+    if (!isProgressUpdate(update.file)) {
+      // Progress updates reach simple listeners through onFileProgress
+      flushFileProgress(fileId);
+      notifySimpleListeners(update.file);
+    }
   }
 
   /*public void onFileUpdate (TdApi.UpdateFileGenerationFinish update) {
@@ -675,36 +749,101 @@ public class TdlibFilesManager implements GlobalConnectionListener {
       if (progress > 0f) {
         pendingFiles.put(update.file.id, update.file);
       }
-      notifyFileProgress(update.file);
+    }
+    boolean needSchedule;
+    synchronized (pendingProgress) {
+      pendingProgress.put(update.file.id, update.file);
+      needSchedule = !progressFlushScheduled;
+      progressFlushScheduled = true;
+    }
+    if (needSchedule) {
+      // Listeners usually redraw something, so there's no need to deliver progress more often than once per frame
+      tdlib.runOnTdlibThread(this::flushFileProgress, 1.0 / Math.max(Screen.refreshRate(), 60f), true);
     }
   }
 
   public void onFileLoaded (TdApi.UpdateFile update) {
+    final int fileId = update.file.id;
+    @FileDownloadState int newState;
     synchronized (this) {
-      final int fileId = update.file.id;
       int pendingOperation = pendingOperations.get(fileId);
       this.manuallyCancelledFiles.remove(fileId);
       if (pendingOperation != OPERATION_NONE) {
         if (TD.isFileLoadedAndExists(update.file)) {
           removePendingOperation(fileId);
-          notifyFileState(fileId, STATE_DOWNLOADED_OR_UPLOADED, update.file);
+          newState = STATE_DOWNLOADED_OR_UPLOADED;
         } else {
-          notifyFileState(fileId, STATE_IN_PROGRESS, update.file);
+          newState = STATE_IN_PROGRESS;
         }
       } else {
-        notifyFileState(fileId, STATE_DOWNLOADED_OR_UPLOADED, update.file);
+        newState = STATE_DOWNLOADED_OR_UPLOADED;
       }
     }
+    flushFileProgress(fileId);
+    notifyFileState(fileId, newState, update.file);
+    if (newState == STATE_DOWNLOADED_OR_UPLOADED) {
+      autoDownloads.onDownloadStopped(fileId, true);
+    }
   }
 
   public void onFileUpdated (TdApi.UpdateFile update) {
+    final int fileId = update.file.id;
     synchronized (this) {
-      final int fileId = update.file.id;
       int pendingOperation = pendingOperations.get(fileId);
       if (pendingOperation != OPERATION_NONE) {
         removePendingOperation(fileId);
       }
-      notifyFileState(fileId, STATE_PAUSED, update.file);
+    }
+    flushFileProgress(fileId);
+    notifyFileState(fileId, STATE_PAUSED, update.file);
+    autoDownloads.onDownloadStopped(fileId, false);
+  }
+
+  private static boolean isProgressUpdate (TdApi.File file) {
+    return file.local.isDownloadingActive || file.remote.isUploadingActive;
+  }
+
+  private void notifySimpleListeners (TdApi.File file) {
+    final Iterator<SimpleListener> list = simpleListeners.iterator(file.id);
+    if (list != null) {
+      while (list.hasNext()) {
+        list.next().onUpdateFile(file);
+      }
+    }
+  }
+
+  /**
+   * Delivers the latest progress of the file right away, so it doesn't arrive after a state change.
+   */
+  private void flushFileProgress (int fileId) {
+    TdApi.File file;
+    synchronized (pendingProgress) {
+      file = pendingProgress.get(fileId);
+      if (file != null) {
+        pendingProgress.remove(fileId);
+      }
+    }
+    if (file != null) {
+      notifySimpleListeners(file);
+      notifyFileProgress(file);
+    }
+  }
+
+  private void flushFileProgress () {
+    SparseArrayCompat<TdApi.File> files;
+    synchronized (pendingProgress) {
+      progressFlushScheduled = false;
+      if (pendingProgress.isEmpty()) {
+        return;
+      }
+      files = pendingProgress.clone();
+      pendingProgress.clear();
+    }
+    final int size = files.size();
+    for (int i = 0; i < size; i++) {
+      TdApi.File file = files.valueAt(i);
+      notifySimpleListeners(file);
+      notifyFileProgress(file);
     }
   }
 
@@ -1245,6 +1384,7 @@ public class TdlibFilesManager implements GlobalConnectionListener {
     if (!isDataSaverEventuallyEnabled(oldConnectionType) && isDataSaverEventuallyEnabled(connectionType)) {
       cancelAllPendingDownloads();
     }
+    autoDownloads.onDownloadPolicyChanged();
   }
 
   @Override
@@ -1252,5 +1392,6 @@ public class TdlibFilesManager implements GlobalConnectionListener {
     if (isEnabled) {
       cancelAllPendingDownloads();
     }
+    autoDownloads.onDownloadPolicyChanged();
   }
 }
@@ -23,6 +23,7 @@ import androidx.collection.LongSparseArray;
 
 import org.drinkless.tdlib.TdApi;
 import org.thunderdog.challegram.BaseActivity;
+import org.thunderdog.challegram.Log;
 import org.thunderdog.challegram.TDLib;
 import org.thunderdog.challegram.config.Config;
 import org.thunderdog.challegram.data.TD;
@@ -32,8 +33,12 @@ import org.thunderdog.challegram.tool.UI;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
@@ -48,6 +53,7 @@ import tgx.td.Td;
 
 public class TdlibMessageViewer {
   private static final long TRACK_MESSAGE_TIMEOUT_MS = 1000;
+  private static final long VIEW_BATCH_WINDOW_MS = 250;
 
   @Retention(RetentionPolicy.SOURCE)
   @IntDef(value = {
@@ -479,6 +485,31 @@ public class TdlibMessageViewer {
     LongSet visibleProtectedChatIds = new LongSet();
     boolean needRestrictScreenshots;
     boolean isDestroyed;
+    boolean isFlushScheduled;
+  }
+
+  private static class PendingViews {
+    final LongSet messageIds = new LongSet();
+    final boolean forceRead;
+    @Nullable List<RunnableBool> callbacks;
+    int mergedRequestCount;
+
+    PendingViews (boolean forceRead) {
+      this.forceRead = forceRead;
+    }
+
+    void add (long[] messageIds, @Nullable RunnableBool after) {
+      for (long messageId : messageIds) {
+        this.messageIds.add(messageId);
+      }
+      if (after != null) {
+        if (callbacks == null) {
+          callbacks = new ArrayList<>();
+        }
+        callbacks.add(after);
+      }
+      mergedRequestCount++;
+    }
   }
 
   public static class Viewport implements Destroyable {
@@ -490,6 +521,11 @@ public class TdlibMessageViewer {
     private final ViewportState state = new ViewportState();
     private final List<FutureBool> ignoreLocks = new ArrayList<>();
     private final List<Runnable> destroyListeners = new ArrayList<>();
+    private final LongSparseArray<PendingViews> pendingViews = new LongSparseArray<>();
+    private final Runnable flushAct = () -> {
+      state.isFlushScheduled = false;
+      flushPendingViews();
+    };
     private final ChatListener chatListener = new ChatListener() {
       @Override
       public void onChatHasProtectedContentChanged (long chatId, boolean hasProtectedContent) {
@@ -636,6 +672,7 @@ public class TdlibMessageViewer {
 
     @Override
     public void performDestroy () {
+      flushPendingViews();
       clear();
       if (!state.isDestroyed) {
         state.isDestroyed = true;
@@ -755,6 +792,7 @@ public class TdlibMessageViewer {
 
     private void viewMessagesImpl (long chatId, long[] messageIds, TdApi.MessageSource messageSource, boolean forceRead, @Nullable RunnableBool after) {
       if (messageIds.length > 0) {
+        context.viewRequestSentCount++;
         context.tdlib.send(new TdApi.ViewMessages(chatId, messageIds, messageSource, forceRead), (ok, error) -> {
           if (after != null) {
             after.runWithBool(error == null);
@@ -783,6 +821,10 @@ public class TdlibMessageViewer {
           messageSource = new TdApi.MessageSourceHistoryPreview();
           break;
       }
+      if (messageIds.length > 0) {
+        // Never merged, so counted as requested and sent at the same time
+        context.viewRequestCount++;
+      }
       viewMessagesImpl(chatId, messageIds, messageSource, false, after);
     }
 
@@ -812,8 +854,64 @@ public class TdlibMessageViewer {
         }
         final long chatId = visibleChat.chatId;
         final long[] messageIds = visibleChat.getMessageIds(true, true);
-        viewMessagesImpl(chatId, messageIds, messageSource, forceRead, after);
+        if (messageIds.length > 0) {
+          enqueueViewMessages(chatId, messageIds, forceRead, after);
+        }
+      }
+    }
+
+    /**
+     * Merges {@code messageIds} into the pending {@link TdApi.ViewMessages} request of the given chat.
+     *
+     * Fast scrolling produces a call per frame, so instead of sending each of them,
+     * identifiers are accumulated and sent once per {@link TdlibMessageViewer#VIEW_BATCH_WINDOW_MS},
+     * or earlier, when {@link #flushPendingViews()} is called (e.g. once scroll becomes idle).
+     */
+    private void enqueueViewMessages (long chatId, long[] messageIds, boolean forceRead, @Nullable RunnableBool after) {
+      context.viewRequestCount++;
+      PendingViews pending = pendingViews.get(chatId);
+      if (pending != null && pending.forceRead != forceRead) {
+        // Do not mix messages viewed with different forceRead value
+        pendingViews.remove(chatId);
+        sendPendingViews(chatId, pending);
+        pending = null;
+      }
+      if (pending == null) {
+        pending = new PendingViews(forceRead);
+        pendingViews.put(chatId, pending);
+      }
+      pending.add(messageIds, after);
+      if (!state.isFlushScheduled) {
+        state.isFlushScheduled = true;
+        context.tdlib.ui().postDelayed(flushAct, VIEW_BATCH_WINDOW_MS);
+      }
+    }
+
+    public void flushPendingViews () {
+      if (state.isFlushScheduled) {
+        state.isFlushScheduled = false;
+        context.tdlib.ui().removeCallbacks(flushAct);
+      }
+      if (pendingViews.isEmpty()) {
+        return;
       }
+      for (int index = 0; index < pendingViews.size(); index++) {
+        sendPendingViews(pendingViews.keyAt(index), pendingViews.valueAt(index));
+      }
+      pendingViews.clear();
+    }
+
+    private void sendPendingViews (long chatId, PendingViews pending) {
+      final List<RunnableBool> callbacks = pending.callbacks;
+      final long[] messageIds = pending.messageIds.toArray();
+      if (Config.DEBUG_VIEW_MESSAGES) {
+        Log.v("Viewing %d message(s) in chat %d, merged requests: %d", messageIds.length, chatId, pending.mergedRequestCount);
+      }
+      viewMessagesImpl(chatId, messageIds, messageSource, pending.forceRead, callbacks == null ? null : success -> {
+        for (RunnableBool callback : callbacks) {
+          callback.runWithBool(success);
+        }
+      });
     }
   }
 
@@ -884,7 +982,34 @@ public class TdlibMessageViewer {
     checkNeedRestrictScreenshots();
   }
 
-  private final Set<VisibleMessage> recentlyViewedMessages = new HashSet<>();
+  // ViewMessages stats
+
+  private long viewRequestCount, viewRequestSentCount;
+
+  /**
+   * @return Number of {@link TdApi.ViewMessages} requests that were merged into other ones
+   * instead of being sent separately.
+   */
+  public long getSavedViewRequestCount () {
+    return viewRequestCount - viewRequestSentCount;
+  }
+
+  public long getSentViewRequestCount () {
+    return viewRequestSentCount;
+  }
+
+  public String getViewRequestStats () {
+    return String.format(Locale.US, "requested:%d sent:%d saved:%d", viewRequestCount, viewRequestSentCount, getSavedViewRequestCount());
+  }
+
+  // Recently viewed messages
+
+  private final Map<VisibleMessage, Long> recentlyViewedMessages = new HashMap<>();
+  private long recentlyViewedExpiresAtMs;
+  private final Runnable expireRecentlyViewedMessagesAct = () -> {
+    recentlyViewedExpiresAtMs = 0;
+    expireRecentlyViewedMessages();
+  };
 
   private void trackRecentlyViewedMessage (Viewport viewport, VisibleChat recentlyViewedChat, VisibleMessage recentlyViewedMessage) {
     if (viewport.state.needRestrictScreenshots || !recentlyViewedMessage.needScreenshotNotification()) {
@@ -895,8 +1020,37 @@ public class TdlibMessageViewer {
     if (timeoutMs <= 0) {
       return;
     }
-    recentlyViewedMessages.add(recentlyViewedMessage);
-    tdlib.ui().postDelayed(() -> recentlyViewedMessages.remove(recentlyViewedMessage), timeoutMs);
+    recentlyViewedMessages.put(recentlyViewedMessage, expiresAtMs);
+    scheduleRecentlyViewedExpiry(expiresAtMs);
+  }
+
+  private void scheduleRecentlyViewedExpiry (long expiresAtMs) {
+    // Single timer shared by all recently viewed messages, always pointing to the nearest expiry
+    if (recentlyViewedExpiresAtMs != 0) {
+      if (recentlyViewedExpiresAtMs <= expiresAtMs) {
+        return;
+      }
+      tdlib.ui().removeCallbacks(expireRecentlyViewedMessagesAct);
+    }
+    recentlyViewedExpiresAtMs = expiresAtMs;
+    tdlib.ui().postDelayed(expireRecentlyViewedMessagesAct, Math.max(0, expiresAtMs - System.currentTimeMillis()));
+  }
+
+  private void expireRecentlyViewedMessages () {
+    final long nowMs = System.currentTimeMillis();
+    long nextExpiresAtMs = 0;
+    Iterator<Map.Entry<VisibleMessage, Long>> itr = recentlyViewedMessages.entrySet().iterator();
+    while (itr.hasNext()) {
+      long expiresAtMs = itr.next().getValue();
+      if (expiresAtMs <= nowMs) {
+        itr.remove();
+      } else if (nextExpiresAtMs == 0 || expiresAtMs < nextExpiresAtMs) {
+        nextExpiresAtMs = expiresAtMs;
+      }
+    }
+    if (nextExpiresAtMs != 0) {
+      scheduleRecentlyViewedExpiry(nextExpiresAtMs);
+    }
   }
 
   public boolean hasPotentiallyVisibleMessages () {
@@ -933,7 +1087,7 @@ public class TdlibMessageViewer {
       screenshotMessages.clear();
     }
     long timeMs = TimeUnit.SECONDS.toMillis(timeSeconds);
-    for (VisibleMessage recentlyViewedMessage : recentlyViewedMessages) {
+    for (VisibleMessage recentlyViewedMessage : recentlyViewedMessages.keySet()) {
       if (recentlyViewedMessage.visibility.openTimeMs <= timeMs) {
         addScreenshotMessage(recentlyViewedMessage.getChatId(), recentlyViewedMessage.getMessageId());
       }
@@ -30,6 +30,7 @@ import org.thunderdog.challegram.config.Config;
 import org.thunderdog.challegram.tool.UI;
 import org.thunderdog.challegram.unsorted.Passcode;
 import org.thunderdog.challegram.unsorted.Settings;
+import org.thunderdog.challegram.util.PerfTrace;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -554,7 +555,9 @@ public class TdlibNotificationHelper implements Iterable<TdlibNotificationGroup>
     int badgeCount = tdlib.getUnreadBadgeCount();
     boolean allowPreview = allowNotificationPreview();
     TdlibNotificationSettings settings = needNotification && !group.isHidden() ? new TdlibNotificationSettings(tdlib, notificationSettingsChatId, group) : null;
+    PerfTrace.begin("notification.display");
     style.displayNotificationGroup(context, this, badgeCount, allowPreview, group, settings);
+    PerfTrace.end();
     tdlib.context().setHavePendingNotifications(tdlib.id(), true);
   }
 
@@ -572,7 +575,10 @@ public class TdlibNotificationHelper implements Iterable<TdlibNotificationGroup>
       Context context = UI.getAppContext();
       int badgeCount = tdlib.getUnreadBadgeCount();
       boolean allowPreview = allowNotificationPreview();
+      PerfTrace.begin("notification.rebuild");
+      PerfTrace.counter("notification.groups", groups.size());
       style.rebuildNotificationsSilently(context, this, badgeCount, allowPreview, scope, specificChatId, specificGroupId);
+      PerfTrace.end();
     }
     tdlib.context().setHavePendingNotifications(tdlib.id(), haveNotifications);
   }
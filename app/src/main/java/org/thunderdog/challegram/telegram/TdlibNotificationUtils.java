@@ -254,7 +254,7 @@ public class TdlibNotificationUtils {
     return tokenRetriever.initialize(UI.getAppContext());
   }
 
-  public static @NonNull TokenRetriever getTokenRetriever () {
+  public static synchronized @NonNull TokenRetriever getTokenRetriever () {
     if (tokenRetriever == null) {
       initialize();
     }
@@ -14,6 +14,8 @@
  */
 package org.thunderdog.challegram.telegram;
 
+import android.view.Choreographer;
+
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.UiThread;
@@ -34,6 +36,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 
 import me.vkryl.android.AnimatorUtils;
@@ -69,15 +72,16 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
     private final Tdlib tdlib;
 
     private final long chatId, messageThreadId;
-    private final String key;
+    private final ChatKey key;
     private final boolean isUser;
+    private int pendingChangeFlags;
 
     public ChatState (TdlibStatusManager context, Tdlib tdlib, long chatId, long messageThreadId) {
       this.context = context;
       this.tdlib = tdlib;
       this.chatId = chatId;
       this.messageThreadId = messageThreadId;
-      this.key = makeKey(chatId, messageThreadId);
+      this.key = new ChatKey(chatId, messageThreadId);
       this.isUser = ChatId.isUserChat(chatId);
     }
 
@@ -93,7 +97,8 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
     private void setVisibilityFactor (float factor) {
       if (this.visibilityFactor != factor) {
         this.visibilityFactor = factor;
-        notifyChatActionsChanged(chatId, messageThreadId, this, CHANGE_FLAG_POSITION, context.listeners.iterator(key));
+        // Already called once per frame by the animator
+        context.notifyChatActionsChanged(this, CHANGE_FLAG_POSITION);
       }
     }
 
@@ -336,7 +341,7 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
       if (this.isVisible != isVisible) {
         setIsVisible(isVisible, context.canAnimate(chatId, messageThreadId, key, this));
       }
-      notifyChatActionsChanged(chatId, messageThreadId, this, changeFlags, context.listeners.iterator(key));
+      context.scheduleNotification(this, changeFlags);
     }
   }
 
@@ -472,9 +477,31 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
     }
   }
 
+  private static final class ChatKey {
+    private final long chatId, messageThreadId;
+
+    ChatKey (long chatId, long messageThreadId) {
+      this.chatId = chatId;
+      this.messageThreadId = messageThreadId;
+    }
+
+    @Override
+    public boolean equals (Object obj) {
+      if (!(obj instanceof ChatKey))
+        return false;
+      ChatKey other = (ChatKey) obj;
+      return other.chatId == chatId && other.messageThreadId == messageThreadId;
+    }
+
+    @Override
+    public int hashCode () {
+      return 31 * (int) (chatId ^ (chatId >>> 32)) + (int) (messageThreadId ^ (messageThreadId >>> 32));
+    }
+  }
+
   private final Tdlib tdlib;
-  private final HashMap<String, ChatState> chatStates = new HashMap<>();
-  private final ReferenceMap<String, ChatStateListener> listeners = new ReferenceMap<>();
+  private final HashMap<ChatKey, ChatState> chatStates = new HashMap<>();
+  private final ReferenceMap<ChatKey, ChatStateListener> listeners = new ReferenceMap<>();
 
   TdlibStatusManager (Tdlib tdlib) {
     this.tdlib = tdlib;
@@ -490,6 +517,7 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
   public void onPerformUserCleanup () {
     chatStates.clear();
     listeners.clear();
+    pendingStates.clear();
   }
 
   @Override
@@ -497,7 +525,7 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
     tdlib.ui().post(() -> {
       if (!chatStates.isEmpty()) {
         TdApi.ChatAction action = new TdApi.ChatActionCancel();
-        for (Map.Entry<String, ChatState> entry : chatStates.entrySet()) {
+        for (Map.Entry<ChatKey, ChatState> entry : chatStates.entrySet()) {
           entry.getValue().setAll(action);
         }
       }
@@ -507,23 +535,23 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
   // Status
 
   private void addListener (long chatId, long messageThreadId, ChatStateListener listener) {
-    listeners.add(makeKey(chatId, messageThreadId), listener);
+    listeners.add(new ChatKey(chatId, messageThreadId), listener);
   }
 
   private void removeListener (long chatId, long messageThreadId, ChatStateListener listener) {
-    listeners.remove(makeKey(chatId, messageThreadId), listener);
+    listeners.remove(new ChatKey(chatId, messageThreadId), listener);
   }
 
   public @Nullable ChatState state (long chatId, long messageThreadId) {
-    return chatStates.get(makeKey(chatId, messageThreadId));
+    return chatStates.get(new ChatKey(chatId, messageThreadId));
   }
 
   public boolean hasStatus (long chatId, long messageThreadId) {
-    ChatState state = chatStates.get(makeKey(chatId, messageThreadId));
+    ChatState state = chatStates.get(new ChatKey(chatId, messageThreadId));
     return state != null && !state.actions.isEmpty();
   }
 
-  private boolean canAnimate (long chatId, long messageThreadId, String key, ChatState state) {
+  private boolean canAnimate (long chatId, long messageThreadId, ChatKey key, ChatState state) {
     boolean animated = false;
     Iterator<ChatStateListener> itr = listeners.iterator(key);
     if (itr != null) {
@@ -536,17 +564,14 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
     return animated;
   }
 
-  private static String makeKey (long chatId, long messageThreadId) {
-    return messageThreadId != 0 ? chatId + "_" + messageThreadId : Long.toString(chatId);
-  }
-
   @UiThread
   void onUpdateChatUserAction (TdApi.UpdateChatAction update) {
     if (update.action.getConstructor() == TdApi.ChatActionWatchingAnimations.CONSTRUCTOR) {
       // TODO?
       return;
     }
-    String key = makeKey(update.chatId, update.messageThreadId);
+    updateCount++;
+    ChatKey key = new ChatKey(update.chatId, update.messageThreadId);
     ChatState state = chatStates.get(key);
     if (state == null) {
       if (update.action.getConstructor() == TdApi.ChatActionCancel.CONSTRUCTOR) {
@@ -558,14 +583,62 @@ public class TdlibStatusManager implements CleanupStartupDelegate {
     state.setAction(update.senderId, update.action);
   }
 
-  private static void notifyChatActionsChanged (long chatId, long messageThreadId, ChatState chatState, int changeFlags, @Nullable Iterator<ChatStateListener> list) {
+  private void notifyChatActionsChanged (ChatState chatState, int changeFlags) {
+    Iterator<ChatStateListener> list = listeners.iterator(chatState.key);
     if (list != null) {
       while (list.hasNext()) {
-        list.next().onChatActionsChanged(chatId, messageThreadId, chatState, changeFlags);
+        list.next().onChatActionsChanged(chatState.chatId, chatState.messageThreadId, chatState, changeFlags);
+        notificationCount++;
+      }
+    }
+  }
+
+  // Notifications
+
+  private final ArrayList<ChatState> pendingStates = new ArrayList<>();
+  private boolean notificationScheduled;
+  private final Choreographer.FrameCallback notificationCallback = frameTimeNanos -> dispatchPendingNotifications();
+
+  private long updateCount, notificationFrameCount, notificationCount;
+
+  /**
+   * Delivers changes on the next frame, so bursts of updates in the same chat result in a single notification.
+   */
+  @UiThread
+  private void scheduleNotification (ChatState chatState, int changeFlags) {
+    if (chatState.pendingChangeFlags == 0) {
+      pendingStates.add(chatState);
+    }
+    chatState.pendingChangeFlags |= changeFlags;
+    if (!notificationScheduled) {
+      notificationScheduled = true;
+      Choreographer.getInstance().postFrameCallback(notificationCallback);
+    }
+  }
+
+  @UiThread
+  private void dispatchPendingNotifications () {
+    notificationScheduled = false;
+    if (pendingStates.isEmpty()) {
+      return;
+    }
+    ChatState[] states = pendingStates.toArray(new ChatState[0]);
+    pendingStates.clear();
+    notificationFrameCount++;
+    for (ChatState chatState : states) {
+      int changeFlags = chatState.pendingChangeFlags;
+      chatState.pendingChangeFlags = 0;
+      if (changeFlags != 0) {
+        notifyChatActionsChanged(chatState, changeFlags);
       }
     }
   }
 
+  @UiThread
+  public String getStats () {
+    return String.format(Locale.US, "updates:%d frames:%d notifications:%d", updateCount, notificationFrameCount, notificationCount);
+  }
+
   // Utils
 
   public CharSequence chatStatus (long chatId) {
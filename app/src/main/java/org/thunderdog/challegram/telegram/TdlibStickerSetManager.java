@@ -0,0 +1,298 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026
+ */
+package org.thunderdog.challegram.telegram;
+
+import android.util.LruCache;
+
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.collection.LongSparseArray;
+
+import org.drinkless.tdlib.TdApi;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import me.vkryl.core.collection.LongSet;
+
+/**
+ * Per-account storage of {@link TdApi.StickerSet} objects.
+ *
+ * Requests are pipelined with at most {@link #MAX_CONCURRENT_REQUESTS} in flight,
+ * concurrent requests for the same set share one {@link TdApi.GetStickerSet} call,
+ * and up to {@link #MAX_CACHED_COUNT} recently used results stay cached until {@link StickersListener} reports a change.
+ *
+ * Cached objects are shared between all callers and must not be modified.
+ */
+public final class TdlibStickerSetManager implements StickersListener, CleanupStartupDelegate {
+  private static final int MAX_CONCURRENT_REQUESTS = 8;
+  private static final int MAX_CACHED_COUNT = 100;
+
+  private final Tdlib tdlib;
+
+  private final Object dataLock = new Object();
+  private final LruCache<Long, TdApi.StickerSet> stickerSets = new LruCache<>(MAX_CACHED_COUNT);
+  private final LongSparseArray<List<Tdlib.ResultHandler<TdApi.StickerSet>>> pendingHandlers = new LongSparseArray<>();
+  private final ArrayDeque<Long> pendingRequests = new ArrayDeque<>();
+  private final LongSet invalidatedStickerSetIds = new LongSet();
+  private int activeRequestCount;
+  private int contextId;
+
+  TdlibStickerSetManager (Tdlib tdlib) {
+    this.tdlib = tdlib;
+    tdlib.listeners().addCleanupListener(this);
+    tdlib.listeners().subscribeToStickerUpdates(this);
+  }
+
+  // Public API
+
+  @AnyThread
+  @Nullable
+  public TdApi.StickerSet find (long stickerSetId) {
+    synchronized (dataLock) {
+      return stickerSets.get(stickerSetId);
+    }
+  }
+
+  /**
+   * Delivers the sticker set on TDLib thread, either right away, if it is cached, or once it's loaded.
+   */
+  @AnyThread
+  public void getStickerSet (long stickerSetId, @NonNull Tdlib.ResultHandler<TdApi.StickerSet> handler) {
+    TdApi.StickerSet stickerSet;
+    synchronized (dataLock) {
+      stickerSet = stickerSets.get(stickerSetId);
+      if (stickerSet == null) {
+        List<Tdlib.ResultHandler<TdApi.StickerSet>> handlers = pendingHandlers.get(stickerSetId);
+        if (handlers != null) {
+          handlers.add(handler);
+          return;
+        }
+        handlers = new ArrayList<>();
+        handlers.add(handler);
+        pendingHandlers.put(stickerSetId, handlers);
+        pendingRequests.offer(stickerSetId);
+      }
+    }
+    if (stickerSet != null) {
+      final TdApi.StickerSet cachedStickerSet = stickerSet;
+      tdlib.runOnTdlibThread(() -> handler.onResult(cachedStickerSet, null));
+    } else {
+      performPendingRequests();
+    }
+  }
+
+  /**
+   * Loads first {@code count} sticker sets from {@code stickerSetIds}.
+   *
+   * Requests are performed in parallel, however, {@code handler} is invoked
+   * in the same order as ids are listed, so results can be inserted sequentially.
+   * {@code after} is invoked once all results have been delivered.
+   */
+  @AnyThread
+  public void getStickerSets (@NonNull long[] stickerSetIds, int count, @NonNull Tdlib.ResultHandler<TdApi.StickerSet> handler, @Nullable Runnable after) {
+    if (count == 0) {
+      if (after != null) {
+        after.run();
+      }
+      return;
+    }
+    final OrderedResults results = new OrderedResults(count, handler, after);
+    for (int i = 0; i < count; i++) {
+      final int index = i;
+      getStickerSet(stickerSetIds[i], (stickerSet, error) ->
+        results.onResult(index, stickerSet, error)
+      );
+    }
+  }
+
+  private static final class OrderedResults {
+    private final TdApi.StickerSet[] results;
+    private final TdApi.Error[] errors;
+    private final Tdlib.ResultHandler<TdApi.StickerSet> handler;
+    private final @Nullable Runnable after;
+    private int nextIndex;
+    private boolean isDelivering;
+
+    OrderedResults (int count, Tdlib.ResultHandler<TdApi.StickerSet> handler, @Nullable Runnable after) {
+      this.results = new TdApi.StickerSet[count];
+      this.errors = new TdApi.Error[count];
+      this.handler = handler;
+      this.after = after;
+    }
+
+    void onResult (int index, @Nullable TdApi.StickerSet stickerSet, @Nullable TdApi.Error error) {
+      synchronized (this) {
+        results[index] = stickerSet;
+        errors[index] = error;
+        if (isDelivering) {
+          // Result will be delivered by the thread that is already delivering previous ones
+          return;
+        }
+        isDelivering = true;
+      }
+      // Handlers are invoked without holding the lock, one thread at a time
+      while (true) {
+        TdApi.StickerSet deliverStickerSet;
+        TdApi.Error deliverError;
+        synchronized (this) {
+          if (nextIndex == results.length || (results[nextIndex] == null && errors[nextIndex] == null)) {
+            isDelivering = false;
+            break;
+          }
+          deliverStickerSet = results[nextIndex];
+          deliverError = errors[nextIndex];
+          results[nextIndex] = null;
+          errors[nextIndex] = null;
+          nextIndex++;
+        }
+        handler.onResult(deliverStickerSet, deliverError);
+        if (nextIndex == results.length && after != null) {
+          after.run();
+        }
+      }
+    }
+  }
+
+  // Impl
+
+  private void performPendingRequests () {
+    long[] stickerSetIds;
+    int contextId;
+    synchronized (dataLock) {
+      int count = Math.min(MAX_CONCURRENT_REQUESTS - activeRequestCount, pendingRequests.size());
+      if (count <= 0) {
+        return;
+      }
+      stickerSetIds = new long[count];
+      for (int i = 0; i < count; i++) {
+        long stickerSetId = pendingRequests.poll();
+        invalidatedStickerSetIds.remove(stickerSetId);
+        stickerSetIds[i] = stickerSetId;
+      }
+      activeRequestCount += count;
+      contextId = this.contextId;
+    }
+    for (long stickerSetId : stickerSetIds) {
+      tdlib.send(new TdApi.GetStickerSet(stickerSetId), (stickerSet, error) ->
+        processResult(contextId, stickerSetId, stickerSet, error)
+      );
+    }
+  }
+
+  @TdlibThread
+  private void processResult (int contextId, long stickerSetId, @Nullable TdApi.StickerSet stickerSet, @Nullable TdApi.Error error) {
+    List<Tdlib.ResultHandler<TdApi.StickerSet>> handlers;
+    synchronized (dataLock) {
+      if (this.contextId != contextId) {
+        return;
+      }
+      activeRequestCount--;
+      handlers = pendingHandlers.get(stickerSetId);
+      pendingHandlers.remove(stickerSetId);
+      if (stickerSet != null && !invalidatedStickerSetIds.remove(stickerSetId)) {
+        stickerSets.put(stickerSetId, stickerSet);
+      }
+    }
+    if (handlers != null) {
+      for (Tdlib.ResultHandler<TdApi.StickerSet> handler : handlers) {
+        handler.onResult(stickerSet, error);
+      }
+    }
+    performPendingRequests();
+  }
+
+  private void invalidate (long stickerSetId) {
+    synchronized (dataLock) {
+      stickerSets.remove(stickerSetId);
+      if (pendingHandlers.get(stickerSetId) != null) {
+        // Response to the request that is already in flight may be outdated
+        invalidatedStickerSetIds.add(stickerSetId);
+      }
+    }
+  }
+
+  // Listeners
+
+  @Override
+  public void onPerformRestart () {
+    List<Tdlib.ResultHandler<TdApi.StickerSet>> handlers = new ArrayList<>();
+    synchronized (dataLock) {
+      contextId++;
+      stickerSets.evictAll();
+      for (int i = 0; i < pendingHandlers.size(); i++) {
+        handlers.addAll(pendingHandlers.valueAt(i));
+      }
+      pendingHandlers.clear();
+      pendingRequests.clear();
+      invalidatedStickerSetIds.clear();
+      activeRequestCount = 0;
+    }
+    if (!handlers.isEmpty()) {
+      TdApi.Error error = new TdApi.Error(-1, "Client restarted");
+      for (Tdlib.ResultHandler<TdApi.StickerSet> handler : handlers) {
+        handler.onResult(null, error);
+      }
+    }
+  }
+
+  @Override
+  public void onPerformUserCleanup () {
+    synchronized (dataLock) {
+      stickerSets.evictAll();
+    }
+  }
+
+  @Override
+  public void onStickerSetUpdated (TdApi.StickerSet stickerSet) {
+    synchronized (dataLock) {
+      if (stickerSets.get(stickerSet.id) != null) {
+        stickerSets.put(stickerSet.id, stickerSet);
+      }
+      if (pendingHandlers.get(stickerSet.id) != null) {
+        invalidatedStickerSetIds.add(stickerSet.id);
+      }
+    }
+  }
+
+  @Override
+  public void onInstalledStickerSetsUpdated (long[] stickerSetIds, TdApi.StickerType stickerType) {
+    LongSet installedStickerSetIds = new LongSet(stickerSetIds);
+    synchronized (dataLock) {
+      for (TdApi.StickerSet stickerSet : stickerSets.snapshot().values()) {
+        if (stickerSet.stickerType.getConstructor() == stickerType.getConstructor() && stickerSet.isInstalled != installedStickerSetIds.has(stickerSet.id)) {
+          stickerSets.remove(stickerSet.id);
+        }
+      }
+    }
+  }
+
+  @Override
+  public void onStickerSetArchived (TdApi.StickerSetInfo stickerSet) {
+    invalidate(stickerSet.id);
+  }
+
+  @Override
+  public void onStickerSetRemoved (TdApi.StickerSetInfo stickerSet) {
+    invalidate(stickerSet.id);
+  }
+
+  @Override
+  public void onStickerSetInstalled (TdApi.StickerSetInfo stickerSet) {
+    invalidate(stickerSet.id);
+  }
+}
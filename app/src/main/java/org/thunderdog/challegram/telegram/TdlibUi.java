@@ -77,13 +77,12 @@ import org.thunderdog.challegram.navigation.ViewController;
 import org.thunderdog.challegram.theme.ColorId;
 import org.thunderdog.challegram.theme.PropertyId;
 import org.thunderdog.challegram.theme.Theme;
-import org.thunderdog.challegram.theme.ThemeColors;
 import org.thunderdog.challegram.theme.ThemeCustom;
 import org.thunderdog.challegram.theme.ThemeDelegate;
 import org.thunderdog.challegram.theme.ThemeId;
 import org.thunderdog.challegram.theme.ThemeInfo;
+import org.thunderdog.challegram.theme.ThemeLoader;
 import org.thunderdog.challegram.theme.ThemeManager;
-import org.thunderdog.challegram.theme.ThemeProperties;
 import org.thunderdog.challegram.theme.ThemeSet;
 import org.thunderdog.challegram.tool.Intents;
 import org.thunderdog.challegram.tool.Screen;
@@ -144,10 +143,8 @@ import org.xmlpull.v1.XmlPullParser;
 import org.xmlpull.v1.XmlPullParserException;
 import org.xmlpull.v1.XmlPullParserFactory;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileReader;
 import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
@@ -165,7 +162,6 @@ import java.util.concurrent.atomic.AtomicReference;
 
 import me.vkryl.core.ArrayUtils;
 import me.vkryl.core.BitwiseUtils;
-import me.vkryl.core.ColorUtils;
 import me.vkryl.core.DateUtils;
 import me.vkryl.core.StringUtils;
 import me.vkryl.core.collection.IntList;
@@ -1660,7 +1656,8 @@ public class TdlibUi extends Handler {
 
   public void showStickerSet (TdlibDelegate context, long setId, @Nullable UrlOpenParameters openParameters) {
     // TODO progress
-    tdlib.client().send(new TdApi.GetStickerSet(setId), newStickerSetHandler(context, openParameters));
+    Client.ResultHandler handler = newStickerSetHandler(context, openParameters);
+    tdlib.stickerSets().getStickerSet(setId, (stickerSet, error) -> handler.onResult(stickerSet != null ? stickerSet : error));
   }
 
   public void showStickerSets (TdlibDelegate context, long[] setIds, boolean isEmojiPacks, @Nullable UrlOpenParameters openParameters) {
@@ -3005,17 +3002,17 @@ public class TdlibUi extends Handler {
             runnable[0].cancel();
 
             InstantViewController controller = new InstantViewController(context.context(), context.tdlib());
-            try {
-              controller.setArguments(new InstantViewController.Args(linkPreview, instantView, Uri.parse(url).getEncodedFragment()));
-              controller.show();
+            controller.setArguments(new InstantViewController.Args(linkPreview, instantView, Uri.parse(url).getEncodedFragment()));
+            controller.showAsync(() -> {
               if (after != null) {
                 after.runWithBool(true);
               }
-            } catch (Throwable t) {
+            }, t -> {
               Log.e("Unable to open instantView, url:%s", t, url);
               UI.showToast(R.string.InstantViewUnsupported, Toast.LENGTH_SHORT);
               UI.openUrl(externalUrl);
-            }
+              controller.destroy();
+            });
           }
         });
       });
@@ -6031,11 +6028,6 @@ public class TdlibUi extends Handler {
     }
   }
 
-  private static final int THEME_CONTEXT_NONE = 0;
-  private static final int THEME_CONTEXT_MAIN = 1;
-  private static final int THEME_CONTEXT_ATTRIBUTES = 2;
-  private static final int THEME_CONTEXT_COLORS = 3;
-
   public static boolean canInstallTheme (TdApi.Document document) {
     return document != null && !StringUtils.isEmpty(document.fileName) && document.fileName.endsWith(BuildConfig.THEME_FILE_EXTENSION) && TD.isFileLoadedAndExists(document.document);
   }
@@ -6050,113 +6042,14 @@ public class TdlibUi extends Handler {
 
   public void readCustomTheme (ViewController<?> context, TdApi.File doc, @Nullable RunnableData<ImportedTheme> onDone, @Nullable Runnable onError) {
     Background.instance().post(() -> {
-      int parse_context = THEME_CONTEXT_NONE;
-      Map<String, Integer> propertyMap = ThemeProperties.getMap();
-      Map<String, Integer> colorMap = ThemeColors.getMap();
-      ImportedTheme theme = new ImportedTheme();
-      boolean success = false;
-      int lineIndex = 0;
-      try (BufferedReader br = new BufferedReader(new FileReader(doc.local.path))) {
-        String line;
-        while ((line = br.readLine()) != null) {
-          lineIndex++;
-          line = line.trim();
-          if (line.isEmpty())
-            continue;
-          char firstChar = line.charAt(0);
-          switch (firstChar) {
-            case '!':
-              parse_context = THEME_CONTEXT_MAIN;
-              continue;
-            case '@':
-              parse_context = THEME_CONTEXT_ATTRIBUTES;
-              continue;
-            case '#':
-              parse_context = THEME_CONTEXT_COLORS;
-              continue;
-          }
-          if (parse_context == THEME_CONTEXT_NONE)
-            continue;
-          int endIndex = line.indexOf("//");
-          if (endIndex == 0) {
-            continue;
-          } else if (endIndex != -1) {
-            line = line.substring(0, endIndex).trim();
-            if (line.isEmpty()) {
-              continue;
-            }
-          }
-          // Trying to parse values variable
-          int split = line.indexOf(':');
-          if (split == -1)
-            continue;
-          String[] params = line.substring(0, split).trim().split(",");
-          if (params.length == 0)
-            continue;
-          String valueRaw = line.substring(split + 1).trim();
-          switch (parse_context) {
-            case THEME_CONTEXT_MAIN: {
-              if (params.length > 1)
-                throw new IllegalArgumentException("Parse error: multiset unavailable in the main block");
-              String param = params[0].trim();
-              switch (param) {
-                case "name":
-                  theme.name = Strings.unwrap(param, valueRaw).trim();
-                  if (StringUtils.isEmpty(theme.name))
-                    throw new IllegalArgumentException("Invalid value: " + valueRaw);
-                  break;
-                case "time":
-                  theme.time = Long.parseLong(valueRaw);
-                  break;
-                case "author":
-                  theme.author = Strings.unwrap(param, valueRaw).trim();
-                  if (StringUtils.isEmpty(theme.author) || !TD.matchUsername(theme.author) || theme.author.length() > TdConstants.MAX_USERNAME_LENGTH)
-                    throw new IllegalArgumentException("Invalid value: " + valueRaw);
-                  break;
-                case "wallpaper":
-                  theme.wallpaper = Strings.unwrap(param, valueRaw).trim();
-                  if (StringUtils.isEmpty(theme.wallpaper))
-                    throw new IllegalArgumentException("Invalid value: " + valueRaw);
-                  break;
-              }
-              break;
-            }
-            case THEME_CONTEXT_ATTRIBUTES: {
-              float value = Float.parseFloat(valueRaw);
-              for (String name : params) {
-                name = name.trim();
-                Integer id = propertyMap.get(name);
-                if (id == null) {
-                  Log.e("Unknown theme property: %s, line: %d", name, lineIndex);
-                  continue;
-                }
-                theme.addProperty(name, id, value);
-              }
-              break;
-            }
-            case THEME_CONTEXT_COLORS: {
-              int color = ColorUtils.parseHexColor(valueRaw.startsWith("#") ? valueRaw.substring(1) : valueRaw, true);
-              for (String name : params) {
-                name = name.trim();
-                Integer id = colorMap.get(name);
-                if (id == null) {
-                  Log.e("Unknown theme color: %s, line: %d", name, lineIndex);
-                  continue;
-                }
-                theme.addColor(name, id, color);
-              }
-              break;
-            }
-          }
-        }
-
-        theme.checkValidnessAndPrepare();
-
-        success = true;
+      ImportedTheme parsedTheme = null;
+      try {
+        parsedTheme = ThemeLoader.readThemeFile(doc.local.path);
       } catch (Throwable t) {
-        Log.e("Cannot parse custom theme, line:%d", t, lineIndex);
+        Log.e("Cannot parse custom theme", t);
       }
-      if (success) {
+      final ImportedTheme theme = parsedTheme;
+      if (theme != null) {
         if (onDone != null) {
           tdlib.ui().post(() -> onDone.runWithData(theme));
         } else {
@@ -7485,6 +7378,7 @@ public class TdlibUi extends Handler {
         this.isScrolling = newState != RecyclerView.SCROLL_STATE_IDLE;
         if (this.isScrolling != wasScrolling && !this.isScrolling) {
           viewMessages.run();
+          viewport.flushPendingViews();
         }
       }
     };
@@ -0,0 +1,78 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026
+ */
+package org.thunderdog.challegram.theme;
+
+import androidx.annotation.ColorInt;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Dense table of resolved colors indexed by {@link ColorId}.
+ *
+ * Each entry is resolved once through {@link Resolver}, which walks fallbacks and parent themes,
+ * and then is returned as is until the table is {@link #clear() cleared}.
+ *
+ * Color and the generation of the table it was resolved for are packed into a single {@code long},
+ * so a reader on another thread never observes a resolved entry without its color,
+ * and colors resolved while the table was being cleared are ignored instead of being stored as fresh ones.
+ */
+final class ThemeColorTable {
+  interface Resolver {
+    @ColorInt
+    int resolveColor (@ColorId int colorId);
+  }
+
+  private final AtomicLongArray entries = new AtomicLongArray(ThemeColors.COUNT + 1);
+  private final Resolver resolver;
+  private volatile int generation = 1; // Never 0, so empty entries are never considered resolved
+
+  ThemeColorTable (Resolver resolver) {
+    this.resolver = resolver;
+  }
+
+  @ColorInt
+  int getColor (@ColorId int colorId) {
+    if (colorId <= ColorId.NONE || colorId >= entries.length()) {
+      // Let resolver throw
+      return resolver.resolveColor(colorId);
+    }
+    final int generation = this.generation;
+    long entry = entries.get(colorId);
+    if ((int) (entry >>> 32) == generation) {
+      return (int) entry;
+    }
+    int color = resolver.resolveColor(colorId);
+    // Entry resolved by another thread for a newer generation is kept
+    entries.compareAndSet(colorId, entry, ((long) generation << 32) | (color & 0xffffffffL));
+    return color;
+  }
+
+  /**
+   * Resolves every color in advance, e.g. on a background thread before the theme is first drawn.
+   */
+  void resolveAll () {
+    for (int colorId = ColorId.NONE + 1; colorId < entries.length(); colorId++) {
+      getColor(colorId);
+    }
+  }
+
+  synchronized void clear () {
+    int generation = this.generation + 1;
+    if (generation == 0) {
+      generation = 1;
+    }
+    this.generation = generation;
+  }
+}
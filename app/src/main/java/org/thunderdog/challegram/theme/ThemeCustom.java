@@ -23,6 +23,7 @@ public final class ThemeCustom implements ThemeDelegate {
 
   private final ThemeProperties properties;
   private final ThemeColors colors;
+  private final ThemeColorTable resolvedColors = new ThemeColorTable(this::getColorUncached);
 
   @Nullable
   private ThemeDelegate parentTheme;
@@ -59,6 +60,8 @@ public final class ThemeCustom implements ThemeDelegate {
   public void setColor (@ColorId int colorId, @Nullable Integer color) {
     this.lastChangedColorId = colorId;
     colors.set(colorId, color);
+    // Change may affect any color that falls back to colorId
+    resolvedColors.clear();
   }
 
   public boolean hasRecentlyChanged (@ColorId int colorId) {
@@ -79,6 +82,7 @@ public final class ThemeCustom implements ThemeDelegate {
     this.parentTheme = ThemeSet.getBuiltinTheme(id);
     if (this.parentTheme == null)
       throw new IllegalArgumentException("Invalid themeId: " + id);
+    resolvedColors.clear();
   }
 
   public void setProperty (@PropertyId int propertyId, @Nullable Float value) {
@@ -95,6 +99,20 @@ public final class ThemeCustom implements ThemeDelegate {
 
   @Override
   public int getColor (int colorId) {
+    return resolvedColors.getColor(colorId);
+  }
+
+  /**
+   * Flattens the theme: resolves all colors through fallbacks and parent theme in advance.
+   */
+  public void resolveColors () {
+    resolvedColors.resolveAll();
+  }
+
+  /**
+   * Resolves color by walking through fallback colors and parent theme, without looking up already resolved colors.
+   */
+  public int getColorUncached (@ColorId int colorId) {
     Integer color = colors.get(colorId);
     if (color != null)
       return color;
@@ -0,0 +1,383 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026
+ */
+package org.thunderdog.challegram.theme;
+
+import android.util.LruCache;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.UiThread;
+import androidx.annotation.WorkerThread;
+
+import org.thunderdog.challegram.BuildConfig;
+import org.thunderdog.challegram.Log;
+import org.thunderdog.challegram.U;
+import org.thunderdog.challegram.data.TD;
+import org.thunderdog.challegram.telegram.TdlibUi;
+import org.thunderdog.challegram.tool.Strings;
+import org.thunderdog.challegram.tool.UI;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import me.vkryl.core.ColorUtils;
+import me.vkryl.core.FileUtils;
+import me.vkryl.core.MathUtils;
+import me.vkryl.core.StringUtils;
+import me.vkryl.core.util.Blob;
+import tgx.td.TdConstants;
+
+/**
+ * Loads custom themes.
+ *
+ * Parsed {@code .tgx-theme} files are kept in a compact binary form keyed by SHA-1 of the file contents,
+ * both in memory and on disk, so opening the same theme file again skips text parsing
+ * and name lookups entirely: entries are stored by {@link ColorId} and {@link PropertyId}.
+ *
+ * Custom themes stored in settings can be preloaded in parallel, e.g. before showing the list of installed themes.
+ */
+public final class ThemeLoader {
+  private static final int CACHE_VERSION = 1;
+  private static final int MAX_MEMORY_CACHE_SIZE = 16;
+  private static final int MAX_FILE_SIZE = 1024 * 1024;
+
+  private static final int FLAG_HAS_AUTHOR = 1;
+  private static final int FLAG_HAS_WALLPAPER = 1 << 1;
+
+  private static final LruCache<String, byte[]> parsedThemes = new LruCache<>(MAX_MEMORY_CACHE_SIZE);
+
+  private ThemeLoader () { }
+
+  // Theme files
+
+  /**
+   * Reads {@code .tgx-theme} file and prepares it for the installation.
+   *
+   * @throws IllegalArgumentException when theme file is invalid.
+   */
+  @WorkerThread
+  @NonNull
+  public static TdlibUi.ImportedTheme readThemeFile (@NonNull String path) throws IOException {
+    byte[] data = readFully(path);
+    String hash = U.base64(U.sha1(data));
+
+    byte[] serialized = parsedThemes.get(hash);
+    if (serialized == null) {
+      serialized = readCachedTheme(hash);
+      if (serialized != null) {
+        parsedThemes.put(hash, serialized);
+      }
+    }
+    if (serialized != null) {
+      try {
+        return deserializeTheme(serialized);
+      } catch (Throwable t) {
+        Log.w("Cannot restore cached theme, parsing again", t);
+        parsedThemes.remove(hash);
+      }
+    }
+
+    TdlibUi.ImportedTheme theme = parseTheme(data);
+    serialized = serializeTheme(theme);
+    parsedThemes.put(hash, serialized);
+    writeCachedTheme(hash, serialized);
+    return theme;
+  }
+
+  private static byte[] readFully (String path) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(path, "r")) {
+      long length = file.length();
+      if (length > MAX_FILE_SIZE)
+        throw new IllegalArgumentException("Theme file is too big: " + length);
+      byte[] data = new byte[(int) length];
+      file.readFully(data);
+      return data;
+    }
+  }
+
+  private static final int THEME_CONTEXT_NONE = 0;
+  private static final int THEME_CONTEXT_MAIN = 1;
+  private static final int THEME_CONTEXT_ATTRIBUTES = 2;
+  private static final int THEME_CONTEXT_COLORS = 3;
+
+  private static TdlibUi.ImportedTheme parseTheme (byte[] data) throws IOException {
+    int parse_context = THEME_CONTEXT_NONE;
+    Map<String, Integer> propertyMap = ThemeProperties.getMap();
+    Map<String, Integer> colorMap = ThemeColors.getMap();
+    TdlibUi.ImportedTheme theme = new TdlibUi.ImportedTheme();
+    int lineIndex = 0;
+    try (BufferedReader br = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(data), StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = br.readLine()) != null) {
+        lineIndex++;
+        line = line.trim();
+        if (line.isEmpty())
+          continue;
+        char firstChar = line.charAt(0);
+        switch (firstChar) {
+          case '!':
+            parse_context = THEME_CONTEXT_MAIN;
+            continue;
+          case '@':
+            parse_context = THEME_CONTEXT_ATTRIBUTES;
+            continue;
+          case '#':
+            parse_context = THEME_CONTEXT_COLORS;
+            continue;
+        }
+        if (parse_context == THEME_CONTEXT_NONE)
+          continue;
+        int endIndex = line.indexOf("//");
+        if (endIndex == 0) {
+          continue;
+        } else if (endIndex != -1) {
+          line = line.substring(0, endIndex).trim();
+          if (line.isEmpty()) {
+            continue;
+          }
+        }
+        // Trying to parse values variable
+        int split = line.indexOf(':');
+        if (split == -1)
+          continue;
+        String[] params = line.substring(0, split).trim().split(",");
+        if (params.length == 0)
+          continue;
+        String valueRaw = line.substring(split + 1).trim();
+        switch (parse_context) {
+          case THEME_CONTEXT_MAIN: {
+            if (params.length > 1)
+              throw new IllegalArgumentException("Parse error: multiset unavailable in the main block");
+            String param = params[0].trim();
+            switch (param) {
+              case "name":
+                theme.name = Strings.unwrap(param, valueRaw).trim();
+                if (StringUtils.isEmpty(theme.name))
+                  throw new IllegalArgumentException("Invalid value: " + valueRaw);
+                break;
+              case "time":
+                theme.time = Long.parseLong(valueRaw);
+                break;
+              case "author":
+                theme.author = Strings.unwrap(param, valueRaw).trim();
+                if (StringUtils.isEmpty(theme.author) || !TD.matchUsername(theme.author) || theme.author.length() > TdConstants.MAX_USERNAME_LENGTH)
+                  throw new IllegalArgumentException("Invalid value: " + valueRaw);
+                break;
+              case "wallpaper":
+                theme.wallpaper = Strings.unwrap(param, valueRaw).trim();
+                if (StringUtils.isEmpty(theme.wallpaper))
+                  throw new IllegalArgumentException("Invalid value: " + valueRaw);
+                break;
+            }
+            break;
+          }
+          case THEME_CONTEXT_ATTRIBUTES: {
+            float value = Float.parseFloat(valueRaw);
+            for (String name : params) {
+              name = name.trim();
+              Integer id = propertyMap.get(name);
+              if (id == null) {
+                Log.e("Unknown theme property: %s, line: %d", name, lineIndex);
+                continue;
+              }
+              theme.addProperty(name, id, value);
+            }
+            break;
+          }
+          case THEME_CONTEXT_COLORS: {
+            int color = ColorUtils.parseHexColor(valueRaw.startsWith("#") ? valueRaw.substring(1) : valueRaw, true);
+            for (String name : params) {
+              name = name.trim();
+              Integer id = colorMap.get(name);
+              if (id == null) {
+                Log.e("Unknown theme color: %s, line: %d", name, lineIndex);
+                continue;
+              }
+              theme.addColor(name, id, color);
+            }
+            break;
+          }
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException("Parse error, line: " + lineIndex, e);
+    }
+    theme.checkValidnessAndPrepare();
+    return theme;
+  }
+
+  // Binary form
+
+  private static byte[] serializeTheme (TdlibUi.ImportedTheme theme) {
+    boolean hasAuthor = !StringUtils.isEmpty(theme.author);
+    boolean hasWallpaper = !StringUtils.isEmpty(theme.wallpaper);
+    int flags = 0;
+    if (hasAuthor) flags |= FLAG_HAS_AUTHOR;
+    if (hasWallpaper) flags |= FLAG_HAS_WALLPAPER;
+
+    int size =
+      1 /*version*/ +
+      Blob.sizeOf(BuildConfig.ORIGINAL_VERSION_CODE) +
+      1 /*flags*/ +
+      Blob.sizeOf(theme.name, true) +
+      8 /*time*/ +
+      Blob.sizeOf(theme.author, false) +
+      Blob.sizeOf(theme.wallpaper, false) +
+      Blob.sizeOf(theme.colorsList.size()) +
+      Blob.sizeOf(theme.propertiesList.size());
+    for (TdlibUi.ImportedTheme.Value value : theme.colorsList) {
+      size += Blob.sizeOf(value.id) + 4;
+    }
+    for (TdlibUi.ImportedTheme.Value value : theme.propertiesList) {
+      size += Blob.sizeOf(value.id) + 4;
+    }
+
+    Blob blob = new Blob(size);
+    blob.writeByte((byte) CACHE_VERSION);
+    // Identifiers are generated, so they may point to other colors and properties after an update
+    blob.writeVarint(BuildConfig.ORIGINAL_VERSION_CODE);
+    blob.writeByte((byte) flags);
+    blob.writeString(theme.name);
+    blob.writeLong(theme.time);
+    if (hasAuthor)
+      blob.writeString(theme.author);
+    if (hasWallpaper)
+      blob.writeString(theme.wallpaper);
+    blob.writeVarint(theme.colorsList.size());
+    for (TdlibUi.ImportedTheme.Value value : theme.colorsList) {
+      blob.writeVarint(value.id);
+      blob.writeInt(value.intValue);
+    }
+    blob.writeVarint(theme.propertiesList.size());
+    for (TdlibUi.ImportedTheme.Value value : theme.propertiesList) {
+      blob.writeVarint(value.id);
+      blob.writeInt(Float.floatToIntBits(value.floatValue));
+    }
+    return blob.toByteArray();
+  }
+
+  private static TdlibUi.ImportedTheme deserializeTheme (byte[] data) {
+    Blob blob = new Blob(data);
+    int version = blob.readByte();
+    int appVersion = blob.readVarint();
+    if (version != CACHE_VERSION || appVersion != BuildConfig.ORIGINAL_VERSION_CODE)
+      throw new IllegalStateException("Outdated cache, version: " + version + ", appVersion: " + appVersion);
+    int flags = blob.readByte();
+    TdlibUi.ImportedTheme theme = new TdlibUi.ImportedTheme();
+    theme.name = blob.readString();
+    theme.time = blob.readLong();
+    if ((flags & FLAG_HAS_AUTHOR) != 0)
+      theme.author = blob.readString();
+    if ((flags & FLAG_HAS_WALLPAPER) != 0)
+      theme.wallpaper = blob.readString();
+    // Lists were sorted and validated before serialization, so values are added as is
+    int colorCount = blob.readVarint();
+    for (int i = 0; i < colorCount; i++) {
+      int colorId = blob.readVarint();
+      theme.addColor(ThemeColors.getName(colorId), colorId, blob.readInt());
+    }
+    int propertyCount = blob.readVarint();
+    for (int i = 0; i < propertyCount; i++) {
+      int propertyId = blob.readVarint();
+      theme.addProperty(ThemeProperties.getName(propertyId), propertyId, Float.intBitsToFloat(blob.readInt()));
+    }
+    return theme;
+  }
+
+  private static File getCacheDir () {
+    return new File(UI.getAppContext().getCacheDir(), "themes");
+  }
+
+  @Nullable
+  private static byte[] readCachedTheme (String hash) {
+    File file = new File(getCacheDir(), hash + ".bin");
+    if (!file.exists())
+      return null;
+    try {
+      return readFully(file.getPath());
+    } catch (Throwable t) {
+      Log.w("Cannot read cached theme: %s", t, file.getName());
+      return null;
+    }
+  }
+
+  private static void writeCachedTheme (String hash, byte[] serialized) {
+    File dir = getCacheDir();
+    if (!FileUtils.createDirectory(dir))
+      return;
+    File file = new File(dir, hash + ".bin");
+    try (FileOutputStream out = new FileOutputStream(file)) {
+      out.write(serialized);
+    } catch (Throwable t) {
+      Log.w("Cannot cache theme: %s", t, file.getName());
+      if (!file.delete()) {
+        Log.w("Cannot delete %s", file.getName());
+      }
+    }
+  }
+
+  // Installed themes
+
+  private static ThreadPoolExecutor _preloadExecutor;
+
+  private static synchronized ThreadPoolExecutor preloadExecutor () {
+    if (_preloadExecutor == null) {
+      int threadCount = MathUtils.clamp(Runtime.getRuntime().availableProcessors() / 2, 1, 4);
+      _preloadExecutor = new ThreadPoolExecutor(threadCount, threadCount, 1, TimeUnit.MINUTES, new LinkedBlockingQueue<>());
+      _preloadExecutor.allowCoreThreadTimeOut(true);
+    }
+    return _preloadExecutor;
+  }
+
+  /**
+   * Loads custom themes that have not been loaded yet in parallel,
+   * so {@link ThemeInfo#getTheme()} does not read them from settings on the UI thread.
+   */
+  @UiThread
+  public static void preloadCustomThemes (@NonNull List<ThemeInfo> themes) {
+    for (ThemeInfo theme : themes) {
+      if (theme.hasLoadedTheme())
+        continue;
+      final int themeId = theme.getId();
+      preloadExecutor().execute(() -> {
+        ThemeCustom loadedTheme;
+        try {
+          loadedTheme = (ThemeCustom) ThemeSet.getOrLoadTheme(themeId, true);
+        } catch (Throwable t) {
+          Log.e("Cannot preload custom theme, themeId: %d", t, themeId);
+          return;
+        }
+        if (loadedTheme != null) {
+          UI.post(() -> {
+            if (!theme.hasLoadedTheme()) {
+              theme.setLoadedTheme(loadedTheme);
+            }
+          });
+        }
+      });
+    }
+  }
+}
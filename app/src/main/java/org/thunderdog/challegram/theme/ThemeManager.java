@@ -231,11 +231,48 @@ public class ThemeManager implements FactorAnimator.Target, GlobalAccountListene
         }
       }
       this._tdlib = tdlib;
-      this._currentTheme = getTheme(currentThemeId);
+      ThemeDelegate preloadedTheme = consumePreloadedTheme();
+      this._currentTheme = preloadedTheme != null && preloadedTheme.getId() == currentThemeId ? preloadedTheme : getTheme(currentThemeId);
     }
     return _currentTheme;
   }
 
+  // Guarded by ThemeManager.class
+  private static ThemeDelegate preloadedTheme;
+  private static boolean isPreloadedThemeConsumed;
+
+  @Nullable
+  private static synchronized ThemeDelegate consumePreloadedTheme () {
+    ThemeDelegate theme = preloadedTheme;
+    preloadedTheme = null;
+    isPreloadedThemeConsumed = true;
+    return theme;
+  }
+
+  /**
+   * Loads and flattens the theme that will be picked by the first {@link #currentTheme()} call,
+   * so the UI thread does not have to read it from the database when drawing the first frame.
+   *
+   * Called on a background thread during application launch.
+   */
+  public static void preloadCurrentTheme () {
+    Tdlib tdlib = TdlibManager.instance().currentNoWakeup();
+    int themeId = tdlib.settings().globalTheme();
+    if (Settings.instance().getNightMode() == Settings.NIGHT_MODE_SCHEDULED) {
+      themeId = Settings.instance().inNightSchedule() ? tdlib.settings().globalNightTheme() : tdlib.settings().globalDaylightTheme();
+    }
+    ThemeDelegate theme = ThemeSet.getOrLoadTheme(themeId, true);
+    if (theme instanceof ThemeCustom) {
+      ((ThemeCustom) theme).resolveColors();
+    }
+    synchronized (ThemeManager.class) {
+      // Theme loaded after the first currentTheme() call would never be released otherwise
+      if (!isPreloadedThemeConsumed) {
+        preloadedTheme = theme;
+      }
+    }
+  }
+
   private final List<ThemeListenerEntry> globalThemeListenerEntries = new ArrayList<>();
   private final ReferenceList<ThemeChangeListener> themeChangeListeners = new ReferenceList<>();
   private final ReferenceList<ChatStyleChangeListener> chatStyleChangeListeners = new ReferenceList<>();
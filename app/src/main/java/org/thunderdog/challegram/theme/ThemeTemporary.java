@@ -21,6 +21,7 @@ import me.vkryl.core.ColorUtils;
 final class ThemeTemporary implements ThemeDelegate {
   private final ThemeDelegate fromTheme;
   private final ThemeDelegate toTheme;
+  private final ThemeColorTable colors = new ThemeColorTable(this::getColorUncached);
 
   public ThemeTemporary (ThemeDelegate fromTheme, ThemeDelegate toTheme) {
     this.fromTheme = fromTheme;
@@ -59,13 +60,18 @@ final class ThemeTemporary implements ThemeDelegate {
   public boolean setFactor (float factor) {
     if (this.factor != factor) {
       this.factor = factor;
+      colors.clear();
       return true;
     }
     return false;
   }
 
   @Override
-  public int getColor (@ThemeId int colorId) {
+  public int getColor (@ColorId int colorId) {
+    return colors.getColor(colorId);
+  }
+
+  private int getColorUncached (@ColorId int colorId) {
     if (factor == 0f)
       return fromTheme.getColor(colorId);
     else if (factor == 1f)
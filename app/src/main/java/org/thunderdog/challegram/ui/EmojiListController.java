@@ -113,6 +113,7 @@ public class EmojiListController extends ViewController<EmojiLayout> implements
 
     this.useDarkMode = getArgumentsStrict().useDarkMode();
 
+    Emoji.instance().measureLoading();
     emojiController.setArguments(getArguments());
     emojiController.setAdapter(adapter);
     emojiController.getValue();
@@ -130,6 +131,11 @@ public class EmojiListController extends ViewController<EmojiLayout> implements
       public void onScrolled (@NonNull RecyclerView recyclerView, int dx, int dy) {
         if (emojiController.isNeedIgnoreScroll()) return;
 
+        int section = emojiController.getStickerSetSection();
+        if (section != -1 && emojiController.stickerSets != null && section < emojiController.stickerSets.size()) {
+          prefetchNextEmojiSection(emojiController.stickerSets.get(section));
+        }
+
         if (contentView.isSectionStable() && contentView.getCurrentSection() == SECTION_STICKERS && getArguments() != null && getArguments().isWatchingMovements() && getArguments().getCurrentItem() == 0) {
           int y = emojiController.getStickersScrollY(false);
           getArguments().moveHeader(y);
@@ -268,6 +274,9 @@ public class EmojiListController extends ViewController<EmojiLayout> implements
     if (contentView.canChangeSection()) {
       TGStickerSetInfo info = emojiController.getStickerSetBySectionIndex(section);
       int position = section != 0 && info != null ? info.getStartIndex() : 0;
+      if (info != null) {
+        prefetchEmojiSection(info.getFakeClassicEmojiSectionId(), PREFETCH_EMOJI_COUNT * 2);
+      }
 
       emojiController.scrollToStickerSet(position, false, contentView.getCurrentSection() != SECTION_TRENDING);
       if (contentView.getCurrentSection() == SECTION_TRENDING) {
@@ -276,6 +285,28 @@ public class EmojiListController extends ViewController<EmojiLayout> implements
     }
   }
 
+  private static final int PREFETCH_EMOJI_COUNT = 64;
+  private int lastPrefetchedSectionId = -1;
+
+  private void prefetchNextEmojiSection (TGStickerSetInfo currentSet) {
+    if (currentSet == null || !currentSet.isFakeClassicEmoji()) {
+      return;
+    }
+    int nextSectionId = currentSet.getFakeClassicEmojiSectionId() + 1;
+    if (nextSectionId != lastPrefetchedSectionId) {
+      lastPrefetchedSectionId = nextSectionId;
+      prefetchEmojiSection(nextSectionId, PREFETCH_EMOJI_COUNT);
+    }
+  }
+
+  private static void prefetchEmojiSection (int sectionId, int limit) {
+    // Classic emoji sections go in the same order as EmojiData.dataColored, right after recent ones
+    int index = sectionId - EmojiSection.SECTION_EMOJI_SMILEYS;
+    if (index >= 0 && index < EmojiData.dataColored.length) {
+      Emoji.instance().prefetch(EmojiData.dataColored[index], limit);
+    }
+  }
+
   private void buildEmojis () {
     ArrayList<MediaStickersAdapter.StickerItem> items = new ArrayList<>(1);
     ArrayList<TGStickerSetInfo> emojiPacks = new ArrayList<>(8);
@@ -587,39 +618,28 @@ public class EmojiListController extends ViewController<EmojiLayout> implements
       setApplyingChanges(true);
       final long[] setIds = futureItems.get();
       final int addedCount = futureItems.size();
-      final int[] index = new int[2];
-      tdlib.client().send(new TdApi.GetStickerSet(setIds[index[0]]), new Client.ResultHandler() {
-        @Override
-        public void onResult (TdApi.Object object) {
-          if (object.getConstructor() == TdApi.StickerSet.CONSTRUCTOR) {
-
-            TdApi.StickerSet rawStickerSet = (TdApi.StickerSet) object;
-            final TGStickerSetInfo stickerSet = new TGStickerSetInfo(tdlib, rawStickerSet);
-            final TdApi.Sticker[] stickers = ((TdApi.StickerSet) object).stickers;
-
-            final int insertIndex = index[1]++;
-
-            final ArrayList<MediaStickersAdapter.StickerItem> items;
-            items = new ArrayList<>(stickers.length + 1);
-            items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_HEADER, stickerSet));
-
-            int i = 0;
-            for (TdApi.Sticker sticker : stickers) {
-              TGStickerObj parsed = new TGStickerObj(tdlib, sticker, sticker.fullType, rawStickerSet.emojis[i].emojis);
-              items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_STICKER, parsed));
-              i++;
-            }
-
-            runOnUiThreadOptional(() -> emojiController.addStickerSet(stickerSet, items, insertIndex + getSystemSetsCount()));
+      final int[] insertIndex = new int[1];
+      tdlib.stickerSets().getStickerSets(setIds, addedCount, (rawStickerSet, error) -> {
+        if (rawStickerSet != null) {
+          final TGStickerSetInfo stickerSet = new TGStickerSetInfo(tdlib, rawStickerSet);
+          final TdApi.Sticker[] stickers = rawStickerSet.stickers;
+
+          final int index = insertIndex[0]++;
+
+          final ArrayList<MediaStickersAdapter.StickerItem> items;
+          items = new ArrayList<>(stickers.length + 1);
+          items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_HEADER, stickerSet));
+
+          int i = 0;
+          for (TdApi.Sticker sticker : stickers) {
+            TGStickerObj parsed = new TGStickerObj(tdlib, sticker, sticker.fullType, rawStickerSet.emojis[i].emojis);
+            items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_STICKER, parsed));
+            i++;
           }
 
-          if (++index[0] < addedCount) {
-            tdlib.client().send(new TdApi.GetStickerSet(setIds[index[0]]), this);
-          } else {
-            runOnUiThreadOptional(() -> setApplyingChanges(false));
-          }
+          runOnUiThreadOptional(() -> emojiController.addStickerSet(stickerSet, items, index + getSystemSetsCount()));
         }
-      });
+      }, () -> runOnUiThreadOptional(() -> setApplyingChanges(false)));
     }
   }
 
@@ -1180,41 +1180,28 @@ public class EmojiMediaListController extends ViewController<EmojiLayout> implem
       setApplyingChanges(true);
       final long[] setIds = futureItems.get();
       final int addedCount = futureItems.size();
-      final int[] index = new int[2];
-      tdlib.client().send(new TdApi.GetStickerSet(setIds[index[0]]), new Client.ResultHandler() {
-        @Override
-        public void onResult (TdApi.Object object) {
-          if (object.getConstructor() == TdApi.StickerSet.CONSTRUCTOR) {
-
-            TdApi.StickerSet rawStickerSet = (TdApi.StickerSet) object;
-            final TGStickerSetInfo stickerSet = new TGStickerSetInfo(tdlib, rawStickerSet);
-            final TdApi.Sticker[] stickers = ((TdApi.StickerSet) object).stickers;
-
-            final int insertIndex = index[1]++;
-
-            final ArrayList<MediaStickersAdapter.StickerItem> items;
-            items = new ArrayList<>(stickers.length + 1);
-            items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_HEADER, stickerSet));
-
-            int i = 0;
-            for (TdApi.Sticker sticker : stickers) {
-              TGStickerObj parsed = new TGStickerObj(tdlib, sticker, sticker.fullType, rawStickerSet.emojis[i].emojis);
-              items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_STICKER, parsed));
-              i++;
-            }
-
-            runOnUiThreadOptional(() -> stickersController.addStickerSet(stickerSet, items, insertIndex + getSystemSetsCount()));
+      final int[] insertIndex = new int[1];
+      tdlib.stickerSets().getStickerSets(setIds, addedCount, (rawStickerSet, error) -> {
+        if (rawStickerSet != null) {
+          final TGStickerSetInfo stickerSet = new TGStickerSetInfo(tdlib, rawStickerSet);
+          final TdApi.Sticker[] stickers = rawStickerSet.stickers;
+
+          final int index = insertIndex[0]++;
+
+          final ArrayList<MediaStickersAdapter.StickerItem> items;
+          items = new ArrayList<>(stickers.length + 1);
+          items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_HEADER, stickerSet));
+
+          int i = 0;
+          for (TdApi.Sticker sticker : stickers) {
+            TGStickerObj parsed = new TGStickerObj(tdlib, sticker, sticker.fullType, rawStickerSet.emojis[i].emojis);
+            items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_STICKER, parsed));
+            i++;
           }
 
-          if (++index[0] < addedCount) {
-            tdlib.client().send(new TdApi.GetStickerSet(setIds[index[0]]), this);
-          } else {
-            runOnUiThreadOptional(() -> {
-              setApplyingChanges(false);
-            });
-          }
+          runOnUiThreadOptional(() -> stickersController.addStickerSet(stickerSet, items, index + getSystemSetsCount()));
         }
-      });
+      }, () -> runOnUiThreadOptional(() -> setApplyingChanges(false)));
     }
   }
 
@@ -639,40 +639,29 @@ public class EmojiStatusListController extends ViewController<EmojiLayout> imple
       setApplyingChanges(true);
       final long[] setIds = futureItems.get();
       final int addedCount = futureItems.size();
-      final int[] index = new int[2];
-      tdlib.client().send(new TdApi.GetStickerSet(setIds[index[0]]), new Client.ResultHandler() {
-        @Override
-        public void onResult (TdApi.Object object) {
-          if (object.getConstructor() == TdApi.StickerSet.CONSTRUCTOR) {
-
-            TdApi.StickerSet rawStickerSet = (TdApi.StickerSet) object;
-            final TGStickerSetInfo stickerSet = new TGStickerSetInfo(tdlib, rawStickerSet);
-            final TdApi.Sticker[] stickers = ((TdApi.StickerSet) object).stickers;
-
-            final int insertIndex = index[1]++;
-
-            final ArrayList<MediaStickersAdapter.StickerItem> items;
-            items = new ArrayList<>(stickers.length + 1);
-            items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_HEADER, stickerSet));
-
-            int i = 0;
-            for (TdApi.Sticker sticker : stickers) {
-              TGStickerObj parsed = new TGStickerObj(tdlib, sticker, sticker.fullType, rawStickerSet.emojis[i].emojis);
-              parsed.setPreviewOptimizationMode(GifFile.OptimizationMode.EMOJI_PREVIEW);
-              items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_STICKER, parsed));
-              i++;
-            }
-
-            runOnUiThreadOptional(() -> addStickerSet(stickerSet, items, insertIndex + getSystemSetsCount()));
+      final int[] insertIndex = new int[1];
+      tdlib.stickerSets().getStickerSets(setIds, addedCount, (rawStickerSet, error) -> {
+        if (rawStickerSet != null) {
+          final TGStickerSetInfo stickerSet = new TGStickerSetInfo(tdlib, rawStickerSet);
+          final TdApi.Sticker[] stickers = rawStickerSet.stickers;
+
+          final int index = insertIndex[0]++;
+
+          final ArrayList<MediaStickersAdapter.StickerItem> items;
+          items = new ArrayList<>(stickers.length + 1);
+          items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_HEADER, stickerSet));
+
+          int i = 0;
+          for (TdApi.Sticker sticker : stickers) {
+            TGStickerObj parsed = new TGStickerObj(tdlib, sticker, sticker.fullType, rawStickerSet.emojis[i].emojis);
+            parsed.setPreviewOptimizationMode(GifFile.OptimizationMode.EMOJI_PREVIEW);
+            items.add(new MediaStickersAdapter.StickerItem(MediaStickersAdapter.StickerHolder.TYPE_STICKER, parsed));
+            i++;
           }
 
-          if (++index[0] < addedCount) {
-            tdlib.client().send(new TdApi.GetStickerSet(setIds[index[0]]), this);
-          } else {
-            runOnUiThreadOptional(() -> setApplyingChanges(false));
-          }
+          runOnUiThreadOptional(() -> addStickerSet(stickerSet, items, index + getSystemSetsCount()));
         }
-      });
+      }, () -> runOnUiThreadOptional(() -> setApplyingChanges(false)));
     }
   }
 
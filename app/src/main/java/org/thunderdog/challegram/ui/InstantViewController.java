@@ -18,14 +18,17 @@ import android.content.Context;
 import android.graphics.Canvas;
 import android.graphics.Rect;
 import android.net.Uri;
+import android.os.SystemClock;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
 import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
@@ -33,6 +36,7 @@ import org.drinkless.tdlib.TdApi;
 import org.thunderdog.challegram.Log;
 import org.thunderdog.challegram.R;
 import org.thunderdog.challegram.config.Config;
+import org.thunderdog.challegram.core.Background;
 import org.thunderdog.challegram.core.Lang;
 import org.thunderdog.challegram.data.InlineResult;
 import org.thunderdog.challegram.data.InlineResultCommon;
@@ -72,6 +76,7 @@ import java.util.List;
 import me.vkryl.android.widget.FrameLayoutFix;
 import me.vkryl.core.ColorUtils;
 import me.vkryl.core.StringUtils;
+import me.vkryl.core.lambda.RunnableData;
 import tgx.td.Td;
 
 public class InstantViewController extends ViewController<InstantViewController.Args> implements Menu, TGLegacyManager.EmojiLoadListener, Text.ClickCallback, View.OnClickListener, View.OnLongClickListener, TGPlayerController.PlayListBuilder {
@@ -191,6 +196,9 @@ public class InstantViewController extends ViewController<InstantViewController.
           final ArrayList<PageBlock> blocks;
           try {
             blocks = PageBlock.parse(this, getUrl(), getArgumentsStrict().instantView, pageBlock, this, null);
+            for (PageBlock block : blocks) {
+              block.prepare();
+            }
           } catch (Throwable t) {
             Log.e("Exception in instant view block", t);
             context().tooltipManager().builder(view).show(tdlib, t instanceof UnsupportedOperationException ? R.string.InstantViewSectionUnsupported : R.string.InstantViewError).hideDelayed();
@@ -347,11 +355,20 @@ public class InstantViewController extends ViewController<InstantViewController.
 
   @Override
   protected View onCreateView (Context context) {
-    ArrayList<PageBlock> pageBlocks;
-    try {
-      pageBlocks = parsePageBlocks(getArgumentsStrict().instantView);
-    } catch (PageBlock.UnsupportedPageBlockException e) {
-      throw new UnsupportedOperationException();
+    ArrayList<PageBlock> pageBlocks = this.preparedBlocks;
+    if (pageBlocks != null) {
+      this.preparedBlocks = null;
+    } else {
+      long parseStartTime = SystemClock.uptimeMillis();
+      try {
+        pageBlocks = parsePageBlocks(getArgumentsStrict().instantView);
+      } catch (PageBlock.UnsupportedPageBlockException e) {
+        throw new UnsupportedOperationException();
+      }
+      if (openStartTime == 0) {
+        openStartTime = parseStartTime;
+      }
+      parseDuration = SystemClock.uptimeMillis() - parseStartTime;
     }
 
     FrameLayout contentView = new FrameLayout(context);
@@ -462,6 +479,289 @@ public class InstantViewController extends ViewController<InstantViewController.
     return PageBlock.parse(this, getUrl(), instantView, null, this, null);
   }
 
+  // Background preparation
+
+  private @Nullable ArrayList<PageBlock> preparedBlocks;
+  private ArrayList<PageBlock> pageBlocks;
+  private long openStartTime, parseDuration;
+
+  private static class ParseResult {
+    public final @Nullable ArrayList<PageBlock> blocks;
+    public final @Nullable Throwable error;
+    public final long duration;
+
+    public ParseResult (@Nullable ArrayList<PageBlock> blocks, @Nullable Throwable error, long duration) {
+      this.blocks = blocks;
+      this.error = error;
+      this.duration = duration;
+    }
+  }
+
+  @WorkerThread
+  private ParseResult parsePageBlocksSafely (TdApi.WebPageInstantView instantView) {
+    long startTime = SystemClock.uptimeMillis();
+    try {
+      return new ParseResult(parsePageBlocks(instantView), null, SystemClock.uptimeMillis() - startTime);
+    } catch (PageBlock.UnsupportedPageBlockException e) {
+      return new ParseResult(null, new UnsupportedOperationException(), SystemClock.uptimeMillis() - startTime);
+    } catch (Throwable t) {
+      return new ParseResult(null, t, SystemClock.uptimeMillis() - startTime);
+    }
+  }
+
+  /**
+   * Parses page blocks on a background thread and opens the controller once they are ready,
+   * so the opening transition does not wait for long articles to be parsed.
+   *
+   * @param after invoked once controller has been shown
+   * @param onError invoked instead of {@code after}, when Instant View cannot be displayed.
+   *                {@link UnsupportedOperationException} means that it contains unsupported blocks.
+   */
+  public void showAsync (@Nullable Runnable after, @NonNull RunnableData<Throwable> onError) {
+    final long startTime = SystemClock.uptimeMillis();
+    final TdApi.WebPageInstantView instantView = getArgumentsStrict().instantView;
+    Background.instance().post(() -> {
+      ParseResult result = parsePageBlocksSafely(instantView);
+      UI.post(() -> {
+        if (isDestroyed()) {
+          return;
+        }
+        if (result.error != null) {
+          onError.runWithData(result.error);
+          return;
+        }
+        this.preparedBlocks = result.blocks;
+        this.openStartTime = startTime;
+        this.parseDuration = result.duration;
+        try {
+          show();
+        } catch (Throwable t) {
+          onError.runWithData(t);
+          return;
+        }
+        if (after != null) {
+          after.run();
+        }
+      });
+    });
+  }
+
+  private void trackFirstPaint (int blockCount) {
+    if (openStartTime == 0) {
+      return;
+    }
+    final long startTime = openStartTime;
+    final long parseDuration = this.parseDuration;
+    openStartTime = 0;
+    recyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+      @Override
+      public boolean onPreDraw () {
+        recyclerView.getViewTreeObserver().removeOnPreDrawListener(this);
+        Log.i("Instant View first paint in %dms, parsing: %dms, blocks: %d, url: %s", SystemClock.uptimeMillis() - startTime, parseDuration, blockCount, getUrl());
+        return true;
+      }
+    });
+  }
+
+  /**
+   * Number of leading blocks that can be kept from the previous version of the page.
+   *
+   * Blocks are compared by their source, last matching block is not reused,
+   * as its margins depend on the following one, and lists are never split.
+   */
+  @WorkerThread
+  private static int findReusableBlockCount (List<PageBlock> oldBlocks, List<PageBlock> newBlocks) {
+    final int maxCount = Math.min(oldBlocks.size(), newBlocks.size());
+    int count = 0;
+    while (count < maxCount) {
+      PageBlock oldBlock = oldBlocks.get(count);
+      PageBlock newBlock = newBlocks.get(count);
+      if (oldBlock.getRelatedViewType() != newBlock.getRelatedViewType()) {
+        break;
+      }
+      if (!isSameSource(oldBlock.getOriginalBlock(), newBlock.getOriginalBlock())) {
+        break;
+      }
+      count++;
+    }
+    if (count == oldBlocks.size() && count == newBlocks.size()) {
+      return count;
+    }
+    if (count > 0) {
+      count--;
+    }
+    while (count > 0 && (
+      oldBlocks.get(count - 1).getListItem() != null ||
+      (newBlocks.get(count).getOriginalBlock() != null && newBlocks.get(count).getOriginalBlock() == newBlocks.get(count - 1).getOriginalBlock())
+    )) {
+      count--;
+    }
+    return count;
+  }
+
+  /**
+   * Checks whether both blocks are built from the same source without comparing their whole contents.
+   * Only blocks that usually open a page are compared, others are never considered the same.
+   */
+  private static boolean isSameSource (@Nullable TdApi.PageBlock a, @Nullable TdApi.PageBlock b) {
+    if (a == b) {
+      return true;
+    }
+    if (a == null || b == null || a.getConstructor() != b.getConstructor()) {
+      return false;
+    }
+    switch (a.getConstructor()) {
+      case TdApi.PageBlockTitle.CONSTRUCTOR:
+        return isSameText(((TdApi.PageBlockTitle) a).title, ((TdApi.PageBlockTitle) b).title);
+      case TdApi.PageBlockSubtitle.CONSTRUCTOR:
+        return isSameText(((TdApi.PageBlockSubtitle) a).subtitle, ((TdApi.PageBlockSubtitle) b).subtitle);
+      case TdApi.PageBlockKicker.CONSTRUCTOR:
+        return isSameText(((TdApi.PageBlockKicker) a).kicker, ((TdApi.PageBlockKicker) b).kicker);
+      case TdApi.PageBlockHeader.CONSTRUCTOR:
+        return isSameText(((TdApi.PageBlockHeader) a).header, ((TdApi.PageBlockHeader) b).header);
+      case TdApi.PageBlockSubheader.CONSTRUCTOR:
+        return isSameText(((TdApi.PageBlockSubheader) a).subheader, ((TdApi.PageBlockSubheader) b).subheader);
+      case TdApi.PageBlockParagraph.CONSTRUCTOR:
+        return isSameText(((TdApi.PageBlockParagraph) a).text, ((TdApi.PageBlockParagraph) b).text);
+      case TdApi.PageBlockPreformatted.CONSTRUCTOR:
+        return isSameText(((TdApi.PageBlockPreformatted) a).text, ((TdApi.PageBlockPreformatted) b).text);
+      case TdApi.PageBlockFooter.CONSTRUCTOR:
+        return isSameText(((TdApi.PageBlockFooter) a).footer, ((TdApi.PageBlockFooter) b).footer);
+      case TdApi.PageBlockAuthorDate.CONSTRUCTOR: {
+        TdApi.PageBlockAuthorDate oldAuthorDate = (TdApi.PageBlockAuthorDate) a;
+        TdApi.PageBlockAuthorDate newAuthorDate = (TdApi.PageBlockAuthorDate) b;
+        return oldAuthorDate.publishDate == newAuthorDate.publishDate && isSameText(oldAuthorDate.author, newAuthorDate.author);
+      }
+      case TdApi.PageBlockDivider.CONSTRUCTOR:
+        return true;
+      case TdApi.PageBlockCover.CONSTRUCTOR:
+        return isSameSource(((TdApi.PageBlockCover) a).cover, ((TdApi.PageBlockCover) b).cover);
+      case TdApi.PageBlockPhoto.CONSTRUCTOR: {
+        TdApi.PageBlockPhoto oldPhoto = (TdApi.PageBlockPhoto) a;
+        TdApi.PageBlockPhoto newPhoto = (TdApi.PageBlockPhoto) b;
+        if (oldPhoto.photo == null || newPhoto.photo == null) {
+          return oldPhoto.photo == newPhoto.photo && isSameCaption(oldPhoto.caption, newPhoto.caption);
+        }
+        if (oldPhoto.photo.sizes.length != newPhoto.photo.sizes.length) {
+          return false;
+        }
+        for (int i = 0; i < oldPhoto.photo.sizes.length; i++) {
+          if (oldPhoto.photo.sizes[i].photo.id != newPhoto.photo.sizes[i].photo.id) {
+            return false;
+          }
+        }
+        return StringUtils.equalsOrBothEmpty(oldPhoto.url, newPhoto.url) && isSameCaption(oldPhoto.caption, newPhoto.caption);
+      }
+      case TdApi.PageBlockAnimation.CONSTRUCTOR: {
+        TdApi.PageBlockAnimation oldAnimation = (TdApi.PageBlockAnimation) a;
+        TdApi.PageBlockAnimation newAnimation = (TdApi.PageBlockAnimation) b;
+        if (oldAnimation.animation == null || newAnimation.animation == null) {
+          return oldAnimation.animation == newAnimation.animation && isSameCaption(oldAnimation.caption, newAnimation.caption);
+        }
+        return oldAnimation.animation.animation.id == newAnimation.animation.animation.id && oldAnimation.needAutoplay == newAnimation.needAutoplay && isSameCaption(oldAnimation.caption, newAnimation.caption);
+      }
+      case TdApi.PageBlockVideo.CONSTRUCTOR: {
+        TdApi.PageBlockVideo oldVideo = (TdApi.PageBlockVideo) a;
+        TdApi.PageBlockVideo newVideo = (TdApi.PageBlockVideo) b;
+        if (oldVideo.video == null || newVideo.video == null) {
+          return oldVideo.video == newVideo.video && isSameCaption(oldVideo.caption, newVideo.caption);
+        }
+        return oldVideo.video.video.id == newVideo.video.video.id && isSameCaption(oldVideo.caption, newVideo.caption);
+      }
+    }
+    return false;
+  }
+
+  private static boolean isSameCaption (TdApi.PageBlockCaption a, TdApi.PageBlockCaption b) {
+    return a == b || (a != null && b != null && isSameText(a.text, b.text) && isSameText(a.credit, b.credit));
+  }
+
+  private static boolean isSameText (@Nullable TdApi.RichText a, @Nullable TdApi.RichText b) {
+    if (a == b) {
+      return true;
+    }
+    if (a == null || b == null || a.getConstructor() != b.getConstructor()) {
+      return false;
+    }
+    switch (a.getConstructor()) {
+      case TdApi.RichTextPlain.CONSTRUCTOR:
+        return StringUtils.equalsOrBothEmpty(((TdApi.RichTextPlain) a).text, ((TdApi.RichTextPlain) b).text);
+      case TdApi.RichTextBold.CONSTRUCTOR:
+        return isSameText(((TdApi.RichTextBold) a).text, ((TdApi.RichTextBold) b).text);
+      case TdApi.RichTextItalic.CONSTRUCTOR:
+        return isSameText(((TdApi.RichTextItalic) a).text, ((TdApi.RichTextItalic) b).text);
+      case TdApi.RichTextUnderline.CONSTRUCTOR:
+        return isSameText(((TdApi.RichTextUnderline) a).text, ((TdApi.RichTextUnderline) b).text);
+      case TdApi.RichTextStrikethrough.CONSTRUCTOR:
+        return isSameText(((TdApi.RichTextStrikethrough) a).text, ((TdApi.RichTextStrikethrough) b).text);
+      case TdApi.RichTextFixed.CONSTRUCTOR:
+        return isSameText(((TdApi.RichTextFixed) a).text, ((TdApi.RichTextFixed) b).text);
+      case TdApi.RichTextEmailAddress.CONSTRUCTOR:
+        return isSameText(((TdApi.RichTextEmailAddress) a).text, ((TdApi.RichTextEmailAddress) b).text);
+      case TdApi.RichTextUrl.CONSTRUCTOR: {
+        TdApi.RichTextUrl oldUrl = (TdApi.RichTextUrl) a;
+        TdApi.RichTextUrl newUrl = (TdApi.RichTextUrl) b;
+        return StringUtils.equalsOrBothEmpty(oldUrl.url, newUrl.url) && isSameText(oldUrl.text, newUrl.text);
+      }
+      case TdApi.RichTexts.CONSTRUCTOR: {
+        TdApi.RichText[] oldTexts = ((TdApi.RichTexts) a).texts;
+        TdApi.RichText[] newTexts = ((TdApi.RichTexts) b).texts;
+        if (oldTexts.length != newTexts.length) {
+          return false;
+        }
+        for (int i = 0; i < oldTexts.length; i++) {
+          if (!isSameText(oldTexts[i], newTexts[i])) {
+            return false;
+          }
+        }
+        return true;
+      }
+    }
+    // Not expected at the beginning of a page often enough to be worth comparing
+    return false;
+  }
+
+  private void replaceCells (TdApi.WebPageInstantView instantView, ArrayList<PageBlock> newBlocks, int reusableCount) {
+    if (!instantView.isFull) {
+      Log.e("TDLib error: instantView.isFull returned false on the second call");
+      return;
+    }
+    getArgumentsStrict().instantView = instantView;
+    final ArrayList<PageBlock> oldBlocks = this.pageBlocks;
+    if (adapter.getItems().size() != oldBlocks.size() || reusableCount == 0) {
+      // Some details blocks are expanded, or nothing changed at the beginning
+      buildCells(newBlocks, true);
+      return;
+    }
+    for (int i = reusableCount; i < newBlocks.size(); i++) {
+      newBlocks.get(i).prepare();
+    }
+    ArrayList<PageBlock> blocks = new ArrayList<>(newBlocks.size());
+    blocks.addAll(oldBlocks.subList(0, reusableCount));
+    blocks.addAll(newBlocks.subList(reusableCount, newBlocks.size()));
+    this.pageBlocks = blocks;
+
+    final int removedCount = oldBlocks.size() - reusableCount;
+    final int addedCount = newBlocks.size() - reusableCount;
+    if (removedCount > 0) {
+      adapter.removeRange(reusableCount, removedCount);
+    }
+    if (addedCount > 0) {
+      ListItem[] items = new ListItem[addedCount];
+      for (int i = 0; i < addedCount; i++) {
+        PageBlock block = newBlocks.get(reusableCount + i);
+        items[i] = new ListItem(block.getRelatedViewType()).setData(block);
+      }
+      adapter.addItems(reusableCount, items);
+    }
+    rebuildMediaBlocks();
+    recyclerView.invalidateItemDecorations();
+    String anchorLink = getArgumentsStrict().anchorLink;
+    if (!StringUtils.isEmpty(anchorLink)) {
+      scrollToAnchor(anchorLink, false);
+    }
+  }
+
   private void buildCells (ArrayList<PageBlock> blocks, boolean isReplace) {
     Args args = getArgumentsStrict();
     final TdApi.WebPageInstantView instantView = args.instantView;
@@ -474,6 +774,7 @@ public class InstantViewController extends ViewController<InstantViewController.
     ArrayList<ListItem> items = new ArrayList<>(blocks.size());
     ArrayList<PageBlockMedia> mediaBlocks = new ArrayList<>();
     for (PageBlock block : blocks) {
+      block.prepare();
       if (block instanceof PageBlockMedia && ((PageBlockMedia) block).bindToList(this, getDisplayUrl(), mediaBlocks)) {
         mediaBlocks.add((PageBlockMedia) block);
       }
@@ -481,6 +782,7 @@ public class InstantViewController extends ViewController<InstantViewController.
     }
 
     this.mediaBlocks = mediaBlocks;
+    this.pageBlocks = blocks;
     // recyclerView.setItemAnimator(null);
     adapter.setItems(items, false);
     recyclerView.invalidateItemDecorations();
@@ -490,24 +792,34 @@ public class InstantViewController extends ViewController<InstantViewController.
     // recyclerView.setItemAnimator(new CustomItemAnimator(Anim.DECELERATE_INTERPOLATOR, 180l));
 
     if (!isReplace) {
+      trackFirstPaint(blocks.size());
       tdlib.send(new TdApi.GetWebPageInstantView(getUrl(), true), (webPageInstantView, error) -> {
         if (error != null) {
           UI.showError(error);
+        } else if (!TD.hasInstantView(webPageInstantView.version)) {
+          runOnUiThreadOptional(() -> {
+            UI.showToast(R.string.InstantViewUnsupported, Toast.LENGTH_SHORT);
+            UI.openUrl(getUrl());
+          });
         } else {
           runOnUiThreadOptional(() -> {
-            if (!TD.hasInstantView(instantView.version)) {
-              UI.showToast(R.string.InstantViewUnsupported, Toast.LENGTH_SHORT);
-              UI.openUrl(getUrl());
-            } else {
-              ArrayList<PageBlock> pageBlocks;
-              try {
-                pageBlocks = parsePageBlocks(instantView);
-              } catch (PageBlock.UnsupportedPageBlockException ignored) {
+            final ArrayList<PageBlock> oldBlocks = this.pageBlocks;
+            Background.instance().post(() -> {
+              ParseResult result = parsePageBlocksSafely(webPageInstantView);
+              if (result.blocks == null) {
                 return;
               }
-              getArgumentsStrict().instantView = instantView;
-              buildCells(pageBlocks, true);
-            }
+              int reusableCount = findReusableBlockCount(oldBlocks, result.blocks);
+              runOnUiThreadOptional(() -> {
+                if (this.pageBlocks == oldBlocks) {
+                  try {
+                    replaceCells(webPageInstantView, result.blocks, reusableCount);
+                  } catch (Throwable t) {
+                    Log.e("Unable to display full Instant View, url:%s", t, getUrl());
+                  }
+                }
+              });
+            });
           });
         }
       });
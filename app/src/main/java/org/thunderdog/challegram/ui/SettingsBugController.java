@@ -37,7 +37,9 @@ import org.thunderdog.challegram.component.base.SettingView;
 import org.thunderdog.challegram.config.Config;
 import org.thunderdog.challegram.core.Background;
 import org.thunderdog.challegram.core.Lang;
+import org.thunderdog.challegram.data.BubblePathCache;
 import org.thunderdog.challegram.data.TD;
+import org.thunderdog.challegram.filegen.TdlibFileGenerationManager;
 import org.thunderdog.challegram.navigation.BackHeaderButton;
 import org.thunderdog.challegram.navigation.DoubleHeaderView;
 import org.thunderdog.challegram.navigation.SettingsWrap;
@@ -60,6 +62,7 @@ import org.thunderdog.challegram.unsorted.Settings;
 import org.thunderdog.challegram.unsorted.Test;
 import org.thunderdog.challegram.util.AppUpdater;
 import org.thunderdog.challegram.util.Crash;
+import org.thunderdog.challegram.util.PerfTrace;
 import org.thunderdog.challegram.util.StringList;
 import org.thunderdog.challegram.v.CustomRecyclerView;
 import org.thunderdog.challegram.voip.VoIP;
@@ -68,11 +71,13 @@ import org.thunderdog.challegram.widget.BetterChatView;
 import org.thunderdog.challegram.widget.MaterialEditTextGroup;
 
 import java.io.File;
+import java.io.IOException;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -495,6 +500,8 @@ public class SettingsBugController extends RecyclerViewController<SettingsBugCon
           view.getToggler().setRadioEnabled(Settings.instance().forceTcpInCalls(), isUpdate);
         } else if (itemId == R.id.btn_secret_forceTdlibRestarts) {
           view.getToggler().setRadioEnabled(Settings.instance().forceTdlibRestart(), isUpdate);
+        } else if (itemId == R.id.btn_secret_perfTrace) {
+          view.getToggler().setRadioEnabled(PerfTrace.isEnabled(), isUpdate);
         } else if (itemId == R.id.btn_switchRtl) {
           view.getToggler().setRadioEnabled(Lang.rtl(), isUpdate);
         } else if (itemId == R.id.btn_experiment) {
@@ -580,6 +587,14 @@ public class SettingsBugController extends RecyclerViewController<SettingsBugCon
                   b.append("es");
                 }
               }
+              long droppedCount = Log.getDroppedRecordCount();
+              if (droppedCount > 0) {
+                if (b.length() > 0) {
+                  b.append(", ");
+                }
+                b.append(droppedCount);
+                b.append(" dropped");
+              }
               view.setData(b.toString());
             }
           } else {
@@ -620,6 +635,9 @@ public class SettingsBugController extends RecyclerViewController<SettingsBugCon
           }
         } else if (itemId == R.id.btn_tdlib_logSize) {
           view.setData(Strings.buildSize(Settings.instance().getLogSettings().getLogMaxFileSize()));
+        } else if (itemId == R.id.btn_secret_playerPrefetchBudget) {
+          long budget = Settings.instance().getPlayerPrefetchBudget();
+          view.setData(budget > 0 ? Strings.buildSize(budget) : "Disabled");
         } else if (itemId == R.id.btn_tdlib_viewLogs) {
           view.setData(Strings.buildSize(logSize[0]));
         } else if (itemId == R.id.btn_tdlib_viewLogsOld) {
@@ -766,6 +784,14 @@ public class SettingsBugController extends RecyclerViewController<SettingsBugCon
           items.add(new ListItem(ListItem.TYPE_SETTING, R.id.btn_secret_tdlibDatabaseStats, 0, "TDLib database statistics", false));
           items.add(new ListItem(ListItem.TYPE_SEPARATOR_FULL));
           items.add(new ListItem(ListItem.TYPE_SETTING, R.id.btn_secret_databaseStats, 0, "Other internal statistics", false));
+          items.add(new ListItem(ListItem.TYPE_SEPARATOR_FULL));
+          items.add(new ListItem(ListItem.TYPE_SETTING, R.id.btn_secret_themeColorsBenchmark, 0, "Benchmark theme color lookups", false));
+          items.add(new ListItem(ListItem.TYPE_SEPARATOR_FULL));
+          items.add(new ListItem(ListItem.TYPE_RADIO_SETTING, R.id.btn_secret_perfTrace, 0, "Record performance trace", PerfTrace.isEnabled()));
+          items.add(new ListItem(ListItem.TYPE_SEPARATOR_FULL));
+          items.add(new ListItem(ListItem.TYPE_SETTING, R.id.btn_secret_perfTraceExport, 0, "Export performance trace (Chrome JSON)", false));
+          items.add(new ListItem(ListItem.TYPE_SEPARATOR_FULL));
+          items.add(new ListItem(ListItem.TYPE_VALUED_SETTING_COMPACT, R.id.btn_secret_playerPrefetchBudget, 0, "Player prefetch budget", false));
 
           if (testerLevel >= Tdlib.TesterLevel.ADMIN) {
             items.add(new ListItem(ListItem.TYPE_SEPARATOR_FULL));
@@ -1394,10 +1420,65 @@ public class SettingsBugController extends RecyclerViewController<SettingsBugCon
         });
       });
     } else if (viewId == R.id.btn_secret_databaseStats) {
-      String stats = Settings.instance().pmc().getProperty("leveldb.stats") + "\n\n" + "Memory usage: " + Settings.instance().pmc().getProperty("leveldb.approximate-memory-usage");
+      StringBuilder b = new StringBuilder("App database:\n")
+        .append(Settings.instance().pmc().getProperty("leveldb.stats"))
+        .append("\n\n").append("Memory usage: ").append(Settings.instance().pmc().getProperty("leveldb.approximate-memory-usage"));
+      b.append("\n\n").append("ViewMessages: ").append(tdlib.messageViewer().getViewRequestStats());
+      b.append("\n\n").append("Chat actions: ").append(tdlib.status().getStats());
+      b.append("\n\n").append("Bubble paths: ").append(BubblePathCache.getStats());
+      Map<String, TdlibFileGenerationManager.GenerationStats> generationStats = tdlib.filegen().getGenerationStats();
+      if (!generationStats.isEmpty()) {
+        b.append("\n\n").append("File generation:");
+        for (Map.Entry<String, TdlibFileGenerationManager.GenerationStats> entry : generationStats.entrySet()) {
+          b.append("\n").append(entry.getKey()).append(": ").append(entry.getValue());
+        }
+      }
       TextController c = new TextController(context, tdlib);
-      c.setArguments(TextController.Arguments.fromRawText("App Database Stats", stats, "text/plain"));
+      c.setArguments(TextController.Arguments.fromRawText("Internal Stats", b.toString(), "text/plain"));
       navigateTo(c);
+    } else if (viewId == R.id.btn_secret_themeColorsBenchmark) {
+      UI.showToast("Running benchmark, please wait...", Toast.LENGTH_SHORT);
+      Background.instance().post(() -> {
+        String results = Test.benchmarkThemeColors();
+        tdlib.ui().post(() -> {
+          if (!isDestroyed()) {
+            TextController c = new TextController(context, tdlib);
+            c.setArguments(TextController.Arguments.fromRawText("Theme Colors Benchmark", results, "text/plain"));
+            navigateTo(c);
+          }
+        });
+      });
+    } else if (viewId == R.id.btn_secret_playerPrefetchBudget) {
+      openInputAlert("Player Prefetch Budget", "Amount of bytes, 0 to disable", R.string.Done, R.string.Cancel, String.valueOf(Settings.instance().getPlayerPrefetchBudget()), (view, value) -> {
+        if (!StringUtils.isNumeric(value)) {
+          return false;
+        }
+        Settings.instance().setPlayerPrefetchBudget(StringUtils.parseLong(value));
+        adapter.updateValuedSettingById(R.id.btn_secret_playerPrefetchBudget);
+        return true;
+      }, true);
+    } else if (viewId == R.id.btn_secret_perfTrace) {
+      if (adapter.toggleView(v)) {
+        PerfTrace.start();
+      } else {
+        PerfTrace.stop();
+      }
+    } else if (viewId == R.id.btn_secret_perfTraceExport) {
+      if (PerfTrace.getThreadCount() == 0) {
+        UI.showToast("Performance trace is empty", Toast.LENGTH_SHORT);
+      } else {
+        Background.instance().post(() -> {
+          File traceFile = new File(UI.getAppContext().getCacheDir(), "tgx_trace_" + System.currentTimeMillis() + ".json");
+          try {
+            PerfTrace.exportChromeTrace(traceFile);
+          } catch (IOException e) {
+            Log.e("Unable to export performance trace", e);
+            UI.showToast("Unable to export performance trace", Toast.LENGTH_SHORT);
+            return;
+          }
+          tdlib.ui().post(() -> TD.saveToDownloads(traceFile, "application/json"));
+        });
+      }
     } else if (viewId == R.id.btn_secret_tdlibDatabaseStats) {
       UI.showToast("Calculating. Please wait...", Toast.LENGTH_SHORT);
       tdlib.client().send(new TdApi.GetDatabaseStatistics(), result -> {
@@ -50,6 +50,7 @@ import org.thunderdog.challegram.theme.ThemeCustom;
 import org.thunderdog.challegram.theme.ThemeDelegate;
 import org.thunderdog.challegram.theme.ThemeId;
 import org.thunderdog.challegram.theme.ThemeInfo;
+import org.thunderdog.challegram.theme.ThemeLoader;
 import org.thunderdog.challegram.theme.ThemeManager;
 import org.thunderdog.challegram.tool.Fonts;
 import org.thunderdog.challegram.tool.Strings;
@@ -422,6 +423,7 @@ public class SettingsThemeController extends RecyclerViewController<SettingsThem
 
       addThemeGroup(items, installedThemes, false);
       addThemeGroup(items, myThemes, true);
+      ThemeLoader.preloadCustomThemes(customThemes);
 
       lightSensorAvailable = false;
       maxSensorValue = SensorManager.LIGHT_CLOUDY / 5;
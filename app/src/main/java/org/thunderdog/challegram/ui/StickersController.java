@@ -26,7 +26,6 @@ import androidx.recyclerview.widget.ItemTouchHelper;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
-import org.drinkless.tdlib.Client;
 import org.drinkless.tdlib.TdApi;
 import org.thunderdog.challegram.R;
 import org.thunderdog.challegram.component.attach.CustomItemAnimator;
@@ -1023,32 +1022,23 @@ public class StickersController extends RecyclerViewController<StickersControlle
         setApplyingChanges(true);
         final long[] setIds = futureItems.get();
         final int addedCount = futureItems.size();
-        final int[] index = new int[2];
-        tdlib.client().send(new TdApi.GetStickerSet(setIds[index[0]]), new Client.ResultHandler() {
-          @Override
-          public void onResult (TdApi.Object object) {
-            if (object.getConstructor() == TdApi.StickerSet.CONSTRUCTOR) {
-              final TGStickerSetInfo stickerSet = new TGStickerSetInfo(tdlib, (TdApi.StickerSet) object);
-              final int insertIndex = index[1]++;
-
-              tdlib.ui().post(() -> {
-                if (!context.isDestroyed()) {
-                  addStickerSet(stickerSet, insertIndex);
-                }
-              });
-            }
+        final int[] insertIndex = new int[1];
+        tdlib.stickerSets().getStickerSets(setIds, addedCount, (rawStickerSet, error) -> {
+          if (rawStickerSet != null) {
+            final TGStickerSetInfo stickerSet = new TGStickerSetInfo(tdlib, rawStickerSet);
+            final int index = insertIndex[0]++;
 
-            if (++index[0] < addedCount) {
-              tdlib.client().send(new TdApi.GetStickerSet(setIds[index[0]]), this);
-            } else {
-              tdlib.ui().post(() -> {
-                if (!context.isDestroyed()) {
-                  setApplyingChanges(false);
-                }
-              });
-            }
+            tdlib.ui().post(() -> {
+              if (!context.isDestroyed()) {
+                addStickerSet(stickerSet, index);
+              }
+            });
           }
-        });
+        }, () -> tdlib.ui().post(() -> {
+          if (!context.isDestroyed()) {
+            setApplyingChanges(false);
+          }
+        }));
       }
     }
 
@@ -456,7 +456,7 @@ public class StickersListController extends ViewController<StickersListControlle
     buildCells(false);
     if (stickerSections.isEmpty()) {
       if (stickerSetInfoToLoad != null) {
-        tdlib.client().send(new TdApi.GetStickerSet(stickerSetInfoToLoad.id), this);
+        tdlib.stickerSets().getStickerSet(stickerSetInfoToLoad.id, (stickerSet, error) -> onResult(stickerSet != null ? stickerSet : error));
       } else if (stickerSetIdsToLoad != null) {
         startLoadStickerSets();
       }
@@ -637,7 +637,7 @@ public class StickersListController extends ViewController<StickersListControlle
     final long[] currentStickerSetIds = stickerSetIdsToLoad;
     final TdApi.StickerSet[] loadSetsResult = new TdApi.StickerSet[stickerSetIdsToLoad.length];
     for (long id : stickerSetIdsToLoad) {
-      tdlib.send(new TdApi.GetStickerSet(id), (stickerSet, error) -> UI.post(() -> {
+      tdlib.stickerSets().getStickerSet(id, (stickerSet, error) -> UI.post(() -> {
         if (currentKey != loadSetsKey || isDestroyed()) return;
         if (stickerSet != null) {
           int index = ArrayUtils.indexOf(currentStickerSetIds, stickerSet.id);
@@ -440,7 +440,7 @@ public class StickersTrendingController extends ViewController<Void> implements
     }
 
     loadingStickerSets.put(stickerSetId, true);
-    tdlib.client().send(new TdApi.GetStickerSet(stickerSetId), this);
+    tdlib.stickerSets().getStickerSet(stickerSetId, (stickerSet, error) -> onResult(stickerSet != null ? stickerSet : error));
   }
 
   private int indexOfTrendingStickerSetById (long setId) {
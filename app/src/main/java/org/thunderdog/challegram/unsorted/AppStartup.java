@@ -0,0 +1,168 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026
+ */
+package org.thunderdog.challegram.unsorted;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import org.thunderdog.challegram.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Dependency graph of application launch stages.
+ *
+ * Critical stages run right away on the calling thread, as they are needed to show the first frame.
+ * Background stages run on a small pool as soon as all their dependencies are completed,
+ * in parallel with critical stages and with each other.
+ *
+ * Background stages must only warm up state that is otherwise initialized lazily on first access,
+ * so their failure or late completion never affects correctness.
+ */
+final class AppStartup {
+  private static final int THREAD_COUNT = 2;
+
+  static final class Stage {
+    private final String name;
+    private final Runnable act;
+    private final boolean isCritical;
+    private final List<Stage> dependents = new ArrayList<>();
+    private int pendingDependencyCount;
+    private boolean isCompleted;
+    private long startTime, endTime;
+
+    private Stage (String name, Runnable act, boolean isCritical) {
+      this.name = name;
+      this.act = act;
+      this.isCritical = isCritical;
+    }
+  }
+
+  private final long startTime = SystemClock.uptimeMillis();
+  private ThreadPoolExecutor executor;
+
+  private boolean isMeasureKnown, needMeasure;
+  private final List<Stage> unreportedStages = new ArrayList<>();
+
+  /**
+   * Enables per-stage timings in the log. Launch speed setting can't be read before settings are loaded,
+   * so stages completed before this call are reported once it's made.
+   */
+  synchronized void setNeedMeasure (boolean needMeasure) {
+    this.isMeasureKnown = true;
+    this.needMeasure = needMeasure;
+    if (needMeasure) {
+      for (Stage stage : unreportedStages) {
+        report(stage);
+      }
+    }
+    unreportedStages.clear();
+  }
+
+  private void report (Stage stage) {
+    Log.i("==== %s %s FINISHED IN %dms (at %dms) ===", stage.isCritical ? "STAGE" : "BACKGROUND STAGE", stage.name, stage.endTime - stage.startTime, stage.endTime - startTime);
+  }
+
+  /**
+   * Runs stage on the current thread, waiting for its background dependencies first.
+   * Exceptions are thrown to the caller.
+   */
+  Stage runCritical (@NonNull String name, @NonNull Runnable act, Stage... dependencies) {
+    Stage stage = new Stage(name, act, true);
+    synchronized (this) {
+      for (Stage dependency : dependencies) {
+        while (!dependency.isCompleted) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + dependency.name, e);
+          }
+        }
+      }
+    }
+    perform(stage);
+    return stage;
+  }
+
+  /**
+   * Schedules stage to run on a background thread once all dependencies are completed.
+   */
+  Stage runInBackground (@NonNull String name, @NonNull Runnable act, Stage... dependencies) {
+    Stage stage = new Stage(name, act, false);
+    synchronized (this) {
+      for (Stage dependency : dependencies) {
+        if (!dependency.isCompleted) {
+          dependency.dependents.add(stage);
+          stage.pendingDependencyCount++;
+        }
+      }
+      if (stage.pendingDependencyCount == 0) {
+        submit(stage);
+      }
+    }
+    return stage;
+  }
+
+  private void submit (Stage stage) {
+    if (executor == null) {
+      // Threads die once launch is over
+      executor = new ThreadPoolExecutor(THREAD_COUNT, THREAD_COUNT, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> new Thread(r, "AppStartup"));
+      executor.allowCoreThreadTimeOut(true);
+    }
+    executor.execute(() -> {
+      try {
+        perform(stage);
+      } catch (Throwable t) {
+        // Whatever stage failed to prepare will be initialized on first access
+        Log.e("Launch stage %s failed", t, stage.name);
+        onCompleted(stage);
+      }
+    });
+  }
+
+  private void perform (Stage stage) {
+    stage.startTime = SystemClock.uptimeMillis();
+    stage.act.run();
+    stage.endTime = SystemClock.uptimeMillis();
+    onCompleted(stage);
+  }
+
+  private synchronized void onCompleted (Stage stage) {
+    if (stage.isCompleted) {
+      return;
+    }
+    stage.isCompleted = true;
+    if (stage.endTime != 0) {
+      if (!isMeasureKnown) {
+        unreportedStages.add(stage);
+      } else if (needMeasure) {
+        report(stage);
+      }
+    }
+    for (Stage dependent : stage.dependents) {
+      if (--dependent.pendingDependencyCount == 0) {
+        submit(dependent);
+      }
+    }
+    stage.dependents.clear();
+    notifyAll();
+  }
+}
@@ -24,8 +24,12 @@ import org.drinkmore.Tracer;
 import org.thunderdog.challegram.BuildConfig;
 import org.thunderdog.challegram.Log;
 import org.thunderdog.challegram.N;
+import org.thunderdog.challegram.core.Lang;
+import org.thunderdog.challegram.emoji.Emoji;
 import org.thunderdog.challegram.telegram.TdlibManager;
 import org.thunderdog.challegram.telegram.TdlibNotificationUtils;
+import org.thunderdog.challegram.theme.ThemeManager;
+import org.thunderdog.challegram.tool.EmojiData;
 import org.thunderdog.challegram.util.Crash;
 
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -63,9 +67,17 @@ public class AppState {
 
     long startStep = SystemClock.uptimeMillis();
 
-    N.init();
-    Settings.instance();
-    TdlibNotificationUtils.initialize();
+    // Only what the first frame needs runs on the current thread,
+    // everything else is prepared in parallel and is otherwise initialized on first access.
+    AppStartup startup = new AppStartup();
+    AppStartup.Stage emojiData = startup.runInBackground("EMOJI_DATA", EmojiData::getTotalDataCount);
+    AppStartup.Stage nativeLibraries = startup.runCritical("NATIVE", N::init);
+    startup.runInBackground("PUSH", TdlibNotificationUtils::initialize, nativeLibraries);
+    AppStartup.Stage settings = startup.runCritical("SETTINGS", Settings::instance, nativeLibraries);
+    startup.runInBackground("EMOJI", Emoji::instance, settings, emojiData);
+
+    boolean needMeasure = Log.needMeasureLaunchSpeed();
+    startup.setNeedMeasure(needMeasure);
 
     if (BuildConfig.DEBUG || BuildConfig.EXPERIMENTAL) {
       Thread.UncaughtExceptionHandler defaultUncaughtExceptionHandler = Thread.getDefaultUncaughtExceptionHandler();
@@ -91,8 +103,6 @@ public class AppState {
       });
     }
 
-    boolean needMeasure = Log.needMeasureLaunchSpeed();
-
     try {
       if (BuildConfig.DEBUG)
         Test.executeBeforeAppInit();
@@ -100,7 +110,9 @@ public class AppState {
         Log.i("==== INITIALIZATION STARTED IN %dMS ===\nManufacturer: %s, Product: %s", SystemClock.uptimeMillis() - startStep, Build.MANUFACTURER, Build.PRODUCT);
         startStep = SystemClock.uptimeMillis();
       }
-      TdlibManager.instance();
+      AppStartup.Stage tdlibManager = startup.runCritical("TDLIB_MANAGER", TdlibManager::instance, settings);
+      startup.runInBackground("THEME", ThemeManager::preloadCurrentTheme, tdlibManager);
+      startup.runInBackground("LANGUAGE_PACK", Lang::preloadLanguageSettings, tdlibManager);
       if (needMeasure) {
         Log.i("==== INITIALIZATION FINISHED IN %dms ===", SystemClock.uptimeMillis() - startStep);
       }
@@ -300,6 +300,7 @@ public class Settings {
   private static final String KEY_UTILITY_FEATURES = "debug_features";
   private static final String KEY_COLOR_FORMAT = "settings_color_format";
   private static final String KEY_PREFERRED_PLAYBACK_MODE = "preferred_audio_mode";
+  private static final String KEY_PLAYER_PREFETCH_BUDGET = "player_prefetch_budget";
   public static final String KEY_LOG_SETTINGS = "log_settings";
   public static final String KEY_LOG_LEVEL = "log_level";
   public static final String KEY_LOG_TAGS = "log_tags";
@@ -790,6 +791,7 @@ public class Settings {
 
   @Nullable
   private Integer _preferredAudioPlaybackMode;
+  private Long _playerPrefetchBudget;
 
   public static final float MAX_NIGHT_LUX_DEFAULT = 1.5f;
 
@@ -2692,6 +2694,26 @@ public class Settings {
     return _preferredAudioPlaybackMode;
   }
 
+  public static final long DEFAULT_PLAYER_PREFETCH_BUDGET = ByteUnit.MIB.toBytes(10);
+
+  /**
+   * @return Maximum amount of bytes of upcoming tracks downloaded ahead of playback, 0 when prefetch is disabled.
+   */
+  public long getPlayerPrefetchBudget () {
+    if (_playerPrefetchBudget == null)
+      _playerPrefetchBudget = pmc.getLong(KEY_PLAYER_PREFETCH_BUDGET, DEFAULT_PLAYER_PREFETCH_BUDGET);
+    return _playerPrefetchBudget;
+  }
+
+  public void setPlayerPrefetchBudget (long bytes) {
+    _playerPrefetchBudget = bytes;
+    if (bytes == DEFAULT_PLAYER_PREFETCH_BUDGET) {
+      pmc.remove(KEY_PLAYER_PREFETCH_BUDGET);
+    } else {
+      pmc.putLong(KEY_PLAYER_PREFETCH_BUDGET, bytes);
+    }
+  }
+
   public boolean needSaveEditedMediaToGallery () {
     return checkSetting(FLAG_OTHER_SAVE_TO_GALLERY);
   }
@@ -24,6 +24,12 @@ import org.thunderdog.challegram.Log;
 import org.thunderdog.challegram.core.Lang;
 import org.thunderdog.challegram.navigation.ViewController;
 import org.thunderdog.challegram.telegram.Tdlib;
+import org.thunderdog.challegram.theme.PropertyId;
+import org.thunderdog.challegram.theme.ThemeColors;
+import org.thunderdog.challegram.theme.ThemeCustom;
+import org.thunderdog.challegram.theme.ThemeDelegate;
+import org.thunderdog.challegram.theme.ThemeId;
+import org.thunderdog.challegram.theme.ThemeSet;
 import org.thunderdog.challegram.tool.UI;
 import org.thunderdog.challegram.util.OptionDelegate;
 import org.thunderdog.challegram.util.StringList;
@@ -31,6 +37,7 @@ import org.thunderdog.challegram.util.StringList;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.util.Arrays;
+import java.util.Locale;
 import java.util.Random;
 import java.util.UUID;
 
@@ -267,6 +274,70 @@ public class Test {
     assertEquals(xs, output.readRaw());
   }
 
+  private static final int THEME_BENCHMARK_ITERATIONS = 2000;
+
+  /**
+   * Compares color lookups in the generated builtin theme, custom theme without resolved color table and custom theme with it.
+   *
+   * @return Human-readable results, in nanoseconds per lookup.
+   */
+  public static String benchmarkThemeColors () {
+    ThemeDelegate builtinTheme = ThemeSet.getBuiltinTheme(ThemeId.BLUE);
+    ThemeCustom customTheme = new ThemeCustom(ThemeId.CUSTOM);
+    customTheme.setProperty(PropertyId.PARENT_THEME, (float) ThemeId.BLUE);
+    // Override every 4th color, so most lookups go through fallbacks and parent theme
+    for (int colorId = 1; colorId <= ThemeColors.COUNT; colorId += 4) {
+      customTheme.setColor(colorId, builtinTheme.getColor(colorId) ^ 0x00ffffff);
+    }
+    for (int colorId = 1; colorId <= ThemeColors.COUNT; colorId++) {
+      assertEquals(customTheme.getColorUncached(colorId), customTheme.getColor(colorId));
+    }
+
+    StringBuilder b = new StringBuilder();
+    for (int pass = 0; pass < 2; pass++) {
+      // First pass is a warm-up
+      long builtinNanos = 0, uncachedNanos = 0, tableNanos = 0;
+      int checksum = 0;
+
+      long startNanos = SystemClock.elapsedRealtimeNanos();
+      for (int i = 0; i < THEME_BENCHMARK_ITERATIONS; i++) {
+        for (int colorId = 1; colorId <= ThemeColors.COUNT; colorId++) {
+          checksum += builtinTheme.getColor(colorId);
+        }
+      }
+      builtinNanos += SystemClock.elapsedRealtimeNanos() - startNanos;
+
+      startNanos = SystemClock.elapsedRealtimeNanos();
+      for (int i = 0; i < THEME_BENCHMARK_ITERATIONS; i++) {
+        for (int colorId = 1; colorId <= ThemeColors.COUNT; colorId++) {
+          checksum += customTheme.getColorUncached(colorId);
+        }
+      }
+      uncachedNanos += SystemClock.elapsedRealtimeNanos() - startNanos;
+
+      startNanos = SystemClock.elapsedRealtimeNanos();
+      for (int i = 0; i < THEME_BENCHMARK_ITERATIONS; i++) {
+        for (int colorId = 1; colorId <= ThemeColors.COUNT; colorId++) {
+          checksum += customTheme.getColor(colorId);
+        }
+      }
+      tableNanos += SystemClock.elapsedRealtimeNanos() - startNanos;
+
+      if (pass > 0) {
+        double lookupCount = (double) THEME_BENCHMARK_ITERATIONS * ThemeColors.COUNT;
+        b.append(String.format(Locale.US,
+          "Colors: %d, iterations: %d\n\nBuiltin theme: %.1fns\nCustom theme, uncached: %.1fns\nCustom theme, table: %.1fns\n\nChecksum: %d",
+          ThemeColors.COUNT, THEME_BENCHMARK_ITERATIONS,
+          builtinNanos / lookupCount,
+          uncachedNanos / lookupCount,
+          tableNanos / lookupCount,
+          checksum
+        ));
+      }
+    }
+    return b.toString();
+  }
+
   public static File getTestDBDir () {
     File pmcDir = new File(UI.getAppContext().getFilesDir(), "pmc");
     if (!FileUtils.createDirectory(pmcDir)) {
@@ -0,0 +1,103 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026
+ */
+package org.thunderdog.challegram.util;
+
+import android.view.Choreographer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.UiThread;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures intervals between frames on the UI thread while it is running.
+ */
+public final class FrameStats implements Choreographer.FrameCallback {
+  private static final int MAX_FRAME_COUNT = 1024;
+  private static final long JANK_THRESHOLD_NANOS = TimeUnit.MILLISECONDS.toNanos(25);
+
+  private final long[] frameDurations = new long[MAX_FRAME_COUNT];
+  private int frameCount;
+  private long totalFrameCount, jankFrameCount, maxFrameDuration;
+  private long lastFrameTimeNanos;
+  private boolean isRunning;
+
+  public boolean isRunning () {
+    return isRunning;
+  }
+
+  @UiThread
+  public void start () {
+    if (isRunning) {
+      return;
+    }
+    isRunning = true;
+    frameCount = 0;
+    totalFrameCount = jankFrameCount = maxFrameDuration = 0;
+    lastFrameTimeNanos = 0;
+    Choreographer.getInstance().postFrameCallback(this);
+  }
+
+  @Override
+  public void doFrame (long frameTimeNanos) {
+    if (!isRunning) {
+      return;
+    }
+    if (lastFrameTimeNanos != 0) {
+      long duration = frameTimeNanos - lastFrameTimeNanos;
+      // Keeping the most recent frames only, older ones are still counted in totals
+      frameDurations[(int) (totalFrameCount % MAX_FRAME_COUNT)] = duration;
+      frameCount = Math.min(frameCount + 1, MAX_FRAME_COUNT);
+      totalFrameCount++;
+      if (duration > JANK_THRESHOLD_NANOS) {
+        jankFrameCount++;
+      }
+      maxFrameDuration = Math.max(maxFrameDuration, duration);
+    }
+    lastFrameTimeNanos = frameTimeNanos;
+    Choreographer.getInstance().postFrameCallback(this);
+  }
+
+  /**
+   * Stops collecting and returns human-readable summary of collected frames.
+   */
+  @UiThread
+  @NonNull
+  public String stop () {
+    if (isRunning) {
+      isRunning = false;
+      Choreographer.getInstance().removeFrameCallback(this);
+    }
+    if (frameCount == 0) {
+      return "no frames";
+    }
+    long[] durations = Arrays.copyOf(frameDurations, frameCount);
+    Arrays.sort(durations);
+    return String.format(Locale.US, "frames:%d jank:%d p50:%.1fms p90:%.1fms p99:%.1fms max:%.1fms",
+      totalFrameCount,
+      jankFrameCount,
+      toMillis(durations[frameCount / 2]),
+      toMillis(durations[(int) (frameCount * .9f)]),
+      toMillis(durations[(int) (frameCount * .99f)]),
+      toMillis(maxFrameDuration)
+    );
+  }
+
+  private static float toMillis (long nanos) {
+    return nanos / 1_000_000f;
+  }
+}
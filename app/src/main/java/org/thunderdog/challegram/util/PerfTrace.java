@@ -0,0 +1,266 @@
+/*
+ * This file is a part of Telegram X
+ * Copyright © 2014 (tgx-android@pm.me)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <https://www.gnu.org/licenses/>.
+ *
+ * File created on 19/10/2026
+ */
+package org.thunderdog.challegram.util;
+
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Low-overhead recorder of performance traces.
+ *
+ * Spans ({@link #begin} / {@link #end}) and counters ({@link #counter}) are written to a ring buffer
+ * owned by the calling thread, so recording does not contend between threads,
+ * and only the most recent {@link #MAX_EVENT_COUNT} events of each thread are kept.
+ * When tracing is not started, every call returns after reading a single volatile field.
+ *
+ * Recorded events can be exported in Chrome trace event format
+ * and opened in {@code chrome://tracing} or Perfetto UI.
+ *
+ * Span names must be constants or otherwise cheap to obtain, as they are stored by reference.
+ */
+public final class PerfTrace {
+  private static final int MAX_EVENT_COUNT = 8192;
+
+  private static final byte TYPE_BEGIN = 0;
+  private static final byte TYPE_END = 1;
+  private static final byte TYPE_COUNTER = 2;
+
+  private static final class Buffer {
+    private final long threadId;
+    private final String threadName;
+
+    private int generation = -1;
+    private long[] timestamps;
+    private long[] values;
+    private byte[] types;
+    private String[] names;
+    private int eventCount;
+    private long totalEventCount;
+
+    Buffer (Thread thread) {
+      this.threadId = thread.getId();
+      this.threadName = thread.getName();
+    }
+
+    synchronized void add (int generation, byte type, String name, long value) {
+      if (this.generation != generation) {
+        if (!register(this, generation)) {
+          return;
+        }
+        this.generation = generation;
+        if (timestamps == null) {
+          timestamps = new long[MAX_EVENT_COUNT];
+          values = new long[MAX_EVENT_COUNT];
+          types = new byte[MAX_EVENT_COUNT];
+          names = new String[MAX_EVENT_COUNT];
+        }
+        eventCount = 0;
+        totalEventCount = 0;
+      }
+      final int index = (int) (totalEventCount % MAX_EVENT_COUNT);
+      timestamps[index] = System.nanoTime();
+      values[index] = value;
+      types[index] = type;
+      names[index] = name;
+      eventCount = Math.min(eventCount + 1, MAX_EVENT_COUNT);
+      totalEventCount++;
+    }
+
+    synchronized void write (Writer out, int pid, boolean[] isFirst) throws IOException {
+      writeEventStart(out, isFirst);
+      out.write(String.format(Locale.US, "{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":%d,\"tid\":%d,\"args\":{\"name\":", pid, threadId));
+      writeString(out, threadName);
+      out.write("}}");
+
+      final long firstIndex = totalEventCount - eventCount;
+      // Spans may have been started before tracing, or their beginning could be overwritten
+      int depth = 0;
+      for (long i = firstIndex; i < totalEventCount; i++) {
+        final int index = (int) (i % MAX_EVENT_COUNT);
+        final byte type = types[index];
+        final String phase;
+        switch (type) {
+          case TYPE_BEGIN:
+            depth++;
+            phase = "B";
+            break;
+          case TYPE_END:
+            if (depth == 0)
+              continue;
+            depth--;
+            phase = "E";
+            break;
+          case TYPE_COUNTER:
+            phase = "C";
+            break;
+          default:
+            throw new IllegalStateException(Byte.toString(type));
+        }
+        writeEventStart(out, isFirst);
+        out.write("{\"name\":");
+        writeString(out, names[index]);
+        out.write(String.format(Locale.US, ",\"ph\":\"%s\",\"ts\":%.3f,\"pid\":%d,\"tid\":%d", phase, timestamps[index] / 1000.0, pid, threadId));
+        if (type == TYPE_COUNTER) {
+          out.write(",\"args\":{\"value\":");
+          out.write(Long.toString(values[index]));
+          out.write('}');
+        }
+        out.write('}');
+      }
+    }
+  }
+
+  private static final ThreadLocal<Buffer> buffer = new ThreadLocal<Buffer>() {
+    @Override
+    protected Buffer initialValue () {
+      return new Buffer(Thread.currentThread());
+    }
+  };
+  private static final List<Buffer> buffers = new ArrayList<>();
+
+  private static volatile boolean isEnabled;
+  private static int generation;
+
+  private PerfTrace () { }
+
+  public static boolean isEnabled () {
+    return isEnabled;
+  }
+
+  // Recording
+
+  /**
+   * Starts a span on the current thread. Must be followed by {@link #end()} on the same thread.
+   */
+  public static void begin (@NonNull String name) {
+    if (isEnabled) {
+      buffer.get().add(generation, TYPE_BEGIN, name, 0);
+    }
+  }
+
+  /**
+   * Ends the most recent span started on the current thread.
+   */
+  public static void end () {
+    if (isEnabled) {
+      buffer.get().add(generation, TYPE_END, null, 0);
+    }
+  }
+
+  public static void counter (@NonNull String name, long value) {
+    if (isEnabled) {
+      buffer.get().add(generation, TYPE_COUNTER, name, value);
+    }
+  }
+
+  private static boolean register (Buffer buffer, int generation) {
+    synchronized (buffers) {
+      if (!isEnabled || PerfTrace.generation != generation) {
+        return false;
+      }
+      buffers.add(buffer);
+      return true;
+    }
+  }
+
+  // Control
+
+  /**
+   * Drops previously recorded events and starts recording.
+   */
+  public static void start () {
+    synchronized (buffers) {
+      if (isEnabled) {
+        return;
+      }
+      // Buffers are reset by their threads once they record an event of the new generation
+      buffers.clear();
+      generation++;
+      isEnabled = true;
+    }
+  }
+
+  /**
+   * Stops recording. Recorded events are kept until the next {@link #start()} call.
+   */
+  public static void stop () {
+    synchronized (buffers) {
+      isEnabled = false;
+    }
+  }
+
+  public static int getThreadCount () {
+    synchronized (buffers) {
+      return buffers.size();
+    }
+  }
+
+  /**
+   * Writes recorded events to the file in Chrome trace event JSON format.
+   */
+  public static void exportChromeTrace (@NonNull File file) throws IOException {
+    final int pid = Process.myPid();
+    try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+      out.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+      boolean[] isFirst = {true};
+      List<Buffer> buffers;
+      synchronized (PerfTrace.buffers) {
+        // Buffer locks are never taken while holding the list lock
+        buffers = new ArrayList<>(PerfTrace.buffers);
+      }
+      for (Buffer buffer : buffers) {
+        buffer.write(out, pid, isFirst);
+      }
+      out.write("]}");
+    }
+  }
+
+  private static void writeEventStart (Writer out, boolean[] isFirst) throws IOException {
+    if (isFirst[0]) {
+      isFirst[0] = false;
+    } else {
+      out.write(",\n");
+    }
+  }
+
+  private static void writeString (Writer out, String value) throws IOException {
+    out.write('"');
+    final int length = value.length();
+    for (int i = 0; i < length; i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        out.write('\\');
+        out.write(c);
+      } else if (c < 0x20) {
+        out.write(String.format(Locale.US, "\\u%04x", (int) c));
+      } else {
+        out.write(c);
+      }
+    }
+    out.write('"');
+  }
+}
@@ -1601,7 +1601,7 @@ public class FileProgressComponent implements TdlibFilesManager.FileListener, Fa
   }
 
   public boolean downloadAutomatically (@Nullable TdApi.ChatType chatType) {
-    return file != null && tdlib.files().downloadAutomatically(file, chatType, fileType, currentState == TdlibFilesManager.STATE_PAUSED);
+    return file != null && tdlib.files().downloadAutomatically(file, chatType, fileType, currentState == TdlibFilesManager.STATE_PAUSED, chatId, messageId);
   }
 
   public void pauseDownload (boolean weak) {